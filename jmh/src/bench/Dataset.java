@@ -0,0 +1,59 @@
+package bench;
+
+import query.LogQuery;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * A generated log directory in a temp folder, and access to LogParser, which lives in the default
+ * package and so can only be reached reflectively from here.
+ */
+final class Dataset implements AutoCloseable {
+
+    private final Path dir;
+    private final LogGenerator generator;
+
+    Dataset(LogGenerator generator, int files, long lines) throws IOException {
+        this.generator = generator;
+        this.dir = Files.createTempDirectory("logs-bench");
+        generator.write(dir, files, lines);
+    }
+
+    Path getDir() {
+        return dir;
+    }
+
+    LogGenerator getGenerator() {
+        return generator;
+    }
+
+    LogQuery open(int threads) {
+        return open(dir, threads);
+    }
+
+    static LogQuery open(Path dir, int threads) {
+        try {
+            return (LogQuery) Class.forName("LogParser").getConstructor(Path.class, int.class).newInstance(dir, threads);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("LogParser is not on the class path", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
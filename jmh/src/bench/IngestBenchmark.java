@@ -0,0 +1,74 @@
+package bench;
+
+import ingest.ParsedFile;
+import org.openjdk.jmh.annotations.*;
+import query.LogQuery;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingest throughput. The {@code lines} counter is reported as lines per second next to the
+ * per-operation score.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IngestBenchmark {
+
+    @Param({"1000000"})
+    public long lines;
+
+    @Param({"8"})
+    public int files;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Param({"1.0"})
+    public double skew;
+
+    private Dataset dataset;
+    private File firstFile;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Lines {
+        public long lines;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataset = new Dataset(LogGenerator.of(42, 10_000, 20_000, 50, skew, 90), files, lines);
+        firstFile = dataset.getDir().resolve("log00.log").toFile();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataset.close();
+    }
+
+    /**
+     * Parses, sorts and indexes the whole directory, as the LogParser constructor does.
+     */
+    @Benchmark
+    public LogQuery ingest(Lines counter) {
+        LogQuery parser = dataset.open(threads);
+        counter.lines += lines;
+        return parser;
+    }
+
+    /**
+     * Tokenizes a single file into an unsealed store, without sorting or indexes.
+     */
+    @Benchmark
+    public ParsedFile parseFile(Lines counter) {
+        ParsedFile parsed = ParsedFile.parse(firstFile, 0, false);
+        counter.lines += parsed.getStats().getLines();
+        return parsed;
+    }
+}
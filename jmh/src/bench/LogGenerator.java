@@ -0,0 +1,192 @@
+package bench;
+
+import status.Event;
+import status.Status;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Writes synthetic logs in the tab separated format LogParser reads: ip, user, {@code dd.MM.yyyy HH:mm:ss},
+ * event with a task number for SOLVE_TASK and DONE_TASK, status. Users, ips and tasks are drawn from
+ * Zipf distributions with exponent {@code skew} (0 is uniform), and the same settings always produce the
+ * same files.
+ */
+public class LogGenerator {
+
+    private static final Event[] EVENTS = Event.values();
+    private static final Status[] STATUSES = Status.values();
+    private static final double[] EVENT_WEIGHTS = {0.30, 0.10, 0.20, 0.25, 0.15};
+    private static final double[] STATUS_WEIGHTS = {0.80, 0.12, 0.08};
+
+    private final long seed;
+    private final LocalDateTime start;
+    private final long spanSeconds;
+    private final double[] users;
+    private final double[] ips;
+    private final double[] tasks;
+    private final double[] events = cumulative(EVENT_WEIGHTS);
+    private final double[] statuses = cumulative(STATUS_WEIGHTS);
+
+    public LogGenerator(long seed, int users, int ips, int tasks, double skew, LocalDateTime start, long spanSeconds) {
+        if (users < 1 || ips < 1 || tasks < 1) throw new IllegalArgumentException("cardinalities must be positive");
+        if (spanSeconds < 1) throw new IllegalArgumentException("spanSeconds must be positive: " + spanSeconds);
+        this.seed = seed;
+        this.start = start;
+        this.spanSeconds = spanSeconds;
+        this.users = zipf(users, skew);
+        this.ips = zipf(ips, skew);
+        this.tasks = zipf(tasks, skew);
+    }
+
+    /**
+     * A generator for {@code 01.01.2024 00:00:00} onwards with the given span in days.
+     */
+    public static LogGenerator of(long seed, int users, int ips, int tasks, double skew, int days) {
+        return new LogGenerator(seed, users, ips, tasks, skew, LocalDateTime.of(2024, 1, 1, 0, 0), days * 86_400L);
+    }
+
+    public LocalDateTime getStart() {
+        return start;
+    }
+
+    public LocalDateTime getEnd() {
+        return start.plusSeconds(spanSeconds);
+    }
+
+    /**
+     * Name of the user with the given popularity rank, 0 being the most frequent.
+     */
+    public static String user(int rank) {
+        return "user" + rank;
+    }
+
+    /**
+     * Address of the ip with the given popularity rank, 0 being the most frequent.
+     */
+    public static String ip(int rank) {
+        int mixed = rank * 0x9E3779B1 + 0x7F4A7C15;
+        return (mixed >>> 24) + "." + (mixed >>> 16 & 0xFF) + "." + (mixed >>> 8 & 0xFF) + "." + (mixed & 0xFF);
+    }
+
+    /**
+     * Task number with the given popularity rank, 0 being the most frequent.
+     */
+    public static int task(int rank) {
+        return rank + 1;
+    }
+
+    /**
+     * Writes {@code lines} lines spread over {@code files} files named {@code log00.log}, {@code log01.log}, ...
+     * Each file covers its own consecutive slice of the time span.
+     */
+    public void write(Path dir, int files, long lines) throws IOException {
+        if (files < 1) throw new IllegalArgumentException("files must be positive: " + files);
+        Files.createDirectories(dir);
+        for (int file = 0; file < files; file++) {
+            long from = lines * file / files;
+            long to = lines * (file + 1) / files;
+            Path path = dir.resolve(String.format("log%02d.log", file));
+            try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+                write(writer, file, files, to - from);
+            }
+        }
+    }
+
+    private void write(Writer writer, int file, int files, long lines) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed * 31 + file);
+        long sliceStart = spanSeconds * file / files;
+        long slice = Math.max(1, spanSeconds * (file + 1) / files - sliceStart);
+        StringBuilder line = new StringBuilder(96);
+        for (long i = 0; i < lines; i++) {
+            long offset = sliceStart + slice * i / lines;
+            Event event = EVENTS[pick(events, random)];
+            line.setLength(0);
+            line.append(ip(pick(ips, random))).append('\t')
+                    .append(user(pick(users, random))).append('\t');
+            appendDate(line, start.plusSeconds(offset));
+            line.append('\t').append(event.name());
+            if (event == Event.SOLVE_TASK || event == Event.DONE_TASK) {
+                line.append(' ').append(task(pick(tasks, random)));
+            }
+            line.append('\t').append(STATUSES[pick(statuses, random)].name()).append('\n');
+            writer.append(line);
+        }
+    }
+
+    private static void appendDate(StringBuilder sb, LocalDateTime time) {
+        pad(sb, time.getDayOfMonth()).append('.');
+        pad(sb, time.getMonthValue()).append('.').append(time.getYear()).append(' ');
+        pad(sb, time.getHour()).append(':');
+        pad(sb, time.getMinute()).append(':');
+        pad(sb, time.getSecond());
+    }
+
+    private static StringBuilder pad(StringBuilder sb, int value) {
+        if (value < 10) sb.append('0');
+        return sb.append(value);
+    }
+
+    private static int pick(double[] cumulative, SplittableRandom random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble() * cumulative[cumulative.length - 1]);
+        return Math.min(index < 0 ? -index - 1 : index, cumulative.length - 1);
+    }
+
+    private static double[] zipf(int n, double skew) {
+        double[] weights = new double[n];
+        for (int rank = 0; rank < n; rank++) {
+            weights[rank] = 1 / Math.pow(rank + 1, skew);
+        }
+        return cumulative(weights);
+    }
+
+    private static double[] cumulative(double[] weights) {
+        double[] result = new double[weights.length];
+        double sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i];
+            result[i] = sum;
+        }
+        return result;
+    }
+
+    /**
+     * {@code LogGenerator dir [--lines N] [--files N] [--users N] [--ips N] [--tasks N] [--skew S] [--days N] [--seed N]}
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: LogGenerator dir [--lines N] [--files N] [--users N] [--ips N] [--tasks N]"
+                    + " [--skew S] [--days N] [--seed N]");
+            System.exit(2);
+        }
+        long lines = 1_000_000;
+        int files = 8, users = 10_000, ips = 20_000, tasks = 50, days = 90;
+        double skew = 1.0;
+        long seed = 42;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--lines" -> lines = Long.parseLong(value);
+                case "--files" -> files = Integer.parseInt(value);
+                case "--users" -> users = Integer.parseInt(value);
+                case "--ips" -> ips = Integer.parseInt(value);
+                case "--tasks" -> tasks = Integer.parseInt(value);
+                case "--skew" -> skew = Double.parseDouble(value);
+                case "--days" -> days = Integer.parseInt(value);
+                case "--seed" -> seed = Long.parseLong(value);
+                default -> throw new IllegalArgumentException("unknown option: " + args[i]);
+            }
+        }
+        Path dir = Paths.get(args[0]);
+        of(seed, users, ips, tasks, skew, days).write(dir, files, lines);
+        System.out.println("wrote " + lines + " lines in " + files + " files to " + dir);
+    }
+}
@@ -0,0 +1,48 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+import query.LogQuery;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of representative QL queries against a generated directory starting on 01.01.2024.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QLBenchmark {
+
+    @Param({"1000000"})
+    public long lines;
+
+    @Param({
+            "get ip",
+            "get user",
+            "get date for status = \"ERROR\"",
+            "get event for user = \"user0\"",
+            "get ip for user = \"user0\" and date between \"01.02.2024 00:00:00\" and \"01.03.2024 00:00:00\"",
+            "get user for event = \"LOGIN\" and date between \"15.02.2024 10:00:00\" and \"15.02.2024 11:00:00\"",
+            "get status for date = \"15.02.2024 10:00:00\""
+    })
+    public String query;
+
+    private LogQuery parser;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        try (Dataset dataset = new Dataset(LogGenerator.of(42, 10_000, 20_000, 50, 1.0, 90), 8, lines)) {
+            parser = dataset.open(Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    @Benchmark
+    public Set<?> execute() {
+        return parser.execute(query);
+    }
+}
@@ -0,0 +1,239 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+import query.LogQuery;
+import status.Event;
+import status.Status;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of every IPQuery, UserQuery, DateQuery and EventQuery method. A {@code narrow} range is the
+ * hour in the middle of the generated span, a {@code wide} one covers all of it. The user, ip and task
+ * arguments are the most frequent ones, which is the worst case for the indexes.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryBenchmark {
+
+    @Param({"1000000"})
+    public long lines;
+
+    @Param({"1.0"})
+    public double skew;
+
+    @Param({"narrow", "wide"})
+    public String range;
+
+    private LogQuery parser;
+    private Date after;
+    private Date before;
+    private final String user = LogGenerator.user(0);
+    private final String ip = LogGenerator.ip(0);
+    private final int task = LogGenerator.task(0);
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        LogGenerator generator = LogGenerator.of(42, 10_000, 20_000, 50, skew, 90);
+        try (Dataset dataset = new Dataset(generator, 8, lines)) {
+            parser = dataset.open(Runtime.getRuntime().availableProcessors());
+        }
+        LocalDateTime start = generator.getStart();
+        LocalDateTime end = generator.getEnd();
+        switch (range) {
+            case "narrow" -> {
+                LocalDateTime middle = start.plusSeconds(Duration.between(start, end).getSeconds() / 2);
+                after = date(middle);
+                before = date(middle.plusHours(1));
+            }
+            case "wide" -> {
+                after = date(start.minusSeconds(1));
+                before = date(end.plusSeconds(1));
+            }
+            default -> throw new IllegalArgumentException("unknown range: " + range);
+        }
+    }
+
+    private static Date date(LocalDateTime time) {
+        return Date.from(time.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+    @Benchmark
+    public Object getNumberOfUniqueIPs() {
+        return parser.getNumberOfUniqueIPs(after, before);
+    }
+
+    @Benchmark
+    public Object getUniqueIPs() {
+        return parser.getUniqueIPs(after, before);
+    }
+
+    @Benchmark
+    public Object getIPsForUser() {
+        return parser.getIPsForUser(user, after, before);
+    }
+
+    @Benchmark
+    public Object getIPsForEvent() {
+        return parser.getIPsForEvent(Event.LOGIN, after, before);
+    }
+
+    @Benchmark
+    public Object getIPsForStatus() {
+        return parser.getIPsForStatus(Status.ERROR, after, before);
+    }
+
+    @Benchmark
+    public Object getAllUsers() {
+        return parser.getAllUsers();
+    }
+
+    @Benchmark
+    public Object getNumberOfUsers() {
+        return parser.getNumberOfUsers(after, before);
+    }
+
+    @Benchmark
+    public Object getNumberOfUserEvents() {
+        return parser.getNumberOfUserEvents(user, after, before);
+    }
+
+    @Benchmark
+    public Object getUsersForIP() {
+        return parser.getUsersForIP(ip, after, before);
+    }
+
+    @Benchmark
+    public Object getLoggedUsers() {
+        return parser.getLoggedUsers(after, before);
+    }
+
+    @Benchmark
+    public Object getDownloadedPluginUsers() {
+        return parser.getDownloadedPluginUsers(after, before);
+    }
+
+    @Benchmark
+    public Object getWroteMessageUsers() {
+        return parser.getWroteMessageUsers(after, before);
+    }
+
+    @Benchmark
+    public Object getSolvedTaskUsers() {
+        return parser.getSolvedTaskUsers(after, before);
+    }
+
+    @Benchmark
+    public Object getSolvedTaskUsersForTask() {
+        return parser.getSolvedTaskUsers(after, before, task);
+    }
+
+    @Benchmark
+    public Object getDoneTaskUsers() {
+        return parser.getDoneTaskUsers(after, before);
+    }
+
+    @Benchmark
+    public Object getDoneTaskUsersForTask() {
+        return parser.getDoneTaskUsers(after, before, task);
+    }
+
+    @Benchmark
+    public Object getDatesForUserAndEvent() {
+        return parser.getDatesForUserAndEvent(user, Event.LOGIN, after, before);
+    }
+
+    @Benchmark
+    public Object getDatesWhenSomethingFailed() {
+        return parser.getDatesWhenSomethingFailed(after, before);
+    }
+
+    @Benchmark
+    public Object getDatesWhenErrorHappened() {
+        return parser.getDatesWhenErrorHappened(after, before);
+    }
+
+    @Benchmark
+    public Object getDateWhenUserLoggedFirstTime() {
+        return parser.getDateWhenUserLoggedFirstTime(user, after, before);
+    }
+
+    @Benchmark
+    public Object getDateWhenUserSolvedTask() {
+        return parser.getDateWhenUserSolvedTask(user, task, after, before);
+    }
+
+    @Benchmark
+    public Object getDateWhenUserDoneTask() {
+        return parser.getDateWhenUserDoneTask(user, task, after, before);
+    }
+
+    @Benchmark
+    public Object getDatesWhenUserWroteMessage() {
+        return parser.getDatesWhenUserWroteMessage(user, after, before);
+    }
+
+    @Benchmark
+    public Object getDatesWhenUserDownloadedPlugin() {
+        return parser.getDatesWhenUserDownloadedPlugin(user, after, before);
+    }
+
+    @Benchmark
+    public Object getNumberOfAllEvents() {
+        return parser.getNumberOfAllEvents(after, before);
+    }
+
+    @Benchmark
+    public Object getAllEvents() {
+        return parser.getAllEvents(after, before);
+    }
+
+    @Benchmark
+    public Object getEventsForIP() {
+        return parser.getEventsForIP(ip, after, before);
+    }
+
+    @Benchmark
+    public Object getEventsForUser() {
+        return parser.getEventsForUser(user, after, before);
+    }
+
+    @Benchmark
+    public Object getFailedEvents() {
+        return parser.getFailedEvents(after, before);
+    }
+
+    @Benchmark
+    public Object getErrorEvents() {
+        return parser.getErrorEvents(after, before);
+    }
+
+    @Benchmark
+    public Object getNumberOfAttemptToSolveTask() {
+        return parser.getNumberOfAttemptToSolveTask(task, after, before);
+    }
+
+    @Benchmark
+    public Object getNumberOfSuccessfulAttemptToSolveTask() {
+        return parser.getNumberOfSuccessfulAttemptToSolveTask(task, after, before);
+    }
+
+    @Benchmark
+    public Object getAllSolvedTasksAndTheirNumber() {
+        return parser.getAllSolvedTasksAndTheirNumber(after, before);
+    }
+
+    @Benchmark
+    public Object getAllDoneTasksAndTheirNumber() {
+        return parser.getAllDoneTasksAndTheirNumber(after, before);
+    }
+}
@@ -1,663 +1,1272 @@
 
+import ingest.IngestReport;
+import ingest.LogTailer;
+import ingest.ParsedFile;
+import metrics.Metrics;
+import ql.Field;
+import ql.QueryCompiler;
+import ql.QueryPlan;
 import query.*;
 import status.Event;
 import status.Status;
-
+import store.EntryStore;
+import store.Dictionary;
+import store.DistinctValues;
+import store.Filter;
+import store.HyperLogLog;
+import store.IntHashSet;
+import store.IpDictionary;
+import store.Ipv4;
+import store.Partition;
+import store.PartitionCache;
+import store.RowIterator;
+import store.SegmentFile;
+
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileFilter;
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class LogParser implements LogQuery, CursorQuery, BatchQuery, TimelineQuery, Closeable {
+
+    private static final long PARTITION_SECONDS = 86400;
+    private static final int MAX_SEGMENTS_PER_PARTITION = 4;
+
+    private final Path logDir;
+    private final Path segmentDir;
+    private final QueryCompiler queries = new QueryCompiler(1024);
+    private final Metrics metrics;
+    private final PartitionCache partitions;
+    private final int threads;
+    private final int sketchPrecision;
+    private final boolean offHeap;
+    private final Object ingestLock = new Object();
+    private final Map<Object, Long> offsets = new HashMap<Object, Long>();
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private int loadedSegments;
+    private volatile IngestReport ingestReport;
+    private LogTailer tailer;
 
-public class LogParser implements IPQuery, UserQuery, DateQuery, EventQuery, QLQuery {
+    public LogParser(Path logDir) {
+        this(logDir, 1);
+    }
 
-    private File[] logs;
-    private final List<String> logData = new ArrayList<String>();
-    private final List<LogEntry> logEntries = new ArrayList<LogEntry>();
-    private final SimpleDateFormat sdf = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss");
+    /**
+     * Loads the .log files and .log.gz archives in {@code logDir}, parsing up to {@code threads} of
+     * them at once. Each archive is inflated on a thread of its own while it is parsed. A last line
+     * without a terminator may still be being written and is left for {@link #startTailing} to read
+     * once it is complete.
+     */
+    public LogParser(Path logDir, int threads) {
+        this(logDir, threads, null);
+    }
 
-    public LogParser(Path logDir) {
-        init(logDir);
+    /**
+     * With a {@code segmentDir}, every log file is also stored there as binary segments, one per day it
+     * covers, and later instances load the segments of unchanged files instead of parsing them again.
+     */
+    public LogParser(Path logDir, int threads, Path segmentDir) {
+        this(logDir, threads, segmentDir, 0);
+    }
+
+    /**
+     * With a {@code distinctError} above 0, {@link #getNumberOfUniqueIPs} and {@link #getNumberOfUsers}
+     * return HyperLogLog estimates with about that relative standard error, merged from per-day sketches
+     * built during ingest, instead of exact counts. 0 keeps them exact and builds no sketches.
+     */
+    public LogParser(Path logDir, int threads, Path segmentDir, double distinctError) {
+        this(logDir, threads, segmentDir, distinctError, 0);
     }
 
-    private void init(Path logDir) {
-        logs = new File(String.valueOf(logDir)).listFiles(new FileFilter() {
-            @Override
-            public boolean accept(File pathname) {
-                return pathname.toString().endsWith(".log");
+    /**
+     * With a {@code memoryBudget} above 0, partitions beyond that many bytes of heap are evicted least
+     * recently used first and read back from disk when a query needs them: stored segments from
+     * {@code segmentDir}, other partitions from spill files written there, or to a temporary directory
+     * without a {@code segmentDir}. 0 keeps everything in memory.
+     */
+    public LogParser(Path logDir, int threads, Path segmentDir, double distinctError, long memoryBudget) {
+        this(logDir, threads, segmentDir, distinctError, memoryBudget, false);
+    }
+
+    /**
+     * With {@code offHeap}, sealed partitions keep their columns, user strings, indexes, rollups and
+     * sketches outside the heap: stored segments are mapped from {@code segmentDir} in place, anything
+     * else is copied to a direct buffer. Only lookup tables stay on the heap, so garbage collection no
+     * longer has to trace or copy the bulk of the data. The memory budget counts both.
+     */
+    public LogParser(Path logDir, int threads, Path segmentDir, double distinctError, long memoryBudget,
+                     boolean offHeap) {
+        if (threads < 1) throw new IllegalArgumentException("threads must be positive: " + threads);
+        this.logDir = logDir;
+        this.threads = threads;
+        this.segmentDir = segmentDir;
+        this.sketchPrecision = distinctError == 0 ? 0 : HyperLogLog.precisionFor(distinctError);
+        this.offHeap = offHeap;
+        this.partitions = new PartitionCache(memoryBudget, segmentDir == null ? null : segmentDir.resolve("spill"), offHeap);
+        this.metrics = new Metrics(partitions::residentStores);
+        init();
+    }
+
+    private void init() {
+        File[] logs = LogTailer.listLogs(logDir);
+        if (segmentDir != null) prepareSegmentDir(logs);
+        parseLogs(logs);
+    }
+
+    private void prepareSegmentDir(File[] logs) {
+        try {
+            Files.createDirectories(segmentDir);
+            Set<String> live = new HashSet<String>();
+            for (File log : logs) live.add(log.getName());
+            try (DirectoryStream<Path> stored = Files.newDirectoryStream(segmentDir, "*.seg")) {
+                for (Path segment : stored) {
+                    String name = segment.getFileName().toString();
+                    String source = name.replaceFirst("\\.\\d+\\.seg$", "");
+                    if (source.equals(name) || !live.contains(source)) Files.delete(segment);
+                }
             }
-        });
-        parseLogs();
+            Path spill = segmentDir.resolve("spill");
+            if (Files.isDirectory(spill)) {
+                try (DirectoryStream<Path> stale = Files.newDirectoryStream(spill, "*.seg")) {
+                    for (Path segment : stale) Files.delete(segment);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
-    private void parseLogs() {
-        for (File file : logs) {
-            try {
-                logData.addAll(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
-            } catch (Exception e) {
-                e.printStackTrace();
+    private Path segmentPath(File log, int part) {
+        return segmentDir.resolve(log.getName() + "." + part + ".seg");
+    }
+
+    /**
+     * A log file loaded in segment mode, as the stores of its parts, and whether those are also in up to
+     * date segment files that the cache can reload them from.
+     */
+    private static class StoredFile {
+        final File file;
+        final IngestReport.FileStats stats;
+        final long endOffset;
+        final List<EntryStore> parts;
+        final boolean stored;
+
+        StoredFile(File file, IngestReport.FileStats stats, long endOffset, List<EntryStore> parts, boolean stored) {
+            this.file = file;
+            this.stats = stats;
+            this.endOffset = endOffset;
+            this.parts = parts;
+            this.stored = stored;
+        }
+    }
+
+    private StoredFile load(File file) {
+        long start = System.nanoTime();
+        long size = file.length();
+        long modified = file.lastModified();
+        try {
+            List<EntryStore> stored = readSegments(file);
+            if (stored != null) {
+                long rows = 0;
+                for (EntryStore part : stored) rows += part.size();
+                return new StoredFile(file, IngestReport.FileStats.loaded(file.getName(), size, rows,
+                        System.nanoTime() - start), size, stored, true);
             }
+        } catch (IOException e) {
+            // not a stale segment but one that could not be read; parsing the file still works
+            e.printStackTrace();
+        }
+        ParsedFile parsed = ParsedFile.parse(file, 0, true);
+        List<EntryStore> parts = new ArrayList<EntryStore>();
+        for (EntryStore day : split(parsed.getEntries())) {
+            day.seal(sketchPrecision);
+            parts.addAll(fit(day));
         }
-        logsToArray();
+        boolean written = false;
+        try {
+            // stamped with the bytes parsed, so a file with an unfinished last line is parsed again next time
+            writeSegments(file, parsed.getEndOffset(), modified, parts);
+            written = true;
+        } catch (IOException e) {
+            // a partial write would mix parts of two versions of the file; the cache spills these instead
+            e.printStackTrace();
+            deleteSegments(file, parts.size());
+        }
+        if (offHeap) {
+            for (int part = 0; part < parts.size(); part++) {
+                EntryStore mapped = null;
+                if (written) {
+                    try {
+                        mapped = SegmentFile.map(segmentPath(file, part));
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+                parts.set(part, mapped != null ? mapped : parts.get(part).offHeap());
+            }
+        }
+        return new StoredFile(file, parsed.getStats(), parsed.getEndOffset(), parts, written);
+    }
+
+    /**
+     * The stored parts of {@code file}, or null unless all of them are there and up to date.
+     */
+    private List<EntryStore> readSegments(File file) throws IOException {
+        int parts = 0;
+        while (Files.isRegularFile(segmentPath(file, parts))) parts++;
+        if (parts == 0) return null;
+        List<EntryStore> stored = new ArrayList<EntryStore>();
+        for (int part = 0; part < parts; part++) {
+            Path segment = segmentPath(file, part);
+            EntryStore store = offHeap ? SegmentFile.map(segment, file, part, parts)
+                    : SegmentFile.read(segment, file, part, parts);
+            if (store == null) return null;
+            stored.add(store);
+        }
+        return stored;
+    }
+
+    private void writeSegments(File file, long size, long modified, List<EntryStore> parts) throws IOException {
+        for (int part = 0; part < parts.size(); part++) {
+            SegmentFile.write(segmentPath(file, part), file, size, modified, part, parts.size(), parts.get(part));
+        }
+        // parts left over from a version of the file that needed more of them
+        int extra = parts.size();
+        while (Files.deleteIfExists(segmentPath(file, extra))) extra++;
     }
 
-    private void logsToArray() {
-        for (String log : logData) {
-            List<String> list = Arrays.asList(log.split("\t"));
+    /**
+     * Deletes the first {@code parts} segment files of {@code file} and any after them, carrying on past
+     * those that cannot be deleted.
+     */
+    private void deleteSegments(File file, int parts) {
+        for (int part = 0; part < parts || Files.exists(segmentPath(file, part)); part++) {
             try {
-                String ip = list.get(0).trim();
-                String user = list.get(1).trim();
-                Date date = sdf.parse(list.get(2));
-                String[] eventStr = list.get(3).split(" ");
-                Event event = Event.valueOf(eventStr[0]);
-                int action = eventStr.length == 2 ? Integer.parseInt(eventStr[1]) : 0;
-                Status status = Status.valueOf(list.get(4));
-                LogEntry entry = new LogEntry(ip, user, date, event, action, status);
-                logEntries.add(entry);
-            } catch (Exception e) {
+                Files.deleteIfExists(segmentPath(file, part));
+            } catch (IOException e) {
                 e.printStackTrace();
             }
         }
     }
 
-    private boolean checkDate(Date current, Date after, Date before) {
-        boolean isBefore = true;
-        boolean isAfter = true;
-        if (after != null && !current.after(after)) isAfter = false;
-        if (before != null && !current.before(before)) isBefore = false;
-        return isBefore && isAfter;
+    /**
+     * Cuts a sealed store into halves, recursively, until each part fits comfortably in a segment that
+     * can be mapped as one buffer. Rows of one {@link #PARTITION_SECONDS} rarely come to that.
+     */
+    private List<EntryStore> fit(EntryStore store) {
+        List<EntryStore> parts = new ArrayList<EntryStore>();
+        long bytes = store.columnBytes() + store.indexBytes() + store.dictionaryBytes();
+        if (bytes <= SegmentFile.MAX_LENGTH / 2 || store.size() < 2) {
+            parts.add(store);
+            return parts;
+        }
+        int half = store.size() / 2;
+        for (EntryStore part : new EntryStore[]{store.slice(0, half), store.slice(half, store.size())}) {
+            part.seal(sketchPrecision);
+            parts.addAll(fit(part));
+        }
+        return parts;
+    }
+
+    private <T> List<T> forEachLog(File[] logs, Function<File, T> load) {
+        List<T> loaded = new ArrayList<T>();
+        if (threads == 1) {
+            for (File file : logs) {
+                loaded.add(load.apply(file));
+            }
+            return loaded;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<T>> futures = new ArrayList<Future<T>>();
+            for (File file : logs) {
+                futures.add(pool.submit(() -> load.apply(file)));
+            }
+            for (Future<T> future : futures) {
+                loaded.add(join(future));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return loaded;
+    }
+
+    /**
+     * Result of {@code future}, failing with what the task threw, as if it had run on this thread.
+     */
+    private static <T> T join(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for a worker", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void parseLogs(File[] logs) {
+        IngestReport report = new IngestReport(threads);
+        long start = System.nanoTime();
+        if (segmentDir == null) {
+            ingest(forEachLog(logs, file -> ParsedFile.parse(file, 0, true)), report, start);
+            return;
+        }
+        // stored segments are cut per day but stay per file, so that each can be checked against its own source
+        List<StoredFile> stored = forEachLog(logs, this::load);
+        List<Partition> loaded = new ArrayList<Partition>();
+        for (StoredFile file : stored) {
+            report.addFile(file.stats);
+            metrics.recordFile(file.stats);
+            for (int part = 0; part < file.parts.size(); part++) {
+                EntryStore entries = file.parts.get(part);
+                Path segment = file.stored ? segmentPath(file.file, part) : null;
+                if (entries.size() > 0) loaded.add(partitions.add(entries, segment));
+            }
+        }
+        report.setWallNanos(System.nanoTime() - start);
+        synchronized (ingestLock) {
+            for (StoredFile file : stored) {
+                offsets.put(LogTailer.fileKey(file.file), file.endOffset);
+            }
+            snapshot = new Snapshot(List.copyOf(loaded), snapshot.version + 1);
+            loadedSegments = loaded.size();
+            ingestReport = report;
+        }
+    }
+
+    private void ingest(List<ParsedFile> parsed, IngestReport report, long start) {
+        EntryStore batch = new EntryStore();
+        for (ParsedFile file : parsed) {
+            batch.appendAll(file.getEntries());
+            report.addFile(file.getStats());
+            metrics.recordFile(file.getStats());
+        }
+        List<EntryStore> slices = sealAll(split(batch));
+        report.setWallNanos(System.nanoTime() - start);
+        synchronized (ingestLock) {
+            for (ParsedFile file : parsed) {
+                offsets.put(LogTailer.fileKey(file.getFile()), file.getEndOffset());
+            }
+            if (!slices.isEmpty()) {
+                List<Partition> next = new ArrayList<Partition>(snapshot.partitions);
+                for (EntryStore slice : slices) next.add(partitions.add(slice));
+                snapshot = new Snapshot(List.copyOf(compact(next, loadedSegments)), snapshot.version + 1);
+            }
+            ingestReport = report;
+        }
+    }
+
+    /**
+     * Cuts a batch into one store per {@link #PARTITION_SECONDS} of time, each with dictionaries of its
+     * own, so that a partition can be skipped, evicted and reloaded on its own.
+     */
+    private static List<EntryStore> split(EntryStore batch) {
+        List<EntryStore> slices = new ArrayList<EntryStore>();
+        if (batch.size() == 0) return slices;
+        batch.sortByTime();
+        if (partitionOf(batch.time(0)) == partitionOf(batch.time(batch.size() - 1))) {
+            slices.add(batch);
+            return slices;
+        }
+        int from = 0;
+        while (from < batch.size()) {
+            int to = batch.lowerRow((partitionOf(batch.time(from)) + 1) * PARTITION_SECONDS);
+            slices.add(batch.slice(from, to));
+            from = to;
+        }
+        return slices;
+    }
+
+    private static long partitionOf(long time) {
+        return Math.floorDiv(time, PARTITION_SECONDS);
+    }
+
+    private List<EntryStore> sealAll(List<EntryStore> stores) {
+        List<EntryStore> sealed = new ArrayList<EntryStore>();
+        if (threads == 1 || stores.size() == 1) {
+            for (EntryStore store : stores) sealed.add(seal(store));
+            return sealed;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, stores.size()));
+        try {
+            List<Future<EntryStore>> futures = new ArrayList<Future<EntryStore>>();
+            for (EntryStore store : stores) {
+                futures.add(pool.submit(() -> seal(store)));
+            }
+            for (Future<EntryStore> future : futures) {
+                sealed.add(join(future));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return sealed;
+    }
+
+    /**
+     * Seals {@code store} and, in off-heap mode, returns its off-heap copy.
+     */
+    private EntryStore seal(EntryStore store) {
+        store.seal(sketchPrecision);
+        return offHeap ? store.offHeap() : store;
+    }
+
+    /**
+     * Merges the two smallest partitions after {@code from} that cover the same
+     * {@link #PARTITION_SECONDS} until none has more than {@link #MAX_SEGMENTS_PER_PARTITION} of them,
+     * so that tailing many small appends does not leave queries walking hundreds of tiny partitions.
+     * Partitions loaded from segment files are left as they are.
+     */
+    private List<Partition> compact(List<Partition> list, int from) {
+        while (true) {
+            Map<Long, List<Integer>> byPartition = new HashMap<Long, List<Integer>>();
+            List<Integer> crowded = null;
+            for (int i = from; i < list.size(); i++) {
+                List<Integer> same = byPartition.computeIfAbsent(partitionOf(list.get(i).getMinTime()),
+                        key -> new ArrayList<Integer>());
+                same.add(i);
+                if (same.size() > MAX_SEGMENTS_PER_PARTITION) crowded = same;
+            }
+            if (crowded == null) return list;
+            crowded.sort(Comparator.comparingInt(i -> list.get(i).getRows()));
+            int first = Math.min(crowded.get(0), crowded.get(1));
+            int second = Math.max(crowded.get(0), crowded.get(1));
+            EntryStore merged = new EntryStore();
+            merged.appendAll(list.get(first).store());
+            merged.appendAll(list.get(second).store());
+            EntryStore sealed = seal(merged);
+            partitions.remove(list.get(first));
+            partitions.remove(list.get(second));
+            list.set(first, partitions.add(sealed));
+            list.remove(second);
+        }
+    }
+
+    /**
+     * Starts following the log directory: lines appended to known files and new .log files become
+     * visible to queries within about {@code pollMillis}.
+     */
+    public void startTailing(long pollMillis) {
+        synchronized (ingestLock) {
+            if (tailer != null) return;
+            tailer = new LogTailer(logDir, offsets, pollMillis, (files, start) -> ingest(files, new IngestReport(1), start));
+            tailer.start();
+        }
+    }
+
+    public void stopTailing() {
+        LogTailer stopping;
+        synchronized (ingestLock) {
+            stopping = tailer;
+            tailer = null;
+        }
+        if (stopping != null) stopping.close();
+    }
+
+    /**
+     * Stops tailing and deletes the partitions spilled to disk; queries cannot be run afterwards.
+     */
+    @Override
+    public void close() {
+        stopTailing();
+        partitions.close();
+    }
+
+    /**
+     * Ingest counters and memory gauges. Query latencies are recorded by wrapping this parser in a
+     * {@link metrics.InstrumentedLogQuery} with the same metrics.
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public IngestReport getIngestReport() {
+        return ingestReport;
+    }
+
+    /**
+     * Changes every time new log data has been ingested.
+     */
+    public long getVersion() {
+        return snapshot.version;
+    }
+
+    /**
+     * Partition cache that keeps the stores under the memory budget.
+     */
+    public PartitionCache getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * Stores of the partitions in the current snapshot that may hold rows matching {@code filter} in
+     * {@code [after, before]}; the others are skipped without being loaded. Each query reads the
+     * snapshot once and works on sealed stores only, so it needs no lock and sees either all or none
+     * of a concurrent ingest.
+     */
+    private List<EntryStore> segments(Filter filter, Date after, Date before) {
+        return segments(filter, EntryStore.lowerBound(after), EntryStore.upperBound(before));
+    }
+
+    private List<EntryStore> segments(Filter filter, long lo, long hi) {
+        List<EntryStore> stores = new ArrayList<EntryStore>();
+        for (Partition partition : snapshot.partitions) {
+            if (partition.mayMatch(filter, lo, hi)) stores.add(partition.store());
+        }
+        return stores;
+    }
+
+    private RowIterator rows(EntryStore segment, Filter filter, Date after, Date before) {
+        return segment.rows(filter, EntryStore.lowerBound(after), EntryStore.upperBound(before));
+    }
+
+    private void collect(EntryStore segment, Dictionary dictionary, IntUnaryOperator column,
+                         Filter filter, Date after, Date before, Set<String> result) {
+        BitSet seen = new BitSet(dictionary.size());
+        RowIterator rows = rows(segment, filter, after, before);
+        for (int row = rows.next(); row >= 0; row = rows.next()) {
+            seen.set(column.applyAsInt(row));
+        }
+        for (int id = seen.nextSetBit(0); id >= 0; id = seen.nextSetBit(id + 1)) {
+            result.add(dictionary.get(id));
+        }
+    }
+
+    private Set<String> ips(Filter filter, Date after, Date before) {
+        List<EntryStore> current = segments(filter, after, before);
+        Set<String> result = new HashSet<String>();
+        if (current.size() == 1) {
+            collect(current.get(0), current.get(0).ips(), current.get(0)::ip, filter, after, before, result);
+            return result;
+        }
+        IntHashSet addresses = new IntHashSet();
+        for (EntryStore segment : current) {
+            collectIps(segment, filter, after, before, addresses, result);
+        }
+        addresses.forEach(address -> result.add(Ipv4.format(address)));
+        return result;
+    }
+
+    /**
+     * Adds the ips of the matching rows of {@code segment}: IPv4 addresses packed into {@code addresses},
+     * anything else as strings to {@code others}. Unions over many segments then only format each
+     * address once at the end.
+     */
+    private void collectIps(EntryStore segment, Filter filter, Date after, Date before,
+                            IntHashSet addresses, Set<String> others) {
+        IpDictionary dictionary = segment.ips();
+        BitSet seen = new BitSet(dictionary.size());
+        RowIterator rows = rows(segment, filter, after, before);
+        for (int row = rows.next(); row >= 0; row = rows.next()) {
+            seen.set(segment.ip(row));
+        }
+        for (int id = seen.nextSetBit(0); id >= 0; id = seen.nextSetBit(id + 1)) {
+            if (dictionary.isIpv4(id)) addresses.add(dictionary.address(id));
+            else others.add(dictionary.get(id));
+        }
+    }
+
+    private Set<String> users(Filter filter, Date after, Date before) {
+        Set<String> result = new HashSet<String>();
+        for (EntryStore segment : segments(filter, after, before)) {
+            collect(segment, segment.users(), segment::user, filter, after, before, result);
+        }
+        return result;
+    }
+
+    private int distinctIPs(Date after, Date before) {
+        if (sketchPrecision > 0) {
+            HyperLogLog sketch = new HyperLogLog(sketchPrecision);
+            for (EntryStore segment : segments(Filter.ALL, after, before)) {
+                segment.addDistinctIps(EntryStore.lowerBound(after), EntryStore.upperBound(before), sketch);
+            }
+            return (int) Math.round(sketch.estimate());
+        }
+        List<EntryStore> current = segments(Filter.ALL, after, before);
+        if (current.size() != 1) {
+            IntHashSet addresses = new IntHashSet();
+            Set<String> others = new HashSet<String>();
+            for (EntryStore segment : current) {
+                collectIps(segment, Filter.ALL, after, before, addresses, others);
+            }
+            return addresses.size() + others.size();
+        }
+        EntryStore segment = current.get(0);
+        return distinctCount(segment, segment::ip, after, before);
+    }
+
+    private int distinctUsers(Date after, Date before) {
+        if (sketchPrecision > 0) {
+            HyperLogLog sketch = new HyperLogLog(sketchPrecision);
+            for (EntryStore segment : segments(Filter.ALL, after, before)) {
+                segment.addDistinctUsers(EntryStore.lowerBound(after), EntryStore.upperBound(before), sketch);
+            }
+            return (int) Math.round(sketch.estimate());
+        }
+        List<EntryStore> current = segments(Filter.ALL, after, before);
+        if (current.size() != 1) return users(Filter.ALL, after, before).size();
+        EntryStore segment = current.get(0);
+        return distinctCount(segment, segment::user, after, before);
+    }
+
+    private int distinctCount(EntryStore segment, IntUnaryOperator column, Date after, Date before) {
+        BitSet seen = new BitSet();
+        RowIterator rows = rows(segment, Filter.ALL, after, before);
+        for (int row = rows.next(); row >= 0; row = rows.next()) {
+            seen.set(column.applyAsInt(row));
+        }
+        return seen.cardinality();
+    }
+
+    private Set<Date> dates(Filter filter, Date after, Date before) {
+        Set<Date> result = new HashSet<Date>();
+        for (EntryStore segment : segments(filter, after, before)) {
+            long last = Long.MIN_VALUE;
+            RowIterator rows = rows(segment, filter, after, before);
+            for (int row = rows.next(); row >= 0; row = rows.next()) {
+                long time = segment.time(row);
+                if (time != last) result.add(EntryStore.dateOf(time));
+                last = time;
+            }
+        }
+        return result;
     }
 
-    private Set<String> getUniqueIps(Date after, Date before) {
-        HashSet<String> uniqueIPs = new HashSet<String>();
-        for (LogEntry entry : logEntries) {
-            if (checkDate(entry.getDate(), after, before)) {
-                uniqueIPs.add(entry.getIp());
+    private Set<Event> events(Filter filter, Date after, Date before) {
+        int mask = 0;
+        for (EntryStore segment : segments(filter, after, before)) {
+            RowIterator rows = rows(segment, filter, after, before);
+            for (int row = rows.next(); row >= 0; row = rows.next()) {
+                mask |= 1 << segment.event(row);
             }
         }
-        return uniqueIPs;
+        return eventsOf(mask);
+    }
+
+    private static Set<Event> eventsOf(int mask) {
+        Set<Event> result = new HashSet<Event>();
+        for (Event event : Event.values()) {
+            if ((mask & 1 << event.ordinal()) != 0) result.add(event);
+        }
+        return result;
+    }
+
+    private Set<Status> statuses(Filter filter, Date after, Date before) {
+        int mask = 0;
+        for (EntryStore segment : segments(filter, after, before)) {
+            RowIterator rows = rows(segment, filter, after, before);
+            for (int row = rows.next(); row >= 0; row = rows.next()) {
+                mask |= 1 << segment.status(row);
+            }
+        }
+        return statusesOf(mask);
+    }
+
+    private static Set<Status> statusesOf(int mask) {
+        Set<Status> result = new HashSet<Status>();
+        for (Status status : Status.values()) {
+            if ((mask & 1 << status.ordinal()) != 0) result.add(status);
+        }
+        return result;
+    }
+
+    private int count(Filter filter, Date after, Date before) {
+        int[] count = new int[1];
+        for (EntryStore segment : segments(filter, after, before)) {
+            segment.countByTask(filter, EntryStore.lowerBound(after), EntryStore.upperBound(before),
+                    (task, n) -> count[0] += n);
+        }
+        return count[0];
+    }
+
+    private Map<Integer, Integer> taskCounts(Filter filter, Date after, Date before) {
+        Map<Integer, Integer> result = new HashMap<Integer, Integer>();
+        for (EntryStore segment : segments(filter, after, before)) {
+            segment.countByTask(filter, EntryStore.lowerBound(after), EntryStore.upperBound(before),
+                    (task, n) -> result.merge(task, n, Integer::sum));
+        }
+        return result;
+    }
+
+    private Date first(String user, Event event, Integer task, Date after, Date before) {
+        long first = firstTime(user, event, task, EntryStore.lowerBound(after), EntryStore.upperBound(before));
+        return first == Long.MAX_VALUE ? null : EntryStore.dateOf(first);
+    }
+
+    /**
+     * Time of the first row of {@code user} with {@code event} (and {@code task}) in {@code [lo, hi]},
+     * found in the per-user timelines of the partitions in order of their first timestamp, stopping
+     * at the first partition that starts after the best time found so far. Long.MAX_VALUE if none.
+     */
+    private long firstTime(String user, Event event, Integer task, long lo, long hi) {
+        long first = Long.MAX_VALUE;
+        Filter filter = Filter.event(event);
+        for (Partition partition : snapshot.byMinTime) {
+            if (partition.getMinTime() > Math.min(first, hi)) break;
+            if (!partition.mayMatch(filter, lo, hi)) continue;
+            EntryStore segment = partition.store();
+            int row = segment.firstRow(user, event, task, lo, hi);
+            if (row >= 0) first = Math.min(first, segment.time(row));
+        }
+        return first;
+    }
+
+    private long lastTime(String user, Event event, Integer task, long lo, long hi) {
+        long last = Long.MIN_VALUE;
+        Filter filter = Filter.event(event);
+        for (Partition partition : snapshot.byMaxTime) {
+            if (partition.getMaxTime() < Math.max(last, lo)) break;
+            if (!partition.mayMatch(filter, lo, hi)) continue;
+            EntryStore segment = partition.store();
+            int row = segment.lastRow(user, event, task, lo, hi);
+            if (row >= 0) last = Math.max(last, segment.time(row));
+        }
+        return last;
     }
 
     @Override
     public int getNumberOfUniqueIPs(Date after, Date before) {
-        return getUniqueIps(after, before).size();
+        return distinctIPs(after, before);
     }
 
     @Override
     public Set<String> getUniqueIPs(Date after, Date before) {
-        return getUniqueIps(after, before);
+        return ips(Filter.ALL, after, before);
     }
 
     @Override
     public Set<String> getIPsForUser(String user, Date after, Date before) {
-        HashSet<String> IPsForUser = new HashSet<String>();
-        for (LogEntry entry : logEntries) {
-            if (!entry.getUser().equals(user)) continue;
-            if (checkDate(entry.getDate(), after, before)) {
-                IPsForUser.add(entry.getIp());
-            }
-        }
-        return IPsForUser;
+        return ips(Filter.user(user), after, before);
     }
 
     @Override
     public Set<String> getIPsForEvent(Event event, Date after, Date before) {
-        HashSet<String> IPsForEvent = new HashSet<String>();
-        for (LogEntry entry : logEntries) {
-            if (!entry.getEvent().equals(event)) continue;
-            if (checkDate(entry.getDate(), after, before)) {
-                IPsForEvent.add(entry.getIp());
-            }
-        }
-        return IPsForEvent;
+        return ips(Filter.event(event), after, before);
     }
 
     @Override
     public Set<String> getIPsForStatus(Status status, Date after, Date before) {
-        HashSet<String> IPsForStatus = new HashSet<String>();
-        for (LogEntry entry : logEntries) {
-            if (!entry.getStatus().equals(status)) continue;
-            if (checkDate(entry.getDate(), after, before)) {
-                IPsForStatus.add(entry.getIp());
-            }
-        }
-        return IPsForStatus;
+        return ips(Filter.status(status), after, before);
     }
 
     @Override
     public Set<String> getAllUsers() {
-        return logEntries.stream().map(LogEntry::getUser).collect(Collectors.toSet());
+        return users(Filter.ALL, null, null);
     }
 
     @Override
     public int getNumberOfUsers(Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .map(LogEntry::getUser)
-                .collect(Collectors.toSet()).size();
+        return distinctUsers(after, before);
+    }
+
+    @Override
+    public Set<String> getUsers(Date after, Date before) {
+        return users(Filter.ALL, after, before);
     }
 
     @Override
     public int getNumberOfUserEvents(String user, Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .filter(e -> e.getUser().equals(user))
-                .map(LogEntry::getEvent)
-                .collect(Collectors.toSet()).size();
+        return events(Filter.user(user), after, before).size();
     }
 
     @Override
     public Set<String> getUsersForIP(String ip, Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .filter(e -> e.getIp().equals(ip))
-                .map(LogEntry::getUser).collect(Collectors.toSet());
+        return users(Filter.ip(ip), after, before);
     }
 
     @Override
     public Set<String> getLoggedUsers(Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .filter(e -> e.getEvent().equals(Event.LOGIN))
-                .map(LogEntry::getUser)
-                .collect(Collectors.toSet());
+        return users(Filter.event(Event.LOGIN), after, before);
     }
 
     @Override
     public Set<String> getDownloadedPluginUsers(Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .filter(e -> e.getEvent().equals(Event.DOWNLOAD))
-                .map(LogEntry::getUser)
-                .collect(Collectors.toSet());
+        return users(Filter.event(Event.DOWNLOAD), after, before);
     }
 
     @Override
     public Set<String> getWroteMessageUsers(Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .filter(e -> e.getEvent().equals(Event.WRITE_MESSAGE))
-                .map(LogEntry::getUser)
-                .collect(Collectors.toSet());
+        return users(Filter.event(Event.WRITE_MESSAGE), after, before);
     }
 
     @Override
     public Set<String> getSolvedTaskUsers(Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .filter(e -> e.getEvent().equals(Event.SOLVE_TASK))
-                .map(LogEntry::getUser)
-                .collect(Collectors.toSet());
+        return users(Filter.event(Event.SOLVE_TASK), after, before);
     }
 
     @Override
     public Set<String> getSolvedTaskUsers(Date after, Date before, int task) {
-        return logEntries.stream()
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .filter(e -> e.getEvent().equals(Event.SOLVE_TASK))
-                .filter(e -> e.getAction() == task)
-                .map(LogEntry::getUser)
-                .collect(Collectors.toSet());
+        return users(Filter.task(Event.SOLVE_TASK, task), after, before);
     }
 
     @Override
     public Set<String> getDoneTaskUsers(Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .filter(e -> e.getEvent().equals(Event.DONE_TASK))
-                .map(LogEntry::getUser)
-                .collect(Collectors.toSet());
+        return users(Filter.event(Event.DONE_TASK), after, before);
     }
 
     @Override
     public Set<String> getDoneTaskUsers(Date after, Date before, int task) {
-        return logEntries.stream()
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .filter(e -> e.getEvent().equals(Event.DONE_TASK))
-                .filter(e -> e.getAction() == task)
-                .map(LogEntry::getUser)
-                .collect(Collectors.toSet());
+        return users(Filter.task(Event.DONE_TASK, task), after, before);
     }
 
     @Override
     public Set<Date> getDatesForUserAndEvent(String user, Event event, Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> e.getUser().equals(user))
-                .filter(e -> e.getEvent().equals(event))
-                .map(LogEntry::getDate)
-                .filter(date -> checkDate(date, after, before)).collect(Collectors.toSet());
+        return dates(Filter.user(user).and(Filter.event(event)), after, before);
     }
 
     @Override
     public Set<Date> getDatesWhenSomethingFailed(Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .filter(e -> e.getStatus().equals(Status.FAILED))
-                .map(LogEntry::getDate).collect(Collectors.toSet());
+        return dates(Filter.status(Status.FAILED), after, before);
     }
 
     @Override
     public Set<Date> getDatesWhenErrorHappened(Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .filter(e -> e.getStatus().equals(Status.ERROR))
-                .map(LogEntry::getDate).collect(Collectors.toSet());
+        return dates(Filter.status(Status.ERROR), after, before);
     }
 
     @Override
     public Date getDateWhenUserLoggedFirstTime(String user, Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> e.getUser().equals(user))
-                .filter(e -> e.getEvent().equals(Event.LOGIN))
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .map(LogEntry::getDate).sorted()
-                .findFirst().orElse(null);
+        return first(user, Event.LOGIN, null, after, before);
     }
 
     @Override
     public Date getDateWhenUserSolvedTask(String user, int task, Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> e.getUser().equals(user))
-                .filter(e -> e.getAction() == task)
-                .filter(e -> e.getEvent().equals(Event.SOLVE_TASK))
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .map(LogEntry::getDate).sorted()
-                .findFirst().orElse(null);
+        return first(user, Event.SOLVE_TASK, task, after, before);
     }
 
     @Override
     public Date getDateWhenUserDoneTask(String user, int task, Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> e.getUser().equals(user))
-                .filter(e -> e.getAction() == task)
-                .filter(e -> e.getEvent().equals(Event.DONE_TASK))
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .map(LogEntry::getDate).sorted()
-                .findFirst().orElse(null);
+        return first(user, Event.DONE_TASK, task, after, before);
     }
 
     @Override
     public Set<Date> getDatesWhenUserWroteMessage(String user, Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> e.getUser().equals(user))
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .filter(e -> e.getEvent().equals(Event.WRITE_MESSAGE))
-                .map(LogEntry::getDate).collect(Collectors.toSet());
+        return dates(Filter.user(user).and(Filter.event(Event.WRITE_MESSAGE)), after, before);
     }
 
     @Override
     public Set<Date> getDatesWhenUserDownloadedPlugin(String user, Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> e.getUser().equals(user))
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .filter(e -> e.getEvent().equals(Event.DOWNLOAD))
-                .map(LogEntry::getDate).collect(Collectors.toSet());
+        return dates(Filter.user(user).and(Filter.event(Event.DOWNLOAD)), after, before);
     }
 
     @Override
     public int getNumberOfAllEvents(Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .map(LogEntry::getEvent)
-                .collect(Collectors.toSet()).size();
+        return getAllEvents(after, before).size();
     }
 
     @Override
     public Set<Event> getAllEvents(Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .map(LogEntry::getEvent)
-                .collect(Collectors.toSet());
+        return events(Filter.ALL, after, before);
     }
 
     @Override
     public Set<Event> getEventsForIP(String ip, Date after, Date before) {
-        return logEntries.stream()
-                .filter((e) -> checkDate(e.getDate(), after, before))
-                .filter(e -> e.getIp().equals(ip))
-                .map(LogEntry::getEvent)
-                .collect(Collectors.toSet());
+        return events(Filter.ip(ip), after, before);
     }
 
     @Override
     public Set<Event> getEventsForUser(String user, Date after, Date before) {
-        return logEntries.stream()
-                .filter((e) -> checkDate(e.getDate(), after, before))
-                .filter(e -> e.getUser().equals(user))
-                .map(LogEntry::getEvent)
-                .collect(Collectors.toSet());
+        return events(Filter.user(user), after, before);
     }
 
     @Override
     public Set<Event> getFailedEvents(Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .filter(e -> e.getStatus().equals(Status.FAILED))
-                .map(LogEntry::getEvent)
-                .collect(Collectors.toSet());
+        return events(Filter.status(Status.FAILED), after, before);
     }
 
     @Override
     public Set<Event> getErrorEvents(Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .filter(e -> e.getStatus().equals(Status.ERROR))
-                .map(LogEntry::getEvent)
-                .collect(Collectors.toSet());
+        return events(Filter.status(Status.ERROR), after, before);
     }
 
     @Override
     public int getNumberOfAttemptToSolveTask(int task, Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .filter(e -> e.getAction() == task)
-                .filter(e -> e.getEvent().equals(Event.SOLVE_TASK))
-                .collect(Collectors.toList()).size();
+        return count(Filter.task(Event.SOLVE_TASK, task), after, before);
     }
 
     @Override
     public int getNumberOfSuccessfulAttemptToSolveTask(int task, Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .filter(e -> e.getAction() == task)
-                .filter(e -> e.getEvent().equals(Event.DONE_TASK))
-                .toList().size();
+        return count(Filter.task(Event.DONE_TASK, task), after, before);
     }
 
     @Override
     public Map<Integer, Integer> getAllSolvedTasksAndTheirNumber(Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .filter(e -> e.getEvent().equals(Event.SOLVE_TASK))
-                .collect(Collectors.toMap(LogEntry::getAction, e -> 1, Integer::sum));
+        return taskCounts(Filter.event(Event.SOLVE_TASK), after, before);
     }
 
     @Override
     public Map<Integer, Integer> getAllDoneTasksAndTheirNumber(Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .filter(e -> e.getEvent().equals(Event.DONE_TASK))
-                .collect(Collectors.toMap(LogEntry::getAction, e -> 1, Integer::sum));
+        return taskCounts(Filter.event(Event.DONE_TASK), after, before);
     }
 
-    public Set<Date> getAllDates() {
-        return logEntries.stream().map(LogEntry::getDate).collect(Collectors.toSet());
-    }
-
-    public Set<Status> getAllStatus(Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .map(LogEntry::getStatus).collect(Collectors.toSet());
+    @Override
+    public Date getFirstDate(String user, Event event, Integer task, Date after, Date before) {
+        return first(user, event, task, after, before);
     }
 
-    private Set<Date> getAllDatesForIP(String ip, Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> e.getIp().equals(ip))
-                .map(LogEntry::getDate)
-                .filter(date -> checkDate(date, after, before))
-                .collect(Collectors.toSet());
+    @Override
+    public Date getLastDate(String user, Event event, Integer task, Date after, Date before) {
+        long last = lastTime(user, event, task, EntryStore.lowerBound(after), EntryStore.upperBound(before));
+        return last == Long.MIN_VALUE ? null : EntryStore.dateOf(last);
     }
 
-    private Set<Status> getAllStatusForIP(String ip, Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> e.getIp().equals(ip))
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .map(LogEntry::getStatus)
-                .collect(Collectors.toSet());
+    @Override
+    public Map<Integer, Long> getTimeFromSolvedToDone(String user, Date after, Date before) {
+        long lo = EntryStore.lowerBound(after);
+        long hi = EntryStore.upperBound(before);
+        Map<Integer, Long> solved = new HashMap<Integer, Long>();
+        for (EntryStore segment : segments(Filter.event(Event.SOLVE_TASK), lo, hi)) {
+            for (int task : segment.userTasks(user, Event.SOLVE_TASK)) {
+                int row = segment.firstRow(user, Event.SOLVE_TASK, task, lo, hi);
+                if (row >= 0) solved.merge(task, segment.time(row), Math::min);
+            }
+        }
+        Map<Integer, Long> result = new HashMap<Integer, Long>();
+        for (Map.Entry<Integer, Long> entry : solved.entrySet()) {
+            long done = firstTime(user, Event.DONE_TASK, entry.getKey(), entry.getValue(), hi);
+            if (done != Long.MAX_VALUE) result.put(entry.getKey(), (done - entry.getValue()) * 1000);
+        }
+        return result;
     }
 
-    private Set<Date> getDatesForUser(String user, Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> e.getUser().equals(user))
-                .map(LogEntry::getDate)
-                .filter(date -> checkDate(date, after, before))
-                .collect(Collectors.toSet());
+    public Set<Date> getAllDates() {
+        return dates(Filter.ALL, null, null);
     }
 
-    private Set<Status> getStatusForUser(String user, Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> e.getUser().equals(user))
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .map(LogEntry::getStatus)
-                .collect(Collectors.toSet());
+    public Set<Status> getAllStatus(Date after, Date before) {
+        return statuses(Filter.ALL, after, before);
     }
 
-    private Set<String> getIpsForDate(Date date, Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> e.getDate().equals(date))
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .map(LogEntry::getIp)
-                .collect(Collectors.toSet());
+    @Override
+    public Set<?> execute(String query) {
+        QueryPlan plan = queries.compile(query);
+        Filter filter = plan.getFilter();
+        Date after = plan.getAfter();
+        Date before = plan.getBefore();
+        return switch (plan.getSelect()) {
+            case IP -> ips(filter, after, before);
+            case USER -> users(filter, after, before);
+            case DATE -> dates(filter, after, before);
+            case EVENT -> events(filter, after, before);
+            case STATUS -> statuses(filter, after, before);
+        };
     }
 
-    private Set<Status> getAllStatusForEvent(Event event, Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> e.getEvent().equals(event))
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .map(LogEntry::getStatus)
-                .collect(Collectors.toSet());
+    /**
+     * Queries answered from an index or a rollup, such as counts, task counts, first dates and the
+     * distinct counts of a sketch, run on their own, as that is cheaper than any scan. All others are
+     * grouped by time range, those collecting the same column under the same filter answered
+     * together, and each group shares one pass over the rows of every partition it may match. The
+     * whole batch reads a single snapshot.
+     */
+    @Override
+    public List<Object> executeAll(List<?> queries) {
+        Snapshot current = snapshot;
+        Object[] results = new Object[queries.size()];
+        Scanned[] scanned = new Scanned[queries.size()];
+        boolean[] counts = new boolean[queries.size()];
+        Map<List<Object>, Scanned> distinct = new HashMap<List<Object>, Scanned>();
+        Map<List<Long>, List<Scanned>> ranges = new LinkedHashMap<List<Long>, List<Scanned>>();
+        for (int i = 0; i < results.length; i++) {
+            Object query = queries.get(i);
+            Scanned item;
+            if (query instanceof String) {
+                item = scanned(this.queries.compile((String) query));
+            } else if (query instanceof QueryCall) {
+                QueryCall call = (QueryCall) query;
+                item = scanned(call);
+                if (item == null) {
+                    results[i] = call.invoke(this);
+                    continue;
+                }
+                counts[i] = call.getMethod().startsWith("getNumberOf");
+            } else {
+                throw new IllegalArgumentException("not a query: " + query);
+            }
+            List<Object> key = List.of(item.field, item.filter, item.lo, item.hi);
+            scanned[i] = distinct.get(key);
+            if (scanned[i] != null) continue;
+            scanned[i] = item;
+            distinct.put(key, item);
+            ranges.computeIfAbsent(List.of(item.lo, item.hi), range -> new ArrayList<Scanned>()).add(item);
+        }
+        for (List<Scanned> group : ranges.values()) {
+            scan(current.partitions, group);
+        }
+        for (int i = 0; i < results.length; i++) {
+            if (scanned[i] != null) results[i] = counts[i] ? scanned[i].size() : scanned[i].values();
+        }
+        return Arrays.asList(results);
     }
 
-    private Set<String> getUsersForDate(Date date, Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> e.getDate().equals(date))
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .map(LogEntry::getUser)
-                .collect(Collectors.toSet());
+    private static void scan(List<Partition> partitions, List<Scanned> group) {
+        long lo = group.get(0).lo;
+        long hi = group.get(0).hi;
+        for (Partition partition : partitions) {
+            List<Scanned> live = new ArrayList<Scanned>();
+            List<Filter> filters = new ArrayList<Filter>();
+            for (Scanned item : group) {
+                if (!partition.mayMatch(item.filter, lo, hi)) continue;
+                live.add(item);
+                filters.add(item.filter);
+            }
+            if (live.isEmpty()) continue;
+            EntryStore segment = partition.store();
+            for (Scanned item : live) item.begin(segment);
+            segment.scan(filters, lo, hi, (filter, base, rows) -> live.get(filter).add(segment, base, rows));
+            for (Scanned item : live) item.end(segment);
+        }
     }
 
-    private Set<String> getUsersForEvent(Event event, Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .filter(e -> e.getEvent().equals(event))
-                .map(LogEntry::getUser)
-                .collect(Collectors.toSet());
+    private static Scanned scanned(QueryPlan plan) {
+        return new Scanned(plan.getSelect(), plan.getFilter(), plan.getAfter(), plan.getBefore());
     }
 
-    private Set<String> getAllIPsForStatus(Status status, Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> e.getStatus().equals(status))
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .map(LogEntry::getIp)
-                .collect(Collectors.toSet());
+    /**
+     * The shared scan form of {@code call}, or null if it is better run on its own. The getNumberOf
+     * calls that qualify count the values collected.
+     */
+    private Scanned scanned(QueryCall call) {
+        return switch (call.getMethod()) {
+            case "getNumberOfUniqueIPs" -> sketchPrecision > 0 ? null : scanned(Field.IP, Filter.ALL, call, 0);
+            case "getUniqueIPs" -> scanned(Field.IP, Filter.ALL, call, 0);
+            case "getIPsForUser" -> scanned(Field.IP, Filter.user((String) call.getArg(0)), call, 1);
+            case "getIPsForEvent" -> scanned(Field.IP, Filter.event((Event) call.getArg(0)), call, 1);
+            case "getIPsForStatus" -> scanned(Field.IP, Filter.status((Status) call.getArg(0)), call, 1);
+            case "getAllUsers" -> new Scanned(Field.USER, Filter.ALL, null, null);
+            case "getNumberOfUsers" -> sketchPrecision > 0 ? null : scanned(Field.USER, Filter.ALL, call, 0);
+            case "getUsers" -> scanned(Field.USER, Filter.ALL, call, 0);
+            case "getNumberOfUserEvents" -> scanned(Field.EVENT, Filter.user((String) call.getArg(0)), call, 1);
+            case "getUsersForIP" -> scanned(Field.USER, Filter.ip((String) call.getArg(0)), call, 1);
+            case "getLoggedUsers" -> scanned(Field.USER, Filter.event(Event.LOGIN), call, 0);
+            case "getDownloadedPluginUsers" -> scanned(Field.USER, Filter.event(Event.DOWNLOAD), call, 0);
+            case "getWroteMessageUsers" -> scanned(Field.USER, Filter.event(Event.WRITE_MESSAGE), call, 0);
+            case "getSolvedTaskUsers" -> scanned(Field.USER, taskFilter(Event.SOLVE_TASK, call), call, 0);
+            case "getDoneTaskUsers" -> scanned(Field.USER, taskFilter(Event.DONE_TASK, call), call, 0);
+            case "getDatesForUserAndEvent" -> scanned(Field.DATE,
+                    Filter.user((String) call.getArg(0)).and(Filter.event((Event) call.getArg(1))), call, 2);
+            case "getDatesWhenSomethingFailed" -> scanned(Field.DATE, Filter.status(Status.FAILED), call, 0);
+            case "getDatesWhenErrorHappened" -> scanned(Field.DATE, Filter.status(Status.ERROR), call, 0);
+            case "getDatesWhenUserWroteMessage" -> scanned(Field.DATE,
+                    Filter.user((String) call.getArg(0)).and(Filter.event(Event.WRITE_MESSAGE)), call, 1);
+            case "getDatesWhenUserDownloadedPlugin" -> scanned(Field.DATE,
+                    Filter.user((String) call.getArg(0)).and(Filter.event(Event.DOWNLOAD)), call, 1);
+            case "getNumberOfAllEvents" -> scanned(Field.EVENT, Filter.ALL, call, 0);
+            case "getAllEvents" -> scanned(Field.EVENT, Filter.ALL, call, 0);
+            case "getEventsForIP" -> scanned(Field.EVENT, Filter.ip((String) call.getArg(0)), call, 1);
+            case "getEventsForUser" -> scanned(Field.EVENT, Filter.user((String) call.getArg(0)), call, 1);
+            case "getFailedEvents" -> scanned(Field.EVENT, Filter.status(Status.FAILED), call, 0);
+            case "getErrorEvents" -> scanned(Field.EVENT, Filter.status(Status.ERROR), call, 0);
+            default -> null;
+        };
     }
 
-    private Set<String> getUsersForStatus(Status status, Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> e.getStatus().equals(status))
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .map(LogEntry::getUser)
-                .collect(Collectors.toSet());
+    private static Scanned scanned(Field field, Filter filter, QueryCall call, int after) {
+        return new Scanned(field, filter, (Date) call.getArg(after), (Date) call.getArg(after + 1));
     }
 
-    private Set<Date> getDateForStatus(Status status, Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> e.getStatus().equals(status))
-                .map(LogEntry::getDate)
-                .filter(date -> checkDate(date, after, before))
-                .collect(Collectors.toSet());
+    private static Filter taskFilter(Event event, QueryCall call) {
+        return call.getArgCount() == 3 ? Filter.task(event, (Integer) call.getArg(2)) : Filter.event(event);
     }
 
-    private Set<Event> getEventForStatus(Status status, Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> e.getStatus().equals(status))
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .map(LogEntry::getEvent)
-                .collect(Collectors.toSet());
+    @Override
+    public Stream<?> stream(String query) {
+        return stream(queries.compile(query));
     }
 
-    private Set<Event> getEventsForDate(Date date, Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> e.getDate().equals(date))
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .map(LogEntry::getEvent)
-                .collect(Collectors.toSet());
+    @Override
+    public Stream<?> stream(QueryPlan plan) {
+        return stream(plan, null);
     }
 
-    private Set<Status> getStatusForDate(Date date, Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> e.getDate().equals(date))
-                .filter(e -> checkDate(e.getDate(), after, before))
-                .map(LogEntry::getStatus)
-                .collect(Collectors.toSet());
+    @Override
+    public Page<?> page(String query, String token, int limit) {
+        return page(queries.compile(query), token, limit);
     }
 
-    private Set<Date> getDatesForEvent(Event event, Date after, Date before) {
-        return logEntries.stream()
-                .filter(e -> e.getEvent().equals(event))
-                .map(LogEntry::getDate)
-                .filter(date -> checkDate(date, after, before))
-                .collect(Collectors.toSet());
+    @Override
+    public Page<?> page(QueryPlan plan, String token, int limit) {
+        if (limit < 1) throw new IllegalArgumentException("limit must be positive: " + limit);
+        Iterator<?> results = stream(plan, token).iterator();
+        List<Object> items = new ArrayList<Object>();
+        while (items.size() < limit && results.hasNext()) items.add(results.next());
+        return new Page<Object>(items, results.hasNext() ? token(items.get(items.size() - 1)) : null);
     }
 
-    @Override
-    public Set<?> execute(String query) {
-        List<String> list = new ArrayList<String>();
-        String[] twoParts = query.split("=");
-        if (twoParts.length == 1) {
-            return switch (query) {
-                case "get ip" -> getUniqueIPs(null, null);
-                case "get user" -> getAllUsers();
-                case "get date" -> getAllDates();
-                case "get event" -> getAllEvents(null, null);
-                case "get status" -> getAllStatus(null, null);
-                default -> null;
-            };
-        }
-        String[] first = twoParts[0].split(" ");
-        for (String part : first) {
-            if (!part.isEmpty()) list.add(part.trim());
-        }
-
-        list.add(twoParts[1].replaceAll("\"", "").trim());
-        if (twoParts[1].contains("and date between")) {
-            String dates = twoParts[1].split("and date between")[1];
-            String[] datesParts = dates.split("and");
-            for (String date : datesParts)
-                list.add(date.replaceAll("\"", "").trim());
-            list.set(4, list.get(4).split("and")[0].trim());
-        }
-        String[] queryParts = list.toArray(new String[0]);
-        Date after = null;
-        Date before = null;
-        if (queryParts.length>5) {
-           try {
-               after = sdf.parse(queryParts[5]);
-               before = sdf.parse(queryParts[6]);
-           } catch (ParseException e) {
-               System.out.println("error");
-           }
-        }
-        switch (queryParts[3]) {
-            case "ip":
-                switch (queryParts[1]) {
-                    case "user":
-                        return getUsersForIP(queryParts[4], after, null);
-                    case "date":
-                        return getAllDatesForIP(queryParts[4], after, before);
-                    case "event":
-                        return getEventsForIP(queryParts[4], after, before);
-                    case "status":
-                        return getAllStatusForIP(queryParts[4], after, before);
-                }
-            case "user":
-                switch (queryParts[1]) {
-                    case "ip":
-                        return getIPsForUser(queryParts[4], after, before);
-                    case "date":
-                        return getDatesForUser(queryParts[4], after, before);
-                    case "event":
-                        return getEventsForUser(queryParts[4], after, before);
-                    case "status":
-                        return getStatusForUser(queryParts[4], after, before);
+    /**
+     * Results of {@code plan} sorted after {@code token}, where a token is the epoch second of a date, an
+     * ip or user string, or an event or status name.
+     */
+    private Stream<?> stream(QueryPlan plan, String token) {
+        Filter filter = plan.getFilter();
+        long lo = EntryStore.lowerBound(plan.getAfter());
+        long hi = EntryStore.upperBound(plan.getBefore());
+        List<EntryStore> current = segments(filter, lo, hi);
+        try {
+            return switch (plan.getSelect()) {
+                case IP -> stream(DistinctValues.ips(current, filter, lo, hi, token));
+                case USER -> stream(DistinctValues.users(current, filter, lo, hi, token));
+                case DATE -> stream(DistinctValues.times(current, filter,
+                        token == null ? lo : Math.max(lo, Long.parseLong(token) + 1), hi)).map(EntryStore::dateOf);
+                case EVENT -> {
+                    Event last = token == null ? null : Event.valueOf(token);
+                    yield events(filter, plan.getAfter(), plan.getBefore()).stream().sorted()
+                            .filter(event -> last == null || event.compareTo(last) > 0);
                 }
-            case "date":
-                Date date = null;
-                try {
-                    date = sdf.parse(queryParts[4]);
-                } catch (ParseException e) {
-                    System.out.println("error parsing date");
+                case STATUS -> {
+                    Status last = token == null ? null : Status.valueOf(token);
+                    yield statuses(filter, plan.getAfter(), plan.getBefore()).stream().sorted()
+                            .filter(status -> last == null || status.compareTo(last) > 0);
                 }
-                switch (queryParts[1]) {
-                    case "ip":
-                        return getIpsForDate(date, after, before);
-                    case "user":
-                        return getUsersForDate(date, after, before);
-                    case "event":
-                        return getEventsForDate(date, after, before);
-                    case "status":
-                        return getStatusForDate(date, after, before);
-                }
-            case "event":
-                switch (queryParts[1]) {
-                    case "ip":
-                        return getIPsForEvent(Event.valueOf(queryParts[4]), after, before);
-                    case "user":
-                        return getUsersForEvent(Event.valueOf(queryParts[4]), after, before);
-                    case "date":
-                        return getDatesForEvent(Event.valueOf(queryParts[4]), after, before);
-                    case "status":
-                        return getAllStatusForEvent(Event.valueOf(queryParts[4]), after, before);
-                }
-            case "status":
-                switch (queryParts[1]) {
-                    case "ip":
-                        return getAllIPsForStatus(Status.valueOf(queryParts[4]), after, before);
-                    case "user":
-                        return getUsersForStatus(Status.valueOf(queryParts[4]), after, before);
-                    case "date":
-                        return getDateForStatus(Status.valueOf(queryParts[4]), after, before);
-                    case "event":
-                        return getEventForStatus(Status.valueOf(queryParts[4]), after, before);
-                }
-            default:
-                return null;
+            };
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("bad page token: " + token, e);
         }
     }
 
-    private static class LogEntry {
-        private final String ip;
-        private final String user;
-        private final Date date;
-        private final Event event;
-        private final int action;
-        private final Status status;
+    private static <T> Stream<T> stream(Iterator<T> values) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(values,
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.NONNULL), false);
+    }
+
+    private static String token(Object value) {
+        if (value instanceof Date) return String.valueOf(((Date) value).getTime() / 1000);
+        if (value instanceof Enum<?>) return ((Enum<?>) value).name();
+        return value.toString();
+    }
 
-        public LogEntry(String ip, String user, Date date, Event event, int action, Status status) {
-            this.ip = ip;
-            this.user = user;
-            this.date = date;
-            this.event = event;
-            this.action = action;
-            this.status = status;
+    /**
+     * A query of a batch answered from a shared scan. Ids seen in the current partition are kept in a
+     * bit set and turned into values when the partition is done, as {@link #collectIps} does.
+     */
+    private static final class Scanned {
+
+        final Field field;
+        final Filter filter;
+        final long lo;
+        final long hi;
+
+        private final Set<String> values = new HashSet<String>();
+        private final IntHashSet addresses = new IntHashSet();
+        private final Set<Date> dates = new HashSet<Date>();
+        private BitSet seen;
+        private long last;
+        private int mask;
+        private boolean taken;
+
+        Scanned(Field field, Filter filter, Date after, Date before) {
+            this.field = field;
+            this.filter = filter;
+            this.lo = EntryStore.lowerBound(after);
+            this.hi = EntryStore.upperBound(before);
         }
 
-        public String getIp() {
-            return ip;
+        void begin(EntryStore segment) {
+            seen = new BitSet(field == Field.IP ? segment.ips().size() : field == Field.USER ? segment.users().size() : 0);
+            last = Long.MIN_VALUE;
         }
 
-        public String getUser() {
-            return user;
+        void add(EntryStore segment, int base, long rows) {
+            switch (field) {
+                case IP -> {
+                    for (; rows != 0; rows &= rows - 1) seen.set(segment.ip(base + Long.numberOfTrailingZeros(rows)));
+                }
+                case USER -> {
+                    for (; rows != 0; rows &= rows - 1) seen.set(segment.user(base + Long.numberOfTrailingZeros(rows)));
+                }
+                case DATE -> {
+                    for (; rows != 0; rows &= rows - 1) {
+                        long time = segment.time(base + Long.numberOfTrailingZeros(rows));
+                        if (time != last) dates.add(EntryStore.dateOf(time));
+                        last = time;
+                    }
+                }
+                case EVENT -> {
+                    for (; rows != 0; rows &= rows - 1) mask |= 1 << segment.event(base + Long.numberOfTrailingZeros(rows));
+                }
+                case STATUS -> {
+                    for (; rows != 0; rows &= rows - 1) mask |= 1 << segment.status(base + Long.numberOfTrailingZeros(rows));
+                }
+            }
         }
 
-        public Date getDate() {
-            return date;
+        void end(EntryStore segment) {
+            if (field == Field.IP) {
+                IpDictionary dictionary = segment.ips();
+                for (int id = seen.nextSetBit(0); id >= 0; id = seen.nextSetBit(id + 1)) {
+                    if (dictionary.isIpv4(id)) addresses.add(dictionary.address(id));
+                    else values.add(dictionary.get(id));
+                }
+            } else if (field == Field.USER) {
+                Dictionary dictionary = segment.users();
+                for (int id = seen.nextSetBit(0); id >= 0; id = seen.nextSetBit(id + 1)) {
+                    values.add(dictionary.get(id));
+                }
+            }
+            seen = null;
         }
 
-        public Event getEvent() {
-            return event;
+        /**
+         * The values collected; the first caller gets the set itself, any other an equal copy.
+         */
+        Set<?> values() {
+            boolean copy = taken;
+            taken = true;
+            return switch (field) {
+                case IP -> {
+                    Set<String> result = new HashSet<String>(values);
+                    addresses.forEach(address -> result.add(Ipv4.format(address)));
+                    yield result;
+                }
+                case USER -> copy ? new HashSet<String>(values) : values;
+                case DATE -> copy ? new HashSet<Date>(dates) : dates;
+                case EVENT -> eventsOf(mask);
+                case STATUS -> statusesOf(mask);
+            };
         }
 
-        public int getAction() {
-            return action;
+        int size() {
+            return switch (field) {
+                case IP -> addresses.size() + values.size();
+                case USER -> values.size();
+                case DATE -> dates.size();
+                case EVENT, STATUS -> Integer.bitCount(mask);
+            };
         }
+    }
 
-        public Status getStatus() {
-            return status;
+    /**
+     * Partitions visible to queries together with the version they belong to. Ingest builds a new
+     * snapshot and publishes it with a single volatile write; a published snapshot is never modified.
+     * The partitions are also kept ordered by first and by last timestamp for first and last lookups.
+     */
+    private static final class Snapshot {
+
+        static final Snapshot EMPTY = new Snapshot(List.of(), 0);
+
+        final List<Partition> partitions;
+        final List<Partition> byMinTime;
+        final List<Partition> byMaxTime;
+        final long version;
+
+        Snapshot(List<Partition> partitions, long version) {
+            this.partitions = partitions;
+            this.byMinTime = partitions.stream().sorted(Comparator.comparingLong(Partition::getMinTime)).toList();
+            this.byMaxTime = partitions.stream().sorted(Comparator.comparingLong(Partition::getMaxTime).reversed()).toList();
+            this.version = version;
         }
     }
-}
\ No newline at end of file
+}
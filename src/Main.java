@@ -1,8 +1,35 @@
+import server.QueryServer;
+import shard.ShardServer;
+
+import java.net.InetAddress;
 import java.nio.file.Paths;
 
 public class Main {
-    public static void main(String[] args) {
-        LogParser logParser = new LogParser(Paths.get("D:/logs/"));
-
+    public static void main(String[] args) throws Exception {
+        if ((args.length == 3 || args.length == 4) && args[0].equals("shard")) {
+            // java Main shard <logDir> <port> [bindAddress]: serves the logs of one shard until the process
+            // is stopped, on loopback unless another address is given
+            LogParser shard = new LogParser(Paths.get(args[1]), Runtime.getRuntime().availableProcessors());
+            InetAddress bindAddress = args.length == 4 ? InetAddress.getByName(args[3]) : InetAddress.getLoopbackAddress();
+            ShardServer server = new ShardServer(shard, bindAddress, Integer.parseInt(args[2]));
+            server.start();
+            System.out.println("shard " + args[1] + " listening on port " + server.getPort());
+            Thread.currentThread().join();
+        }
+        if ((args.length == 3 || args.length == 4) && args[0].equals("serve")) {
+            // java Main serve <logDir> <port> [bindAddress]: answers HTTP queries until the process is
+            // stopped, on loopback unless another address is given
+            LogParser logs = new LogParser(Paths.get(args[1]), Runtime.getRuntime().availableProcessors());
+            InetAddress bindAddress = args.length == 4 ? InetAddress.getByName(args[3]) : InetAddress.getLoopbackAddress();
+            QueryServer server = new QueryServer(logs, bindAddress, Integer.parseInt(args[2]));
+            server.start();
+            System.out.println("serving " + args[1] + " on port " + server.getPort());
+            Thread.currentThread().join();
+        }
+        LogParser logParser = new LogParser(Paths.get("D:/logs/"), Runtime.getRuntime().availableProcessors(),
+                Paths.get("D:/logs/.segments"));
+        logParser.getMetrics().register("D:/logs/");
+        System.out.println(logParser.getIngestReport());
+        System.out.println(logParser.getMetrics().snapshot());
     }
-}
\ No newline at end of file
+}
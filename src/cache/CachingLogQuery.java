@@ -0,0 +1,300 @@
+package cache;
+
+import ql.Field;
+import ql.QueryCompiler;
+import ql.QueryPlan;
+import query.LogQuery;
+import status.Event;
+import status.Status;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * {@link LogQuery} decorator that answers repeated queries from a {@link ResultCache}. Keys are the
+ * method name plus its arguments, with QL text normalized to its compiled plan, so differently spaced
+ * spellings of one query share an entry. Cached results are immutable, and dates are copied on the way
+ * out so that no caller can change them for the next one. The cache is dropped whenever
+ * {@code version} changes, which the delegate does after ingesting new data.
+ */
+public class CachingLogQuery implements LogQuery {
+
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private final LogQuery delegate;
+    private final LongSupplier version;
+    private final ResultCache cache;
+    private final QueryCompiler queries = new QueryCompiler(1024);
+    private volatile long cachedVersion;
+
+    public CachingLogQuery(LogQuery delegate, LongSupplier version, long maxWeight) {
+        this.delegate = delegate;
+        this.version = version;
+        this.cache = new ResultCache(maxWeight);
+        this.cachedVersion = version.getAsLong();
+    }
+
+    public ResultCache.Stats getStats() {
+        return cache.getStats();
+    }
+
+    private void checkVersion() {
+        long current = version.getAsLong();
+        if (current == cachedVersion) return;
+        synchronized (this) {
+            if (current == cachedVersion) return;
+            cachedVersion = current;
+        }
+        cache.invalidate();
+    }
+
+    private static Object key(Object... parts) {
+        for (int i = 0; i < parts.length; i++) {
+            if (parts[i] instanceof Date) parts[i] = ((Date) parts[i]).getTime();
+        }
+        return Arrays.asList(parts);
+    }
+
+    private <T> Set<T> set(Object key, Supplier<Set<T>> loader) {
+        checkVersion();
+        return cache.get(key, () -> Set.copyOf(loader.get()));
+    }
+
+    /**
+     * Like {@link #set}, but kept as epoch millis and handed out as fresh dates, so that a caller
+     * changing one of them does not change the cached entry.
+     */
+    private Set<Date> dates(Object key, Supplier<? extends Set<?>> loader) {
+        checkVersion();
+        Set<Long> times = cache.get(key, () -> {
+            Set<Long> result = new HashSet<Long>();
+            for (Object date : loader.get()) result.add(((Date) date).getTime());
+            return Set.copyOf(result);
+        });
+        Set<Date> result = new HashSet<Date>();
+        for (long time : times) result.add(new Date(time));
+        return Collections.unmodifiableSet(result);
+    }
+
+    private int number(Object key, IntSupplier loader) {
+        checkVersion();
+        return cache.get(key, loader::getAsInt);
+    }
+
+    private Date date(Object key, Supplier<Date> loader) {
+        checkVersion();
+        long time = cache.get(key, () -> {
+            Date date = loader.get();
+            return date == null ? NO_DATE : date.getTime();
+        });
+        return time == NO_DATE ? null : new Date(time);
+    }
+
+    private Map<Integer, Integer> map(Object key, Supplier<Map<Integer, Integer>> loader) {
+        checkVersion();
+        return cache.get(key, () -> Map.copyOf(loader.get()));
+    }
+
+    @Override
+    public int getNumberOfUniqueIPs(Date after, Date before) {
+        return number(key("getNumberOfUniqueIPs", after, before), () -> delegate.getNumberOfUniqueIPs(after, before));
+    }
+
+    @Override
+    public Set<String> getUniqueIPs(Date after, Date before) {
+        return set(key("getUniqueIPs", after, before), () -> delegate.getUniqueIPs(after, before));
+    }
+
+    @Override
+    public Set<String> getIPsForUser(String user, Date after, Date before) {
+        return set(key("getIPsForUser", user, after, before), () -> delegate.getIPsForUser(user, after, before));
+    }
+
+    @Override
+    public Set<String> getIPsForEvent(Event event, Date after, Date before) {
+        return set(key("getIPsForEvent", event, after, before), () -> delegate.getIPsForEvent(event, after, before));
+    }
+
+    @Override
+    public Set<String> getIPsForStatus(Status status, Date after, Date before) {
+        return set(key("getIPsForStatus", status, after, before), () -> delegate.getIPsForStatus(status, after, before));
+    }
+
+    @Override
+    public Set<String> getAllUsers() {
+        return set(key("getAllUsers"), delegate::getAllUsers);
+    }
+
+    @Override
+    public int getNumberOfUsers(Date after, Date before) {
+        return number(key("getNumberOfUsers", after, before), () -> delegate.getNumberOfUsers(after, before));
+    }
+
+    @Override
+    public Set<String> getUsers(Date after, Date before) {
+        return set(key("getUsers", after, before), () -> delegate.getUsers(after, before));
+    }
+
+    @Override
+    public int getNumberOfUserEvents(String user, Date after, Date before) {
+        return number(key("getNumberOfUserEvents", user, after, before),
+                () -> delegate.getNumberOfUserEvents(user, after, before));
+    }
+
+    @Override
+    public Set<String> getUsersForIP(String ip, Date after, Date before) {
+        return set(key("getUsersForIP", ip, after, before), () -> delegate.getUsersForIP(ip, after, before));
+    }
+
+    @Override
+    public Set<String> getLoggedUsers(Date after, Date before) {
+        return set(key("getLoggedUsers", after, before), () -> delegate.getLoggedUsers(after, before));
+    }
+
+    @Override
+    public Set<String> getDownloadedPluginUsers(Date after, Date before) {
+        return set(key("getDownloadedPluginUsers", after, before), () -> delegate.getDownloadedPluginUsers(after, before));
+    }
+
+    @Override
+    public Set<String> getWroteMessageUsers(Date after, Date before) {
+        return set(key("getWroteMessageUsers", after, before), () -> delegate.getWroteMessageUsers(after, before));
+    }
+
+    @Override
+    public Set<String> getSolvedTaskUsers(Date after, Date before) {
+        return set(key("getSolvedTaskUsers", after, before), () -> delegate.getSolvedTaskUsers(after, before));
+    }
+
+    @Override
+    public Set<String> getSolvedTaskUsers(Date after, Date before, int task) {
+        return set(key("getSolvedTaskUsers", after, before, task), () -> delegate.getSolvedTaskUsers(after, before, task));
+    }
+
+    @Override
+    public Set<String> getDoneTaskUsers(Date after, Date before) {
+        return set(key("getDoneTaskUsers", after, before), () -> delegate.getDoneTaskUsers(after, before));
+    }
+
+    @Override
+    public Set<String> getDoneTaskUsers(Date after, Date before, int task) {
+        return set(key("getDoneTaskUsers", after, before, task), () -> delegate.getDoneTaskUsers(after, before, task));
+    }
+
+    @Override
+    public Set<Date> getDatesForUserAndEvent(String user, Event event, Date after, Date before) {
+        return dates(key("getDatesForUserAndEvent", user, event, after, before),
+                () -> delegate.getDatesForUserAndEvent(user, event, after, before));
+    }
+
+    @Override
+    public Set<Date> getDatesWhenSomethingFailed(Date after, Date before) {
+        return dates(key("getDatesWhenSomethingFailed", after, before),
+                () -> delegate.getDatesWhenSomethingFailed(after, before));
+    }
+
+    @Override
+    public Set<Date> getDatesWhenErrorHappened(Date after, Date before) {
+        return dates(key("getDatesWhenErrorHappened", after, before), () -> delegate.getDatesWhenErrorHappened(after, before));
+    }
+
+    @Override
+    public Date getDateWhenUserLoggedFirstTime(String user, Date after, Date before) {
+        return date(key("getDateWhenUserLoggedFirstTime", user, after, before),
+                () -> delegate.getDateWhenUserLoggedFirstTime(user, after, before));
+    }
+
+    @Override
+    public Date getDateWhenUserSolvedTask(String user, int task, Date after, Date before) {
+        return date(key("getDateWhenUserSolvedTask", user, task, after, before),
+                () -> delegate.getDateWhenUserSolvedTask(user, task, after, before));
+    }
+
+    @Override
+    public Date getDateWhenUserDoneTask(String user, int task, Date after, Date before) {
+        return date(key("getDateWhenUserDoneTask", user, task, after, before),
+                () -> delegate.getDateWhenUserDoneTask(user, task, after, before));
+    }
+
+    @Override
+    public Set<Date> getDatesWhenUserWroteMessage(String user, Date after, Date before) {
+        return dates(key("getDatesWhenUserWroteMessage", user, after, before),
+                () -> delegate.getDatesWhenUserWroteMessage(user, after, before));
+    }
+
+    @Override
+    public Set<Date> getDatesWhenUserDownloadedPlugin(String user, Date after, Date before) {
+        return dates(key("getDatesWhenUserDownloadedPlugin", user, after, before),
+                () -> delegate.getDatesWhenUserDownloadedPlugin(user, after, before));
+    }
+
+    @Override
+    public int getNumberOfAllEvents(Date after, Date before) {
+        return number(key("getNumberOfAllEvents", after, before), () -> delegate.getNumberOfAllEvents(after, before));
+    }
+
+    @Override
+    public Set<Event> getAllEvents(Date after, Date before) {
+        return set(key("getAllEvents", after, before), () -> delegate.getAllEvents(after, before));
+    }
+
+    @Override
+    public Set<Event> getEventsForIP(String ip, Date after, Date before) {
+        return set(key("getEventsForIP", ip, after, before), () -> delegate.getEventsForIP(ip, after, before));
+    }
+
+    @Override
+    public Set<Event> getEventsForUser(String user, Date after, Date before) {
+        return set(key("getEventsForUser", user, after, before), () -> delegate.getEventsForUser(user, after, before));
+    }
+
+    @Override
+    public Set<Event> getFailedEvents(Date after, Date before) {
+        return set(key("getFailedEvents", after, before), () -> delegate.getFailedEvents(after, before));
+    }
+
+    @Override
+    public Set<Event> getErrorEvents(Date after, Date before) {
+        return set(key("getErrorEvents", after, before), () -> delegate.getErrorEvents(after, before));
+    }
+
+    @Override
+    public int getNumberOfAttemptToSolveTask(int task, Date after, Date before) {
+        return number(key("getNumberOfAttemptToSolveTask", task, after, before),
+                () -> delegate.getNumberOfAttemptToSolveTask(task, after, before));
+    }
+
+    @Override
+    public int getNumberOfSuccessfulAttemptToSolveTask(int task, Date after, Date before) {
+        return number(key("getNumberOfSuccessfulAttemptToSolveTask", task, after, before),
+                () -> delegate.getNumberOfSuccessfulAttemptToSolveTask(task, after, before));
+    }
+
+    @Override
+    public Map<Integer, Integer> getAllSolvedTasksAndTheirNumber(Date after, Date before) {
+        return map(key("getAllSolvedTasksAndTheirNumber", after, before),
+                () -> delegate.getAllSolvedTasksAndTheirNumber(after, before));
+    }
+
+    @Override
+    public Map<Integer, Integer> getAllDoneTasksAndTheirNumber(Date after, Date before) {
+        return map(key("getAllDoneTasksAndTheirNumber", after, before),
+                () -> delegate.getAllDoneTasksAndTheirNumber(after, before));
+    }
+
+    @Override
+    public Set<?> execute(String query) {
+        QueryPlan plan = queries.compile(query);
+        Object key = key("execute", plan);
+        if (plan.getSelect() == Field.DATE) return dates(key, () -> delegate.execute(query));
+        checkVersion();
+        return cache.get(key, () -> Set.copyOf(delegate.execute(query)));
+    }
+}
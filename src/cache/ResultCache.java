@@ -0,0 +1,135 @@
+package cache;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * LRU cache of query results bounded by total weight, where a collection weighs its size plus one
+ * and any other value weighs one. Thread safe.
+ */
+public class ResultCache {
+
+    private final long maxWeight;
+    private final LinkedHashMap<Object, Object> entries = new LinkedHashMap<Object, Object>(16, 0.75f, true);
+    private long weight;
+    private long generation;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public ResultCache(long maxWeight) {
+        if (maxWeight < 1) throw new IllegalArgumentException("maxWeight must be positive: " + maxWeight);
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Returns the cached value for {@code key}, computing and caching it on a miss. The loader runs
+     * outside the lock, so concurrent misses on the same key may both compute it.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Supplier<T> loader) {
+        long loadGeneration;
+        synchronized (this) {
+            loadGeneration = generation;
+            Object value = entries.get(key);
+            if (value != null) {
+                hits++;
+                return (T) value;
+            }
+            misses++;
+        }
+        T value = loader.get();
+        if (value == null) return null;
+        long valueWeight = weigh(value);
+        if (valueWeight > maxWeight) return value;
+        synchronized (this) {
+            // an invalidation while loading means the value may come from data that is already stale
+            if (generation != loadGeneration) return value;
+            Object previous = entries.put(key, value);
+            if (previous != null) weight -= weigh(previous);
+            weight += valueWeight;
+            Iterator<Map.Entry<Object, Object>> eldest = entries.entrySet().iterator();
+            while (weight > maxWeight && eldest.hasNext()) {
+                weight -= weigh(eldest.next().getValue());
+                eldest.remove();
+                evictions++;
+            }
+        }
+        return value;
+    }
+
+    public synchronized void invalidate() {
+        generation++;
+        if (entries.isEmpty()) return;
+        entries.clear();
+        weight = 0;
+        invalidations++;
+    }
+
+    private static long weigh(Object value) {
+        if (value instanceof Collection<?>) return ((Collection<?>) value).size() + 1;
+        if (value instanceof Map<?, ?>) return ((Map<?, ?>) value).size() + 1;
+        return 1;
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(hits, misses, evictions, invalidations, entries.size(), weight);
+    }
+
+    public static class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long invalidations;
+        private final int entries;
+        private final long weight;
+
+        Stats(long hits, long misses, long evictions, long invalidations, int entries, long weight) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+            this.entries = entries;
+            this.weight = weight;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getInvalidations() {
+            return invalidations;
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+
+        public long getWeight() {
+            return weight;
+        }
+
+        public double getHitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d misses=%d (%.1f%% hit rate) evictions=%d invalidations=%d entries=%d weight=%d",
+                    hits, misses, getHitRate() * 100, evictions, invalidations, entries, weight);
+        }
+    }
+}
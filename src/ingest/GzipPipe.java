@@ -0,0 +1,122 @@
+package ingest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Decompressed contents of a .gz file, inflated on a thread of its own so that decompression overlaps
+ * with whatever consumes the stream. The two sides hand over a fixed set of chunk buffers through
+ * bounded queues, so the inflater runs at most {@link #CHUNKS} chunks ahead and memory stays flat
+ * however large the archive is.
+ */
+public class GzipPipe extends InputStream {
+
+    static final int CHUNK_SIZE = 256 * 1024;
+    static final int CHUNKS = 4;
+
+    private final BlockingQueue<Chunk> free = new ArrayBlockingQueue<Chunk>(CHUNKS);
+    private final BlockingQueue<Chunk> full = new ArrayBlockingQueue<Chunk>(CHUNKS + 1);
+    private final Thread inflater;
+    private Chunk current;
+    private int pos;
+    private boolean eof;
+    private volatile boolean closed;
+
+    public GzipPipe(File file) {
+        for (int i = 0; i < CHUNKS; i++) free.add(new Chunk());
+        inflater = new Thread(() -> inflate(file), "gunzip " + file.getName());
+        inflater.setDaemon(true);
+        inflater.start();
+    }
+
+    private void inflate(File file) {
+        Chunk last = Chunk.END;
+        try (InputStream in = new GZIPInputStream(new FileInputStream(file), 64 * 1024)) {
+            while (!closed) {
+                Chunk chunk = free.take();
+                chunk.length = in.readNBytes(chunk.bytes, 0, chunk.bytes.length);
+                if (chunk.length == 0) break;
+                full.put(chunk);
+            }
+        } catch (InterruptedException e) {
+            return;
+        } catch (IOException e) {
+            last = new Chunk(e);
+        }
+        // there is always room for the end marker: the queue holds one more than there are buffers
+        full.add(last);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (current == null || pos == current.length) {
+            if (!nextChunk()) return -1;
+        }
+        int n = Math.min(len, current.length - pos);
+        System.arraycopy(current.bytes, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    private boolean nextChunk() throws IOException {
+        if (eof) return false;
+        if (current != null) free.add(current);
+        try {
+            current = full.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for " + inflater.getName());
+        }
+        pos = 0;
+        if (current.error != null) {
+            eof = true;
+            throw current.error;
+        }
+        if (current == Chunk.END) {
+            eof = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stops the inflater thread, also when the stream was not read to the end.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        eof = true;
+        inflater.interrupt();
+    }
+
+    private static final class Chunk {
+        static final Chunk END = new Chunk(null);
+
+        final byte[] bytes;
+        final IOException error;
+        int length;
+
+        Chunk() {
+            this.bytes = new byte[CHUNK_SIZE];
+            this.error = null;
+        }
+
+        Chunk(IOException error) {
+            this.bytes = new byte[0];
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package ingest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class IngestReport {
+
+    private final List<FileStats> files = new ArrayList<FileStats>();
+    private final int threads;
+    private long wallNanos;
+
+    public IngestReport(int threads) {
+        this.threads = threads;
+    }
+
+    public void addFile(FileStats stats) {
+        files.add(stats);
+    }
+
+    public void setWallNanos(long wallNanos) {
+        this.wallNanos = wallNanos;
+    }
+
+    public List<FileStats> getFiles() {
+        return Collections.unmodifiableList(files);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    public long getTotalLines() {
+        return files.stream().mapToLong(FileStats::getLines).sum();
+    }
+
+    public long getTotalRejected() {
+        return files.stream().mapToLong(FileStats::getRejected).sum();
+    }
+
+    public long getTotalBytes() {
+        return files.stream().mapToLong(FileStats::getBytes).sum();
+    }
+
+    public double getLinesPerSecond() {
+        return perSecond(getTotalLines(), wallNanos);
+    }
+
+    public double getMegabytesPerSecond() {
+        return perSecond(getTotalBytes(), wallNanos) / (1024 * 1024);
+    }
+
+    private static double perSecond(long amount, long nanos) {
+        return nanos == 0 ? 0 : amount * 1_000_000_000.0 / nanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (FileStats stats : files) {
+            sb.append(stats).append('\n');
+        }
+        sb.append(String.format("total: %d files (%d from segments), %d lines (%d rejected), %d bytes in %.1f ms on %d threads, %.0f lines/s, %.1f MB/s",
+                files.size(), files.stream().filter(FileStats::isLoaded).count(), getTotalLines(), getTotalRejected(), getTotalBytes(), wallNanos / 1_000_000.0, threads,
+                getLinesPerSecond(), getMegabytesPerSecond()));
+        return sb.toString();
+    }
+
+    public static class FileStats {
+        private final String name;
+        private final long bytes;
+        private final long lines;
+        private final long rejected;
+        private final long[] rejects;
+        private final long nanos;
+        private final boolean loaded;
+
+        /**
+         * @param rejects rejected lines per {@link LineTokenizer.Reject} ordinal
+         */
+        public FileStats(String name, long bytes, long lines, long[] rejects, long nanos) {
+            this(name, bytes, lines, rejects, nanos, false);
+        }
+
+        private FileStats(String name, long bytes, long lines, long[] rejects, long nanos, boolean loaded) {
+            this.name = name;
+            this.bytes = bytes;
+            this.lines = lines;
+            this.rejects = rejects.clone();
+            this.rejected = Arrays.stream(rejects).sum();
+            this.nanos = nanos;
+            this.loaded = loaded;
+        }
+
+        /**
+         * Stats for a file whose entries were read from a stored segment instead of being parsed.
+         */
+        public static FileStats loaded(String name, long bytes, long rows, long nanos) {
+            return new FileStats(name, bytes, rows, new long[LineTokenizer.Reject.values().length], nanos, true);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getLines() {
+            return lines;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getRejected(LineTokenizer.Reject reason) {
+            return rejects[reason.ordinal()];
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public boolean isLoaded() {
+            return loaded;
+        }
+
+        public double getLinesPerSecond() {
+            return perSecond(lines, nanos);
+        }
+
+        @Override
+        public String toString() {
+            if (loaded) {
+                return String.format("%s: %d rows loaded from segment in %.1f ms", name, lines, nanos / 1_000_000.0);
+            }
+            return String.format("%s: %d lines (%d rejected), %d bytes in %.1f ms, %.0f lines/s",
+                    name, lines, rejected, bytes, nanos / 1_000_000.0, getLinesPerSecond());
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package ingest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Splits a byte stream into lines without decoding it. Lines end at '\n', '\r' or "\r\n",
+ * the same way {@link java.io.BufferedReader#readLine()} splits them. The current line is
+ * exposed as a range of {@link #buffer()} that is only valid until the next call to {@link #next()}.
+ */
+public class LineReader implements Closeable {
+
+    private final InputStream in;
+    private byte[] buf;
+    private int pos;
+    private int limit;
+    private int start;
+    private int end;
+    private long consumed;
+    private boolean skipLineFeed;
+    private boolean eof;
+    private boolean terminated;
+
+    public LineReader(InputStream in) {
+        this(in, 64 * 1024);
+    }
+
+    public LineReader(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buf = new byte[bufferSize];
+    }
+
+    public boolean next() throws IOException {
+        while (true) {
+            if (skipLineFeed) {
+                if (pos == limit && !fill()) return false;
+                if (buf[pos] == '\n') {
+                    pos++;
+                    consumed++;
+                }
+                skipLineFeed = false;
+            }
+            for (int i = pos; i < limit; i++) {
+                byte b = buf[i];
+                if (b == '\n' || b == '\r') {
+                    start = pos;
+                    end = i;
+                    consumed += i + 1 - pos;
+                    pos = i + 1;
+                    skipLineFeed = b == '\r';
+                    terminated = true;
+                    return true;
+                }
+            }
+            if (!fill()) {
+                if (pos == limit) return false;
+                start = pos;
+                end = limit;
+                consumed += limit - pos;
+                pos = limit;
+                terminated = false;
+                return true;
+            }
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) return false;
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        if (limit == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n < 0) {
+            eof = true;
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+
+    public byte[] buffer() {
+        return buf;
+    }
+
+    public int start() {
+        return start;
+    }
+
+    public int end() {
+        return end;
+    }
+
+    /**
+     * Whether the current line ended with a line terminator rather than the end of the stream.
+     */
+    public boolean isTerminated() {
+        return terminated;
+    }
+
+    /**
+     * Number of bytes consumed so far, including the terminator of the current line.
+     */
+    public long consumed() {
+        return consumed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
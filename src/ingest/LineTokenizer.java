@@ -0,0 +1,266 @@
+package ingest;
+
+import status.Event;
+import status.Status;
+import store.EntryStore;
+
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+
+/**
+ * Parses one tab separated log line ({@code ip, user, dd.MM.yyyy HH:mm:ss, EVENT [task], STATUS})
+ * straight from a byte buffer. It accepts and rejects exactly the lines the old
+ * {@code split}/{@code SimpleDateFormat} parser did, but only allocates on unusual input.
+ * Instances keep per-line state and are not thread safe.
+ */
+public class LineTokenizer {
+
+    public enum Reject {
+        FIELDS, DATE, EVENT, TASK, STATUS
+    }
+
+    private static final Event[] EVENTS = Event.values();
+    private static final Status[] STATUSES = Status.values();
+    private static final byte[][] EVENT_NAMES = names(EVENTS);
+    private static final byte[][] STATUS_NAMES = names(STATUSES);
+    private static final int DATE_LENGTH = "dd.MM.yyyy HH:mm:ss".length();
+
+    private final ZoneId zone;
+    private final ZoneRules rules;
+    private final SimpleDateFormat fallback = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss");
+
+    private final int[] tabs = new int[5];
+    private final byte[] cachedDay = new byte[10];
+    private boolean dayCached;
+    private boolean dayFast;
+    private long dayStart;
+
+    private byte[] buf;
+    private int ipStart, ipEnd, userStart, userEnd;
+    private long time;
+    private Event event;
+    private int task;
+    private Status status;
+    private Reject reject;
+
+    public LineTokenizer() {
+        this.zone = ZoneId.systemDefault();
+        this.rules = zone.getRules();
+    }
+
+    public boolean parse(byte[] buf, int from, int to) {
+        this.buf = buf;
+        int[] tabs = this.tabs;
+        int found = 0;
+        for (int i = from; i < to && found < 5; i++) {
+            if (buf[i] == '\t') tabs[found++] = i;
+        }
+        if (found < 4) return reject(Reject.FIELDS);
+        int statusEnd = found == 5 ? tabs[4] : to;
+
+        ipStart = trimStart(from, tabs[0]);
+        ipEnd = trimEnd(ipStart, tabs[0]);
+        userStart = trimStart(tabs[0] + 1, tabs[1]);
+        userEnd = trimEnd(userStart, tabs[1]);
+
+        if (!parseDate(tabs[1] + 1, tabs[2])) return reject(Reject.DATE);
+        if (!parseEvent(tabs[2] + 1, tabs[3])) return false;
+
+        int s = match(STATUS_NAMES, tabs[3] + 1, statusEnd);
+        if (s < 0) return reject(Reject.STATUS);
+        status = STATUSES[s];
+        reject = null;
+        return true;
+    }
+
+    private boolean reject(Reject reason) {
+        reject = reason;
+        return false;
+    }
+
+    private boolean parseEvent(int from, int to) {
+        int space = from;
+        while (space < to && buf[space] != ' ') space++;
+        int e = match(EVENT_NAMES, from, space);
+        if (e < 0) return reject(Reject.EVENT);
+        event = EVENTS[e];
+        task = 0;
+        if (space == to) return true;
+        int start = space + 1;
+        int end = to;
+        while (end > start && buf[end - 1] == ' ') end--;
+        for (int i = start; i < end; i++) {
+            if (buf[i] == ' ') return true;
+        }
+        if (start == end) return true;
+        if (end - start <= 9) {
+            int value = 0;
+            int i = start;
+            for (; i < end; i++) {
+                int digit = buf[i] - '0';
+                if (digit < 0 || digit > 9) break;
+                value = value * 10 + digit;
+            }
+            if (i == end) {
+                task = value;
+                return true;
+            }
+        }
+        try {
+            task = Integer.parseInt(string(start, end));
+            return true;
+        } catch (NumberFormatException ex) {
+            return reject(Reject.TASK);
+        }
+    }
+
+    private boolean parseDate(int from, int to) {
+        if (to - from == DATE_LENGTH && layoutMatches(from)) {
+            if (!dayCached || !sameDay(from)) cacheDay(from);
+            int h = twoDigits(from + 11);
+            int m = twoDigits(from + 14);
+            int s = twoDigits(from + 17);
+            if (dayFast && h < 24 && m < 60 && s < 60) {
+                time = dayStart + h * 3600 + m * 60 + s;
+                return true;
+            }
+        }
+        try {
+            time = Math.floorDiv(fallback.parse(string(from, to)).getTime(), 1000);
+            return true;
+        } catch (ParseException ex) {
+            return false;
+        }
+    }
+
+    private boolean layoutMatches(int from) {
+        for (int i = 0; i < DATE_LENGTH; i++) {
+            byte b = buf[from + i];
+            switch (i) {
+                case 2, 5 -> {
+                    if (b != '.') return false;
+                }
+                case 10 -> {
+                    if (b != ' ') return false;
+                }
+                case 13, 16 -> {
+                    if (b != ':') return false;
+                }
+                default -> {
+                    if (b < '0' || b > '9') return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean sameDay(int from) {
+        for (int i = 0; i < cachedDay.length; i++) {
+            if (cachedDay[i] != buf[from + i]) return false;
+        }
+        return true;
+    }
+
+    private void cacheDay(int from) {
+        System.arraycopy(buf, from, cachedDay, 0, cachedDay.length);
+        dayCached = true;
+        dayFast = false;
+        int day = twoDigits(from);
+        int month = twoDigits(from + 3);
+        int year = twoDigits(from + 6) * 100 + twoDigits(from + 8);
+        if (year < 1900 || month < 1 || month > 12 || day < 1) return;
+        if (day > LocalDate.of(year, month, 1).lengthOfMonth()) return;
+        ZonedDateTime start = LocalDate.of(year, month, day).atStartOfDay(zone);
+        if (!start.toLocalTime().equals(LocalTime.MIDNIGHT)) return;
+        dayStart = start.toEpochSecond();
+        ZoneOffsetTransition next = rules.nextTransition(Instant.ofEpochSecond(dayStart));
+        dayFast = next == null || next.toEpochSecond() >= dayStart + 86400;
+    }
+
+    private int twoDigits(int at) {
+        return (buf[at] - '0') * 10 + (buf[at + 1] - '0');
+    }
+
+    private int trimStart(int from, int to) {
+        while (from < to && (buf[from] & 0xff) <= ' ') from++;
+        return from;
+    }
+
+    private int trimEnd(int from, int to) {
+        while (to > from && (buf[to - 1] & 0xff) <= ' ') to--;
+        return to;
+    }
+
+    private int match(byte[][] names, int from, int to) {
+        int length = to - from;
+        outer:
+        for (int n = 0; n < names.length; n++) {
+            byte[] name = names[n];
+            if (name.length != length) continue;
+            for (int i = 0; i < length; i++) {
+                if (name[i] != buf[from + i]) continue outer;
+            }
+            return n;
+        }
+        return -1;
+    }
+
+    private String string(int from, int to) {
+        return new String(buf, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    private static byte[][] names(Enum<?>[] values) {
+        byte[][] names = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            names[i] = values[i].name().getBytes(StandardCharsets.US_ASCII);
+        }
+        return names;
+    }
+
+    /**
+     * Appends the last successfully parsed line to {@code store}, interning ip and user from the raw bytes.
+     */
+    public void appendTo(EntryStore store) {
+        store.append(time, store.ips().add(buf, ipStart, ipEnd), store.mutableUsers().add(buf, userStart, userEnd),
+                event, task, status);
+    }
+
+    public String ip() {
+        return string(ipStart, ipEnd);
+    }
+
+    public String user() {
+        return string(userStart, userEnd);
+    }
+
+    /**
+     * Timestamp of the line in epoch seconds, in the default time zone like {@code SimpleDateFormat}.
+     */
+    public long time() {
+        return time;
+    }
+
+    public Event event() {
+        return event;
+    }
+
+    public int task() {
+        return task;
+    }
+
+    public Status status() {
+        return status;
+    }
+
+    public Reject reject() {
+        return reject;
+    }
+}
@@ -0,0 +1,171 @@
+package ingest;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows the .log files of a directory. It remembers how far each file has been read and on
+ * every poll parses only the complete lines appended since then, including files that appeared
+ * after the first load. Files are told apart by {@link #fileKey}, so a file renamed by rotation is
+ * not read again under its new name. A file that shrank is taken to be truncated and is read again
+ * from the start.
+ * Polls are triggered by directory change events and in any case every {@code pollMillis}.
+ * Gzipped archives are left to the initial load.
+ */
+public class LogTailer implements Closeable {
+
+    public interface Listener {
+        /**
+         * Called on the tailer thread with the files that had new lines, {@code startNanos} being when the poll began.
+         */
+        void ingested(List<ParsedFile> files, long startNanos);
+    }
+
+    private final Path logDir;
+    private Map<Object, Long> offsets;
+    private final long pollMillis;
+    private final Listener listener;
+    private Thread thread;
+    private WatchService watcher;
+    private volatile boolean running;
+
+    /**
+     * {@code offsets} gives how far each file, by {@link #fileKey}, has been read already.
+     */
+    public LogTailer(Path logDir, Map<Object, Long> offsets, long pollMillis, Listener listener) {
+        if (pollMillis < 1) throw new IllegalArgumentException("pollMillis must be positive: " + pollMillis);
+        this.logDir = logDir;
+        this.offsets = new HashMap<Object, Long>(offsets);
+        this.pollMillis = pollMillis;
+        this.listener = listener;
+    }
+
+    /**
+     * The .log files and gzipped .log.gz archives in {@code logDir}, by name.
+     */
+    public static File[] listLogs(Path logDir) {
+        File[] logs = new File(String.valueOf(logDir)).listFiles(pathname -> pathname.toString().endsWith(".log")
+                || isArchive(pathname));
+        if (logs == null) return new File[0];
+        Arrays.sort(logs, Comparator.comparing(File::getName));
+        return logs;
+    }
+
+    public static boolean isArchive(File file) {
+        return file.getName().endsWith(".log.gz");
+    }
+
+    /**
+     * Identity of {@code file} that survives renames, the inode on Unix, or its name where the file
+     * system has none.
+     */
+    public static Object fileKey(File file) {
+        try {
+            Object key = Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+            if (key != null) return key;
+        } catch (IOException e) {
+            // gone since it was listed; it will not be read under this key anyway
+        }
+        return file.getName();
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            logDir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | UnsupportedOperationException e) {
+            // polling alone still picks up every change, just not before the next interval
+            watcher = null;
+        }
+        running = true;
+        thread = new Thread(this::run, "log-tailer " + logDir);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                if (watcher != null) {
+                    WatchKey key = watcher.poll(pollMillis, TimeUnit.MILLISECONDS);
+                    if (key != null) {
+                        key.pollEvents();
+                        key.reset();
+                    }
+                } else {
+                    Thread.sleep(pollMillis);
+                }
+                if (running) poll();
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Reads everything appended since the last poll and passes it to the listener.
+     */
+    public synchronized void poll() {
+        long start = System.nanoTime();
+        List<ParsedFile> parsed = new ArrayList<ParsedFile>();
+        // only files still present are kept, so a deleted file's key cannot carry its offset to a new file
+        Map<Object, Long> present = new HashMap<Object, Long>();
+        for (File file : listLogs(logDir)) {
+            // archives are rotated copies of lines that were already followed
+            if (isArchive(file)) continue;
+            Object key = fileKey(file);
+            long offset = offsets.getOrDefault(key, 0L);
+            long length = file.length();
+            if (length < offset) offset = 0;
+            present.put(key, offset);
+            if (length == offset) continue;
+            ParsedFile result = ParsedFile.parse(file, offset, true);
+            present.put(key, result.getEndOffset());
+            if (result.getStats().getLines() == 0) continue;
+            parsed.add(result);
+        }
+        offsets = present;
+        if (!parsed.isEmpty()) listener.ingested(parsed, start);
+    }
+
+    @Override
+    public void close() {
+        Thread stopping;
+        synchronized (this) {
+            running = false;
+            stopping = thread;
+            thread = null;
+        }
+        if (stopping != null) {
+            stopping.interrupt();
+            try {
+                stopping.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            if (watcher != null) watcher.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package ingest;
+
+import store.EntryStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Entries parsed from one log file, or from the bytes appended to it since an earlier parse. Gzipped
+ * archives are decompressed through a {@link GzipPipe} while they are parsed.
+ */
+public class ParsedFile {
+
+    private final File file;
+    private final EntryStore entries;
+    private final IngestReport.FileStats stats;
+    private final long endOffset;
+
+    public ParsedFile(File file, EntryStore entries, IngestReport.FileStats stats, long endOffset) {
+        this.file = file;
+        this.entries = entries;
+        this.stats = stats;
+        this.endOffset = endOffset;
+    }
+
+    /**
+     * Parses {@code file} from byte {@code offset}. With {@code completeLinesOnly} a trailing line
+     * without a terminator is left for a later call, since the writer may still be appending to it.
+     * An archive is always parsed whole; its byte counts and end offset are those of the compressed file.
+     */
+    public static ParsedFile parse(File file, long offset, boolean completeLinesOnly) {
+        if (LogTailer.isArchive(file)) return parseArchive(file);
+        long start = System.nanoTime();
+        EntryStore entries = new EntryStore();
+        LineTokenizer tokenizer = new LineTokenizer();
+        long[] rejects = new long[LineTokenizer.Reject.values().length];
+        long lines = 0;
+        long consumed = 0;
+        long firstReject = -1;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            channel.position(offset);
+            LineReader reader = new LineReader(Channels.newInputStream(channel));
+            while (reader.next()) {
+                if (completeLinesOnly && !reader.isTerminated()) break;
+                long lineStart = offset + consumed;
+                consumed = reader.consumed();
+                lines++;
+                if (tokenizer.parse(reader.buffer(), reader.start(), reader.end())) {
+                    tokenizer.appendTo(entries);
+                } else {
+                    rejects[tokenizer.reject().ordinal()]++;
+                    if (firstReject < 0) firstReject = lineStart;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (firstReject >= 0) logRejects(file.getName(), "byte " + firstReject, rejects);
+        IngestReport.FileStats stats = new IngestReport.FileStats(file.getName(), consumed,
+                lines, rejects, System.nanoTime() - start);
+        return new ParsedFile(file, entries, stats, offset + consumed);
+    }
+
+    private static ParsedFile parseArchive(File file) {
+        long start = System.nanoTime();
+        EntryStore entries = new EntryStore();
+        LineTokenizer tokenizer = new LineTokenizer();
+        long[] rejects = new long[LineTokenizer.Reject.values().length];
+        long lines = 0;
+        long firstReject = -1;
+        long size = file.length();
+        try (LineReader reader = new LineReader(new GzipPipe(file))) {
+            while (reader.next()) {
+                lines++;
+                if (tokenizer.parse(reader.buffer(), reader.start(), reader.end())) {
+                    tokenizer.appendTo(entries);
+                } else {
+                    rejects[tokenizer.reject().ordinal()]++;
+                    if (firstReject < 0) firstReject = lines;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (firstReject >= 0) logRejects(file.getName(), "line " + firstReject, rejects);
+        IngestReport.FileStats stats = new IngestReport.FileStats(file.getName(), size,
+                lines, rejects, System.nanoTime() - start);
+        return new ParsedFile(file, entries, stats, size);
+    }
+
+    /**
+     * One line per parse instead of one per rejected line, which would slow down ingest of a bad file.
+     * The counts by reason also go to the file's stats and from there to the metrics.
+     */
+    private static void logRejects(String name, String first, long[] rejects) {
+        StringBuilder counts = new StringBuilder();
+        long total = 0;
+        for (LineTokenizer.Reject reason : LineTokenizer.Reject.values()) {
+            if (rejects[reason.ordinal()] == 0) continue;
+            if (counts.length() > 0) counts.append(", ");
+            counts.append(rejects[reason.ordinal()]).append(" bad ").append(reason);
+            total += rejects[reason.ordinal()];
+        }
+        System.err.println(name + ": rejected " + total + " lines (" + counts + "), the first at " + first);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public EntryStore getEntries() {
+        return entries;
+    }
+
+    public IngestReport.FileStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Byte offset just past the last line that was consumed, where the next parse of this file starts.
+     */
+    public long getEndOffset() {
+        return endOffset;
+    }
+}
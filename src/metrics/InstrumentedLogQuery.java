@@ -0,0 +1,315 @@
+package metrics;
+
+import ql.QueryCompiler;
+import query.LogQuery;
+import status.Event;
+import status.Status;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link LogQuery} decorator that records the latency of every call in {@link Metrics}, keyed by
+ * method name. QL queries are keyed by {@code ql: } and their shape, so queries that differ only in
+ * their values share a histogram. A call that throws is not recorded.
+ */
+public class InstrumentedLogQuery implements LogQuery {
+
+    private final LogQuery delegate;
+    private final Metrics metrics;
+    private final QueryCompiler queries = new QueryCompiler(1024);
+
+    public InstrumentedLogQuery(LogQuery delegate, Metrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public int getNumberOfUniqueIPs(Date after, Date before) {
+        long start = System.nanoTime();
+        int result = delegate.getNumberOfUniqueIPs(after, before);
+        metrics.recordQuery("getNumberOfUniqueIPs", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Set<String> getUniqueIPs(Date after, Date before) {
+        long start = System.nanoTime();
+        Set<String> result = delegate.getUniqueIPs(after, before);
+        metrics.recordQuery("getUniqueIPs", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Set<String> getIPsForUser(String user, Date after, Date before) {
+        long start = System.nanoTime();
+        Set<String> result = delegate.getIPsForUser(user, after, before);
+        metrics.recordQuery("getIPsForUser", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Set<String> getIPsForEvent(Event event, Date after, Date before) {
+        long start = System.nanoTime();
+        Set<String> result = delegate.getIPsForEvent(event, after, before);
+        metrics.recordQuery("getIPsForEvent", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Set<String> getIPsForStatus(Status status, Date after, Date before) {
+        long start = System.nanoTime();
+        Set<String> result = delegate.getIPsForStatus(status, after, before);
+        metrics.recordQuery("getIPsForStatus", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Set<String> getAllUsers() {
+        long start = System.nanoTime();
+        Set<String> result = delegate.getAllUsers();
+        metrics.recordQuery("getAllUsers", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public int getNumberOfUsers(Date after, Date before) {
+        long start = System.nanoTime();
+        int result = delegate.getNumberOfUsers(after, before);
+        metrics.recordQuery("getNumberOfUsers", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Set<String> getUsers(Date after, Date before) {
+        long start = System.nanoTime();
+        Set<String> result = delegate.getUsers(after, before);
+        metrics.recordQuery("getUsers", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public int getNumberOfUserEvents(String user, Date after, Date before) {
+        long start = System.nanoTime();
+        int result = delegate.getNumberOfUserEvents(user, after, before);
+        metrics.recordQuery("getNumberOfUserEvents", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Set<String> getUsersForIP(String ip, Date after, Date before) {
+        long start = System.nanoTime();
+        Set<String> result = delegate.getUsersForIP(ip, after, before);
+        metrics.recordQuery("getUsersForIP", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Set<String> getLoggedUsers(Date after, Date before) {
+        long start = System.nanoTime();
+        Set<String> result = delegate.getLoggedUsers(after, before);
+        metrics.recordQuery("getLoggedUsers", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Set<String> getDownloadedPluginUsers(Date after, Date before) {
+        long start = System.nanoTime();
+        Set<String> result = delegate.getDownloadedPluginUsers(after, before);
+        metrics.recordQuery("getDownloadedPluginUsers", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Set<String> getWroteMessageUsers(Date after, Date before) {
+        long start = System.nanoTime();
+        Set<String> result = delegate.getWroteMessageUsers(after, before);
+        metrics.recordQuery("getWroteMessageUsers", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Set<String> getSolvedTaskUsers(Date after, Date before) {
+        long start = System.nanoTime();
+        Set<String> result = delegate.getSolvedTaskUsers(after, before);
+        metrics.recordQuery("getSolvedTaskUsers", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Set<String> getSolvedTaskUsers(Date after, Date before, int task) {
+        long start = System.nanoTime();
+        Set<String> result = delegate.getSolvedTaskUsers(after, before, task);
+        metrics.recordQuery("getSolvedTaskUsers(task)", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Set<String> getDoneTaskUsers(Date after, Date before) {
+        long start = System.nanoTime();
+        Set<String> result = delegate.getDoneTaskUsers(after, before);
+        metrics.recordQuery("getDoneTaskUsers", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Set<String> getDoneTaskUsers(Date after, Date before, int task) {
+        long start = System.nanoTime();
+        Set<String> result = delegate.getDoneTaskUsers(after, before, task);
+        metrics.recordQuery("getDoneTaskUsers(task)", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Set<Date> getDatesForUserAndEvent(String user, Event event, Date after, Date before) {
+        long start = System.nanoTime();
+        Set<Date> result = delegate.getDatesForUserAndEvent(user, event, after, before);
+        metrics.recordQuery("getDatesForUserAndEvent", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Set<Date> getDatesWhenSomethingFailed(Date after, Date before) {
+        long start = System.nanoTime();
+        Set<Date> result = delegate.getDatesWhenSomethingFailed(after, before);
+        metrics.recordQuery("getDatesWhenSomethingFailed", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Set<Date> getDatesWhenErrorHappened(Date after, Date before) {
+        long start = System.nanoTime();
+        Set<Date> result = delegate.getDatesWhenErrorHappened(after, before);
+        metrics.recordQuery("getDatesWhenErrorHappened", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Date getDateWhenUserLoggedFirstTime(String user, Date after, Date before) {
+        long start = System.nanoTime();
+        Date result = delegate.getDateWhenUserLoggedFirstTime(user, after, before);
+        metrics.recordQuery("getDateWhenUserLoggedFirstTime", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Date getDateWhenUserSolvedTask(String user, int task, Date after, Date before) {
+        long start = System.nanoTime();
+        Date result = delegate.getDateWhenUserSolvedTask(user, task, after, before);
+        metrics.recordQuery("getDateWhenUserSolvedTask", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Date getDateWhenUserDoneTask(String user, int task, Date after, Date before) {
+        long start = System.nanoTime();
+        Date result = delegate.getDateWhenUserDoneTask(user, task, after, before);
+        metrics.recordQuery("getDateWhenUserDoneTask", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Set<Date> getDatesWhenUserWroteMessage(String user, Date after, Date before) {
+        long start = System.nanoTime();
+        Set<Date> result = delegate.getDatesWhenUserWroteMessage(user, after, before);
+        metrics.recordQuery("getDatesWhenUserWroteMessage", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Set<Date> getDatesWhenUserDownloadedPlugin(String user, Date after, Date before) {
+        long start = System.nanoTime();
+        Set<Date> result = delegate.getDatesWhenUserDownloadedPlugin(user, after, before);
+        metrics.recordQuery("getDatesWhenUserDownloadedPlugin", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public int getNumberOfAllEvents(Date after, Date before) {
+        long start = System.nanoTime();
+        int result = delegate.getNumberOfAllEvents(after, before);
+        metrics.recordQuery("getNumberOfAllEvents", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Set<Event> getAllEvents(Date after, Date before) {
+        long start = System.nanoTime();
+        Set<Event> result = delegate.getAllEvents(after, before);
+        metrics.recordQuery("getAllEvents", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Set<Event> getEventsForIP(String ip, Date after, Date before) {
+        long start = System.nanoTime();
+        Set<Event> result = delegate.getEventsForIP(ip, after, before);
+        metrics.recordQuery("getEventsForIP", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Set<Event> getEventsForUser(String user, Date after, Date before) {
+        long start = System.nanoTime();
+        Set<Event> result = delegate.getEventsForUser(user, after, before);
+        metrics.recordQuery("getEventsForUser", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Set<Event> getFailedEvents(Date after, Date before) {
+        long start = System.nanoTime();
+        Set<Event> result = delegate.getFailedEvents(after, before);
+        metrics.recordQuery("getFailedEvents", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Set<Event> getErrorEvents(Date after, Date before) {
+        long start = System.nanoTime();
+        Set<Event> result = delegate.getErrorEvents(after, before);
+        metrics.recordQuery("getErrorEvents", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public int getNumberOfAttemptToSolveTask(int task, Date after, Date before) {
+        long start = System.nanoTime();
+        int result = delegate.getNumberOfAttemptToSolveTask(task, after, before);
+        metrics.recordQuery("getNumberOfAttemptToSolveTask", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public int getNumberOfSuccessfulAttemptToSolveTask(int task, Date after, Date before) {
+        long start = System.nanoTime();
+        int result = delegate.getNumberOfSuccessfulAttemptToSolveTask(task, after, before);
+        metrics.recordQuery("getNumberOfSuccessfulAttemptToSolveTask", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Map<Integer, Integer> getAllSolvedTasksAndTheirNumber(Date after, Date before) {
+        long start = System.nanoTime();
+        Map<Integer, Integer> result = delegate.getAllSolvedTasksAndTheirNumber(after, before);
+        metrics.recordQuery("getAllSolvedTasksAndTheirNumber", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Map<Integer, Integer> getAllDoneTasksAndTheirNumber(Date after, Date before) {
+        long start = System.nanoTime();
+        Map<Integer, Integer> result = delegate.getAllDoneTasksAndTheirNumber(after, before);
+        metrics.recordQuery("getAllDoneTasksAndTheirNumber", System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Set<?> execute(String query) {
+        long start = System.nanoTime();
+        Set<?> result = delegate.execute(query);
+        metrics.recordQuery("ql: " + queries.compile(query).getShape(), System.nanoTime() - start);
+        return result;
+    }
+}
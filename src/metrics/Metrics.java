@@ -0,0 +1,186 @@
+package metrics;
+
+import ingest.IngestReport;
+import ingest.LineTokenizer;
+import store.EntryStore;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Ingest counters, query latency histograms and memory gauges of one LogParser. Recording only bumps
+ * striped counters, and the gauges walk the segments only when a snapshot is taken, so the metrics can
+ * stay on in production.
+ */
+public class Metrics implements MetricsMXBean {
+
+    private static final LineTokenizer.Reject[] REJECTS = LineTokenizer.Reject.values();
+
+    private final Supplier<List<EntryStore>> segments;
+    private final LongAdder files = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder lines = new LongAdder();
+    private final LongAdder[] rejected = new LongAdder[REJECTS.length];
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<String, LatencyHistogram>();
+
+    /**
+     * @param segments the segments currently held in memory, for the memory gauges
+     */
+    public Metrics(Supplier<List<EntryStore>> segments) {
+        this.segments = segments;
+        for (int i = 0; i < rejected.length; i++) rejected[i] = new LongAdder();
+    }
+
+    /**
+     * Counts a parsed file. Files loaded from stored segments are counted as files and bytes only.
+     */
+    public void recordFile(IngestReport.FileStats stats) {
+        files.increment();
+        bytes.add(stats.getBytes());
+        if (stats.isLoaded()) return;
+        lines.add(stats.getLines());
+        for (LineTokenizer.Reject reason : REJECTS) {
+            long count = stats.getRejected(reason);
+            if (count > 0) rejected[reason.ordinal()].add(count);
+        }
+    }
+
+    public void recordQuery(String name, long nanos) {
+        LatencyHistogram histogram = latencies.get(name);
+        if (histogram == null) histogram = latencies.computeIfAbsent(name, key -> new LatencyHistogram());
+        histogram.record(nanos);
+    }
+
+    public MetricsSnapshot snapshot() {
+        Map<String, Long> rejects = new HashMap<String, Long>();
+        for (LineTokenizer.Reject reason : REJECTS) {
+            rejects.put(reason.name(), rejected[reason.ordinal()].sum());
+        }
+        List<EntryStore> current = segments.get();
+        long rows = 0, columnBytes = 0, indexBytes = 0, dictionaryBytes = 0, offHeapBytes = 0;
+        for (EntryStore segment : current) {
+            rows += segment.size();
+            columnBytes += segment.columnBytes();
+            indexBytes += segment.indexBytes();
+            dictionaryBytes += segment.dictionaryBytes();
+            offHeapBytes += segment.offHeapBytes();
+        }
+        Map<String, LatencyHistogram.Snapshot> histograms = new HashMap<String, LatencyHistogram.Snapshot>();
+        latencies.forEach((name, histogram) -> histograms.put(name, histogram.snapshot()));
+        return new MetricsSnapshot(files.sum(), bytes.sum(), lines.sum(), rejects, current.size(), rows,
+                columnBytes, indexBytes, dictionaryBytes, offHeapBytes, histograms);
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server under
+     * {@code logs:type=LogParser,name=<name>}.
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("logs:type=LogParser,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    @Override
+    public long getFilesIngested() {
+        return files.sum();
+    }
+
+    @Override
+    public long getBytesIngested() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getLinesParsed() {
+        return lines.sum();
+    }
+
+    @Override
+    public long getLinesRejected() {
+        long sum = 0;
+        for (LongAdder count : rejected) sum += count.sum();
+        return sum;
+    }
+
+    @Override
+    public Map<String, Long> getLinesRejectedByReason() {
+        return snapshot().getRejectedByReason();
+    }
+
+    @Override
+    public int getSegments() {
+        return segments.get().size();
+    }
+
+    @Override
+    public long getRows() {
+        return snapshot().getRows();
+    }
+
+    @Override
+    public long getColumnBytes() {
+        return snapshot().getColumnBytes();
+    }
+
+    @Override
+    public long getIndexBytes() {
+        return snapshot().getIndexBytes();
+    }
+
+    @Override
+    public long getDictionaryBytes() {
+        return snapshot().getDictionaryBytes();
+    }
+
+    @Override
+    public long getOffHeapBytes() {
+        return snapshot().getOffHeapBytes();
+    }
+
+    @Override
+    public Map<String, Long> getQueryCounts() {
+        Map<String, Long> result = new HashMap<String, Long>();
+        latencies.forEach((name, histogram) -> result.put(name, histogram.snapshot().getCount()));
+        return result;
+    }
+
+    @Override
+    public Map<String, Double> getQueryMeanMicros() {
+        return latencyMicros(LatencyHistogram.Snapshot::getMean);
+    }
+
+    @Override
+    public Map<String, Double> getQueryP50Micros() {
+        return latencyMicros(snapshot -> snapshot.getValueAtPercentile(50));
+    }
+
+    @Override
+    public Map<String, Double> getQueryP99Micros() {
+        return latencyMicros(snapshot -> snapshot.getValueAtPercentile(99));
+    }
+
+    @Override
+    public Map<String, Double> getQueryMaxMicros() {
+        return latencyMicros(LatencyHistogram.Snapshot::getMax);
+    }
+
+    private Map<String, Double> latencyMicros(ToDoubleFunction<LatencyHistogram.Snapshot> nanos) {
+        Map<String, Double> result = new HashMap<String, Double>();
+        latencies.forEach((name, histogram) -> result.put(name, nanos.applyAsDouble(histogram.snapshot()) / 1000));
+        return result;
+    }
+
+    @Override
+    public String getReport() {
+        return snapshot().toString();
+    }
+}
@@ -0,0 +1,47 @@
+package metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link Metrics}. Latency maps are keyed by query method or QL query shape and hold
+ * microseconds.
+ */
+public interface MetricsMXBean {
+
+    long getFilesIngested();
+
+    long getBytesIngested();
+
+    long getLinesParsed();
+
+    long getLinesRejected();
+
+    Map<String, Long> getLinesRejectedByReason();
+
+    int getSegments();
+
+    long getRows();
+
+    long getColumnBytes();
+
+    long getIndexBytes();
+
+    long getDictionaryBytes();
+
+    long getOffHeapBytes();
+
+    Map<String, Long> getQueryCounts();
+
+    Map<String, Double> getQueryMeanMicros();
+
+    Map<String, Double> getQueryP50Micros();
+
+    Map<String, Double> getQueryP99Micros();
+
+    Map<String, Double> getQueryMaxMicros();
+
+    /**
+     * Same text as {@code Metrics.snapshot().toString()}.
+     */
+    String getReport();
+}
@@ -0,0 +1,110 @@
+package metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Point-in-time copy of {@link Metrics}. Counters are totals since the metrics were created; the
+ * memory gauges describe the segments that were held in memory when the snapshot was taken.
+ */
+public class MetricsSnapshot {
+
+    private final long files;
+    private final long bytes;
+    private final long lines;
+    private final Map<String, Long> rejected;
+    private final int segments;
+    private final long rows;
+    private final long columnBytes;
+    private final long indexBytes;
+    private final long dictionaryBytes;
+    private final long offHeapBytes;
+    private final Map<String, LatencyHistogram.Snapshot> latencies;
+
+    MetricsSnapshot(long files, long bytes, long lines, Map<String, Long> rejected, int segments, long rows,
+                    long columnBytes, long indexBytes, long dictionaryBytes, long offHeapBytes,
+                    Map<String, LatencyHistogram.Snapshot> latencies) {
+        this.files = files;
+        this.bytes = bytes;
+        this.lines = lines;
+        this.rejected = Map.copyOf(rejected);
+        this.segments = segments;
+        this.rows = rows;
+        this.columnBytes = columnBytes;
+        this.indexBytes = indexBytes;
+        this.dictionaryBytes = dictionaryBytes;
+        this.offHeapBytes = offHeapBytes;
+        this.latencies = Map.copyOf(latencies);
+    }
+
+    public long getFiles() {
+        return files;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getLines() {
+        return lines;
+    }
+
+    public long getRejected() {
+        return rejected.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * Rejected lines keyed by the name of their {@code LineTokenizer.Reject} reason.
+     */
+    public Map<String, Long> getRejectedByReason() {
+        return rejected;
+    }
+
+    public int getSegments() {
+        return segments;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getColumnBytes() {
+        return columnBytes;
+    }
+
+    public long getIndexBytes() {
+        return indexBytes;
+    }
+
+    public long getDictionaryBytes() {
+        return dictionaryBytes;
+    }
+
+    /**
+     * Direct and mapped buffers of the off-heap segments.
+     */
+    public long getOffHeapBytes() {
+        return offHeapBytes;
+    }
+
+    /**
+     * Latencies in nanoseconds keyed by query method name, or by {@code ql: } and the query shape.
+     */
+    public Map<String, LatencyHistogram.Snapshot> getLatencies() {
+        return latencies;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("ingest: %d files, %d bytes, %d lines, %d rejected %s%n",
+                files, bytes, lines, getRejected(), new TreeMap<String, Long>(rejected)));
+        sb.append(String.format("store: %d segments, %d rows, %d column bytes, %d index bytes, %d dictionary bytes, "
+                        + "%d off-heap bytes%n",
+                segments, rows, columnBytes, indexBytes, dictionaryBytes, offHeapBytes));
+        latencies.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(e -> sb.append(e.getKey()).append(": ").append(e.getValue()).append(System.lineSeparator()));
+        return sb.toString();
+    }
+}
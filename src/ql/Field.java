@@ -0,0 +1,26 @@
+package ql;
+
+public enum Field {
+    IP("ip"),
+    USER("user"),
+    DATE("date"),
+    EVENT("event"),
+    STATUS("status");
+
+    private final String keyword;
+
+    Field(String keyword) {
+        this.keyword = keyword;
+    }
+
+    public String keyword() {
+        return keyword;
+    }
+
+    static Field of(String keyword) {
+        for (Field field : values()) {
+            if (field.keyword.equals(keyword)) return field;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,63 @@
+package ql;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a query into words, '=' and double-quoted strings. Whitespace only separates tokens.
+ */
+class Lexer {
+
+    enum Kind {
+        WORD, EQUALS, STRING, END
+    }
+
+    static class Token {
+        final Kind kind;
+        final String text;
+        final int position;
+
+        Token(Kind kind, String text, int position) {
+            this.kind = kind;
+            this.text = text;
+            this.position = position;
+        }
+
+        @Override
+        public String toString() {
+            return switch (kind) {
+                case WORD -> "'" + text + "'";
+                case EQUALS -> "'='";
+                case STRING -> "\"" + text + "\"";
+                case END -> "end of query";
+            };
+        }
+    }
+
+    static List<Token> tokenize(String query) {
+        List<Token> tokens = new ArrayList<Token>();
+        int i = 0;
+        while (i < query.length()) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '=') {
+                tokens.add(new Token(Kind.EQUALS, "=", i++));
+            } else if (c == '"') {
+                int end = query.indexOf('"', i + 1);
+                if (end < 0) throw new QLException("unterminated string", query, i);
+                tokens.add(new Token(Kind.STRING, query.substring(i + 1, end), i));
+                i = end + 1;
+            } else {
+                int start = i;
+                while (i < query.length() && !Character.isWhitespace(query.charAt(i))
+                        && query.charAt(i) != '=' && query.charAt(i) != '"') {
+                    i++;
+                }
+                tokens.add(new Token(Kind.WORD, query.substring(start, i), start));
+            }
+        }
+        tokens.add(new Token(Kind.END, "", query.length()));
+        return tokens;
+    }
+}
@@ -0,0 +1,97 @@
+package ql;
+
+import java.util.List;
+
+/**
+ * Recursive descent parser for the query language:
+ * <pre>
+ * query     := 'get' field [ 'for' field '=' value [ 'and' 'date' 'between' value 'and' value ] ]
+ * field     := 'ip' | 'user' | 'date' | 'event' | 'status'
+ * value     := STRING | WORD
+ * </pre>
+ * An ip value in CIDR notation, such as {@code "10.2.0.0/16"}, matches every IPv4 address in that subnet.
+ */
+public class Parser {
+
+    private final String query;
+    private final List<Lexer.Token> tokens;
+    private int position;
+
+    private Parser(String query) {
+        this.query = query;
+        this.tokens = Lexer.tokenize(query);
+    }
+
+    public static Query parse(String query) {
+        if (query == null) throw new QLException("empty query", "null", 0);
+        return new Parser(query).query();
+    }
+
+    private Query query() {
+        keyword("get");
+        Field select = field();
+        Field condition = null;
+        String value = null;
+        String after = null;
+        String before = null;
+        if (peek().kind != Lexer.Kind.END) {
+            keyword("for");
+            condition = field();
+            expect(Lexer.Kind.EQUALS);
+            value = value();
+            if (peek().kind != Lexer.Kind.END) {
+                keyword("and");
+                keyword("date");
+                keyword("between");
+                after = value();
+                keyword("and");
+                before = value();
+            }
+        }
+        expect(Lexer.Kind.END);
+        return new Query(select, condition, value, after, before);
+    }
+
+    private Field field() {
+        Lexer.Token token = next();
+        Field field = token.kind == Lexer.Kind.WORD ? Field.of(token.text) : null;
+        if (field == null) throw error("expected ip, user, date, event or status but found " + token, token);
+        return field;
+    }
+
+    private String value() {
+        Lexer.Token token = next();
+        if (token.kind != Lexer.Kind.STRING && token.kind != Lexer.Kind.WORD) {
+            throw error("expected a value but found " + token, token);
+        }
+        return token.text.trim();
+    }
+
+    private void keyword(String keyword) {
+        Lexer.Token token = next();
+        if (token.kind != Lexer.Kind.WORD || !token.text.equals(keyword)) {
+            throw error("expected '" + keyword + "' but found " + token, token);
+        }
+    }
+
+    private void expect(Lexer.Kind kind) {
+        Lexer.Token token = next();
+        if (token.kind != kind) {
+            throw error("expected " + (kind == Lexer.Kind.END ? "end of query" : "'='") + " but found " + token, token);
+        }
+    }
+
+    private Lexer.Token peek() {
+        return tokens.get(position);
+    }
+
+    private Lexer.Token next() {
+        Lexer.Token token = tokens.get(position);
+        if (token.kind != Lexer.Kind.END) position++;
+        return token;
+    }
+
+    private QLException error(String message, Lexer.Token token) {
+        return new QLException(message, query, token.position);
+    }
+}
@@ -0,0 +1,32 @@
+package ql;
+
+public class QLException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String query;
+    private final int position;
+
+    public QLException(String message, String query) {
+        super(message + " in query: " + query);
+        this.query = query;
+        this.position = -1;
+    }
+
+    public QLException(String message, String query, int position) {
+        super(message + " at position " + position + " in query: " + query);
+        this.query = query;
+        this.position = position;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * Offset of the offending token, or -1 when the error is about a value rather than the syntax.
+     */
+    public int getPosition() {
+        return position;
+    }
+}
@@ -0,0 +1,50 @@
+package ql;
+
+/**
+ * Syntax tree of {@code get <field> [for <field> = "<value>" [and date between "<after>" and "<before>"]]}.
+ * Values are kept as written; {@link QueryCompiler} checks and converts them.
+ */
+public class Query {
+
+    private final Field select;
+    private final Field condition;
+    private final String value;
+    private final String after;
+    private final String before;
+
+    Query(Field select, Field condition, String value, String after, String before) {
+        this.select = select;
+        this.condition = condition;
+        this.value = value;
+        this.after = after;
+        this.before = before;
+    }
+
+    public Field getSelect() {
+        return select;
+    }
+
+    public Field getCondition() {
+        return condition;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public String getAfter() {
+        return after;
+    }
+
+    public String getBefore() {
+        return before;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("get ").append(select.keyword());
+        if (condition != null) sb.append(" for ").append(condition.keyword()).append(" = \"").append(value).append('"');
+        if (after != null) sb.append(" and date between \"").append(after).append("\" and \"").append(before).append('"');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,87 @@
+package ql;
+
+import status.Event;
+import status.Status;
+import store.Filter;
+import store.Subnet;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Turns query text into {@link QueryPlan}s and keeps up to {@code capacity} of them, so a repeated
+ * query is only parsed once. Lookups take no lock; when the cache is full an arbitrary plan is dropped.
+ */
+public class QueryCompiler {
+
+    private final Map<String, QueryPlan> plans = new ConcurrentHashMap<String, QueryPlan>();
+    private final int capacity;
+
+    public QueryCompiler(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        this.capacity = capacity;
+    }
+
+    public QueryPlan compile(String text) {
+        QueryPlan plan = plans.get(text);
+        if (plan != null) return plan;
+        plan = compile(Parser.parse(text), text);
+        QueryPlan previous = plans.putIfAbsent(text, plan);
+        if (previous != null) return previous;
+        Iterator<String> eldest = plans.keySet().iterator();
+        while (plans.size() > capacity && eldest.hasNext()) {
+            String key = eldest.next();
+            if (!key.equals(text)) eldest.remove();
+        }
+        return plan;
+    }
+
+    public int size() {
+        return plans.size();
+    }
+
+    static QueryPlan compile(Query query, String text) {
+        SimpleDateFormat format = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss");
+        Filter filter = Filter.ALL;
+        if (query.getCondition() != null) {
+            String value = query.getValue();
+            filter = switch (query.getCondition()) {
+                case IP -> value.indexOf('/') >= 0 ? Filter.subnet(subnet(value, text)) : Filter.ip(value);
+                case USER -> Filter.user(value);
+                case DATE -> Filter.date(date(format, value, text));
+                case EVENT -> Filter.event(constant(Event.class, value, text));
+                case STATUS -> Filter.status(constant(Status.class, value, text));
+            };
+        }
+        Date after = query.getAfter() == null ? null : date(format, query.getAfter(), text);
+        Date before = query.getBefore() == null ? null : date(format, query.getBefore(), text);
+        return new QueryPlan(query.getSelect(), filter, after, before);
+    }
+
+    private static Date date(SimpleDateFormat format, String value, String text) {
+        try {
+            return format.parse(value);
+        } catch (ParseException e) {
+            throw new QLException("invalid date \"" + value + "\", expected dd.MM.yyyy HH:mm:ss", text);
+        }
+    }
+
+    private static Subnet subnet(String value, String text) {
+        try {
+            return Subnet.parse(value);
+        } catch (IllegalArgumentException e) {
+            throw new QLException("invalid subnet \"" + value + "\", expected a.b.c.d/prefix", text);
+        }
+    }
+
+    private static <E extends Enum<E>> E constant(Class<E> type, String value, String text) {
+        for (E constant : type.getEnumConstants()) {
+            if (constant.name().equals(value)) return constant;
+        }
+        throw new QLException("unknown " + type.getSimpleName().toLowerCase() + " \"" + value + "\"", text);
+    }
+}
@@ -0,0 +1,85 @@
+package ql;
+
+import store.Filter;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Compiled form of a {@link Query}: the column to return, the row filter and the exclusive date bounds.
+ * Plans are immutable and do not depend on the loaded data, so they can be cached and reused.
+ */
+public class QueryPlan {
+
+    private final Field select;
+    private final Filter filter;
+    private final Long after;
+    private final Long before;
+    private final String shape;
+
+    public QueryPlan(Field select, Filter filter, Date after, Date before) {
+        this.select = select;
+        this.filter = filter;
+        this.after = after == null ? null : after.getTime();
+        this.before = before == null ? null : before.getTime();
+        this.shape = shape(select, filter, after != null || before != null);
+    }
+
+    private static String shape(Field select, Filter filter, boolean range) {
+        List<String> fields = new ArrayList<String>();
+        if (filter.getIp() != null) fields.add(Field.IP.keyword());
+        if (filter.getSubnet() != null) fields.add(Field.IP.keyword() + " subnet");
+        if (filter.getUser() != null) fields.add(Field.USER.keyword());
+        if (filter.getTime() != null) fields.add(Field.DATE.keyword());
+        if (filter.getEvent() != null) fields.add(Field.EVENT.keyword());
+        if (filter.getStatus() != null) fields.add(Field.STATUS.keyword());
+        if (range) fields.add("date between");
+        String shape = "get " + select.keyword();
+        return fields.isEmpty() ? shape : shape + " for " + String.join(" and ", fields);
+    }
+
+    public Field getSelect() {
+        return select;
+    }
+
+    public Filter getFilter() {
+        return filter;
+    }
+
+    public Date getAfter() {
+        return after == null ? null : new Date(after);
+    }
+
+    public Date getBefore() {
+        return before == null ? null : new Date(before);
+    }
+
+    /**
+     * The query with its values left out, e.g. {@code get ip for user and date between}, for grouping
+     * statistics of queries that differ only in their arguments.
+     */
+    public String getShape() {
+        return shape;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof QueryPlan)) return false;
+        QueryPlan other = (QueryPlan) o;
+        return select == other.select && filter.equals(other.filter)
+                && Objects.equals(after, other.after) && Objects.equals(before, other.before);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(select, filter, after, before);
+    }
+
+    @Override
+    public String toString() {
+        return "select " + select.keyword() + " where " + filter + " after " + after + " before " + before;
+    }
+}
@@ -0,0 +1,16 @@
+package query;
+
+import java.util.List;
+
+/**
+ * Runs many queries together, such as the widgets of one dashboard, so that queries over the same
+ * range share their work instead of each scanning the entries on its own.
+ */
+public interface BatchQuery {
+
+    /**
+     * Results of {@code queries}, each a QL string or a {@link QueryCall}, in the same order and
+     * equal to what each query returns on its own.
+     */
+    List<Object> executeAll(List<?> queries);
+}
@@ -0,0 +1,26 @@
+package query;
+
+import ql.QueryPlan;
+
+import java.util.stream.Stream;
+
+/**
+ * Lazy counterpart of {@link QLQuery}: results come back sorted (dates by time, ips and users as
+ * strings, events and statuses in declaration order) and without duplicates, and are computed as
+ * they are consumed, so memory stays bounded by what the caller keeps.
+ */
+public interface CursorQuery {
+
+    Stream<?> stream(String query);
+
+    Stream<?> stream(QueryPlan plan);
+
+    /**
+     * Up to {@code limit} results following {@code token}, which is null for the first page and otherwise
+     * the next token of the previous page of the same query. Results added by ingest in between show up
+     * in later pages if they sort after the token.
+     */
+    Page<?> page(String query, String token, int limit);
+
+    Page<?> page(QueryPlan plan, String token, int limit);
+}
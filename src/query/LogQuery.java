@@ -0,0 +1,4 @@
+package query;
+
+public interface LogQuery extends IPQuery, UserQuery, DateQuery, EventQuery, QLQuery {
+}
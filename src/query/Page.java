@@ -0,0 +1,31 @@
+package query;
+
+import java.util.List;
+
+/**
+ * One page of a {@link CursorQuery} result. Pass {@link #getNextToken()} to the next call to continue
+ * after the last item; it is null on the last page.
+ */
+public class Page<T> {
+
+    private final List<T> items;
+    private final String nextToken;
+
+    public Page(List<T> items, String nextToken) {
+        this.items = List.copyOf(items);
+        this.nextToken = nextToken;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    @Override
+    public String toString() {
+        return items + (nextToken == null ? "" : " next=" + nextToken);
+    }
+}
@@ -0,0 +1,67 @@
+package query;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * One call of a typed {@link LogQuery} method, by name and arguments, for {@link BatchQuery}.
+ * Overloads are told apart by their number of arguments.
+ */
+public final class QueryCall {
+
+    private final Method method;
+    private final Object[] args;
+
+    public QueryCall(String method, Object... args) {
+        this.method = find(method, args.length);
+        this.args = args.clone();
+        Class<?>[] types = this.method.getParameterTypes();
+        for (int i = 0; i < types.length; i++) {
+            Class<?> type = types[i] == int.class ? Integer.class : types[i];
+            if (args[i] == null ? types[i].isPrimitive() : !type.isInstance(args[i])) {
+                throw new IllegalArgumentException("argument " + i + " of " + method + " must be a " + types[i].getSimpleName());
+            }
+        }
+    }
+
+    private static Method find(String name, int count) {
+        for (Method method : LogQuery.class.getMethods()) {
+            if (method.getName().equals(name) && method.getParameterCount() == count && !name.equals("execute")) {
+                return method;
+            }
+        }
+        throw new IllegalArgumentException("no query method " + name + " with " + count + " arguments");
+    }
+
+    public String getMethod() {
+        return method.getName();
+    }
+
+    public int getArgCount() {
+        return args.length;
+    }
+
+    public Object getArg(int index) {
+        return args[index];
+    }
+
+    /**
+     * Runs the call on {@code query} on its own.
+     */
+    public Object invoke(LogQuery query) {
+        try {
+            return method.invoke(query, args);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return method.getName() + Arrays.toString(args);
+    }
+}
@@ -0,0 +1,26 @@
+package query;
+
+import status.Event;
+
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * What one user did first and last, and how long the user took to get a solved task done, looked up
+ * in per-user timelines instead of scanning the entries.
+ */
+public interface TimelineQuery {
+
+    /**
+     * When {@code user} first had {@code event}, for {@code task} unless it is null, or null if never.
+     */
+    Date getFirstDate(String user, Event event, Integer task, Date after, Date before);
+
+    Date getLastDate(String user, Event event, Integer task, Date after, Date before);
+
+    /**
+     * Milliseconds from the first SOLVE_TASK of each task by {@code user} to the first DONE_TASK of the
+     * same task at or after it, for the tasks that have both.
+     */
+    Map<Integer, Long> getTimeFromSolvedToDone(String user, Date after, Date before);
+}
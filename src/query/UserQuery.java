@@ -9,6 +9,11 @@ public interface UserQuery {
 
     int getNumberOfUsers(Date after, Date before);
 
+    /**
+     * Users with any event in the range; their number is {@link #getNumberOfUsers}.
+     */
+    Set<String> getUsers(Date after, Date before);
+
     int getNumberOfUserEvents(String user, Date after, Date before);
 
     Set<String> getUsersForIP(String ip, Date after, Date before);
@@ -0,0 +1,77 @@
+package server;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lets at most {@code maxInFlight} requests run at once. Further requests wait in arrival order, up to
+ * {@code maxQueued} of them and each only until its deadline; a request that finds the queue full or
+ * whose deadline passes is turned away, so overload shows up as fast rejections rather than as ever
+ * longer waits.
+ */
+public class AdmissionControl {
+
+    private final Semaphore permits;
+    private final int maxInFlight;
+    private final int maxQueued;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public AdmissionControl(int maxInFlight, int maxQueued) {
+        if (maxInFlight < 1) throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        if (maxQueued < 0) throw new IllegalArgumentException("maxQueued must not be negative: " + maxQueued);
+        this.permits = new Semaphore(maxInFlight, true);
+        this.maxInFlight = maxInFlight;
+        this.maxQueued = maxQueued;
+    }
+
+    /**
+     * Waits until the request may run or {@code deadlineNanos}, in {@link System#nanoTime()} terms,
+     * has passed. On true the caller must {@link #release()} when done.
+     */
+    public boolean acquire(long deadlineNanos) throws InterruptedException {
+        // with a timeout, even a zero one, the fair semaphore does not let this request overtake waiting ones
+        if (permits.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+            admitted.increment();
+            return true;
+        }
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            rejected.increment();
+            return false;
+        }
+        try {
+            if (permits.tryAcquire(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                admitted.increment();
+                return true;
+            }
+            rejected.increment();
+            return false;
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int getInFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public long getAdmitted() {
+        return admitted.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+}
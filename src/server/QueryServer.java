@@ -0,0 +1,332 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import ql.QueryCompiler;
+import query.LogQuery;
+import status.Event;
+import status.Status;
+import store.Filter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Embedded HTTP front end for a {@link LogQuery}. It answers GET requests with JSON:
+ * <pre>
+ * /ql?q=get ip for user = "Amigo"                   QL, as {@link LogQuery#execute}
+ * /query/getIPsForUser?user=Amigo&amp;after=&amp;before=   a typed method; dates in epoch milliseconds
+ * /admission                                        in-flight, queued and rejected counts
+ * </pre>
+ * Typed methods take their arguments from the {@code after}, {@code before}, {@code user}, {@code ip},
+ * {@code event}, {@code status} and {@code task} parameters.
+ * <p>
+ * Requests run on a virtual thread each where the runtime has them, otherwise on a cached pool, and
+ * pass admission control in one of two lanes: lookups by user, ip or exact date, and scans, which is
+ * everything else. Each lane has its own limit on requests in flight and its own bounded queue, so a
+ * burst of full-range scans waits, and is eventually turned away with 503, without holding up lookups.
+ * <p>
+ * There is no authentication, so the server listens on the loopback interface unless given another
+ * address to bind to.
+ */
+public class QueryServer implements Closeable {
+
+    private final LogQuery delegate;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AdmissionControl scans;
+    private final AdmissionControl lookups;
+    private final long queueNanos;
+    private final QueryCompiler queries = new QueryCompiler(1024);
+
+    /**
+     * Lets as many scans run as there are processors and four times as many lookups, each lane
+     * queueing up to 64 more requests for at most a second.
+     */
+    public QueryServer(LogQuery delegate, int port) throws IOException {
+        this(delegate, InetAddress.getLoopbackAddress(), port);
+    }
+
+    public QueryServer(LogQuery delegate, InetAddress bindAddress, int port) throws IOException {
+        this(delegate, bindAddress, port, Runtime.getRuntime().availableProcessors(),
+                4 * Runtime.getRuntime().availableProcessors(), 64, 1000);
+    }
+
+    public QueryServer(LogQuery delegate, int port, int maxScans, int maxLookups, int maxQueued, long queueMillis)
+            throws IOException {
+        this(delegate, InetAddress.getLoopbackAddress(), port, maxScans, maxLookups, maxQueued, queueMillis);
+    }
+
+    /**
+     * @param bindAddress  the wildcard address listens on all interfaces
+     * @param port         0 picks a free port, see {@link #getPort()}
+     * @param queueMillis  how long a request may wait for admission before it is turned away
+     */
+    public QueryServer(LogQuery delegate, InetAddress bindAddress, int port, int maxScans, int maxLookups,
+                       int maxQueued, long queueMillis) throws IOException {
+        if (queueMillis < 0) throw new IllegalArgumentException("queueMillis must not be negative: " + queueMillis);
+        this.delegate = delegate;
+        this.scans = new AdmissionControl(maxScans, maxQueued);
+        this.lookups = new AdmissionControl(maxLookups, maxQueued);
+        this.queueNanos = TimeUnit.MILLISECONDS.toNanos(queueMillis);
+        this.executor = requestExecutor();
+        this.server = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+        server.setExecutor(executor);
+        server.createContext("/ql", this::handle);
+        server.createContext("/query/", this::handle);
+        server.createContext("/admission", this::handle);
+    }
+
+    /**
+     * A new virtual thread per task on Java 21 and later, found reflectively so that the server still
+     * builds and runs on 17, where a cached pool of daemon threads takes its place. Neither needs a
+     * size, since admission control bounds the work that is running or waiting.
+     */
+    private static ExecutorService requestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "query-server");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public AdmissionControl getScans() {
+        return scans;
+    }
+
+    public AdmissionControl getLookups() {
+        return lookups;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long deadline = System.nanoTime() + queueNanos;
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                send(exchange, 405, error("only GET is supported"));
+                return;
+            }
+            String path = exchange.getRequestURI().getPath();
+            if (path.equals("/admission")) {
+                send(exchange, 200, admission());
+                return;
+            }
+            Map<String, String> params = parameters(exchange.getRequestURI().getRawQuery());
+            Request request = path.equals("/ql") ? ql(params) : typed(path.substring("/query/".length()), params);
+            if (request == null) {
+                send(exchange, 404, error("unknown query " + path));
+                return;
+            }
+            AdmissionControl lane = request.lookup ? lookups : scans;
+            if (!lane.acquire(deadline)) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 503, error("too many queries, try again later"));
+                return;
+            }
+            Object result;
+            try {
+                result = request.query.get();
+            } finally {
+                lane.release();
+            }
+            StringBuilder json = new StringBuilder();
+            json(json, result);
+            send(exchange, 200, json.toString());
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, error(e.getMessage()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            send(exchange, 503, error("server is shutting down"));
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            send(exchange, 500, error(String.valueOf(e)));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static class Request {
+
+        final boolean lookup;
+        final Supplier<Object> query;
+
+        Request(boolean lookup, Supplier<Object> query) {
+            this.lookup = lookup;
+            this.query = query;
+        }
+    }
+
+    private Request ql(Map<String, String> params) {
+        String text = required(params, "q");
+        Filter filter = queries.compile(text).getFilter();
+        boolean lookup = filter.getIp() != null || filter.getUser() != null || filter.getTime() != null || filter.isEmpty();
+        return new Request(lookup, () -> delegate.execute(text));
+    }
+
+    /**
+     * Call of the {@link LogQuery} method {@code name}; of two overloads, the one taking a task is
+     * chosen when a task is given. Null if there is no such method.
+     */
+    private Request typed(String name, Map<String, String> params) {
+        Method method = null;
+        for (Method candidate : LogQuery.class.getMethods()) {
+            if (!candidate.getName().equals(name) || name.equals("execute")) continue;
+            boolean takesTask = false;
+            for (Class<?> type : candidate.getParameterTypes()) takesTask |= type == int.class;
+            if (method == null || takesTask == params.containsKey("task")) method = candidate;
+        }
+        if (method == null) return null;
+        Class<?>[] types = method.getParameterTypes();
+        Object[] args = new Object[types.length];
+        boolean lookup = false;
+        int dates = 0;
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] == Date.class) {
+                String value = params.get(dates++ == 0 ? "after" : "before");
+                args[i] = value == null || value.isEmpty() ? null : new Date(Long.parseLong(value));
+            } else if (types[i] == String.class) {
+                args[i] = required(params, name.endsWith("ForIP") ? "ip" : "user");
+                lookup = true;
+            } else if (types[i] == int.class) {
+                args[i] = Integer.parseInt(required(params, "task"));
+            } else if (types[i] == Event.class) {
+                args[i] = Event.valueOf(required(params, "event"));
+            } else if (types[i] == Status.class) {
+                args[i] = Status.valueOf(required(params, "status"));
+            }
+        }
+        Method call = method;
+        return new Request(lookup, () -> invoke(call, args));
+    }
+
+    private Object invoke(Method method, Object[] args) {
+        try {
+            return method.invoke(delegate, args);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null) throw new IllegalArgumentException("missing parameter " + name);
+        return value;
+    }
+
+    private static Map<String, String> parameters(String rawQuery) {
+        Map<String, String> params = new HashMap<String, String>();
+        if (rawQuery == null) return params;
+        for (String pair : rawQuery.split("&")) {
+            if (pair.isEmpty()) continue;
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.put(name, value);
+        }
+        return params;
+    }
+
+    private String admission() {
+        return String.format("{\"scans\":%s,\"lookups\":%s}", admission(scans), admission(lookups));
+    }
+
+    private static String admission(AdmissionControl lane) {
+        return String.format("{\"inFlight\":%d,\"queued\":%d,\"admitted\":%d,\"rejected\":%d}",
+                lane.getInFlight(), lane.getQueued(), lane.getAdmitted(), lane.getRejected());
+    }
+
+    private static String error(String message) {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        json(json, message);
+        return json.append('}').toString();
+    }
+
+    /**
+     * Sets become arrays in their natural order, task count maps objects keyed by task, dates epoch
+     * milliseconds, and events, statuses and strings JSON strings.
+     */
+    private static void json(StringBuilder out, Object value) {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof Number) {
+            out.append(value);
+        } else if (value instanceof Date) {
+            out.append(((Date) value).getTime());
+        } else if (value instanceof Collection) {
+            out.append('[');
+            Iterator<?> elements = ((Collection<?>) value).stream().sorted().iterator();
+            while (elements.hasNext()) {
+                json(out, elements.next());
+                if (elements.hasNext()) out.append(',');
+            }
+            out.append(']');
+        } else if (value instanceof Map) {
+            out.append('{');
+            Iterator<? extends Map.Entry<?, ?>> entries = new TreeMap<Object, Object>((Map<?, ?>) value).entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<?, ?> entry = entries.next();
+                json(out, String.valueOf(entry.getKey()));
+                out.append(':');
+                json(out, entry.getValue());
+                if (entries.hasNext()) out.append(',');
+            }
+            out.append('}');
+        } else {
+            String text = value.toString();
+            out.append('"');
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '"' || c == '\\') out.append('\\').append(c);
+                else if (c < 0x20) out.append(String.format("\\u%04x", (int) c));
+                else out.append(c);
+            }
+            out.append('"');
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,20 @@
+package shard;
+
+/**
+ * Thrown by {@link ShardedLogQuery} when no shard answered a call.
+ */
+public class ShardException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ShardReport report;
+
+    public ShardException(ShardReport report) {
+        super("no shard answered " + report);
+        this.report = report;
+    }
+
+    public ShardReport getReport() {
+        return report;
+    }
+}
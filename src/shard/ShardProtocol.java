@@ -0,0 +1,126 @@
+package shard;
+
+import status.Event;
+import status.Status;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Wire format between {@link ShardedLogQuery} and {@link ShardServer}. A request is the method name
+ * followed by its argument count and tagged arguments; the reply is a status byte followed by the
+ * tagged result, or by an error message. Values are limited to what the query methods take and
+ * return: ints, strings, dates, events, statuses, sets of those and task count maps.
+ * <pre>
+ * request: utf method, u8 count, value * count
+ * reply:   u8 OK value | u8 QUERY_ERROR utf message | u8 FAILURE utf message
+ * </pre>
+ */
+final class ShardProtocol {
+
+    static final byte OK = 0;
+    static final byte QUERY_ERROR = 1;
+    static final byte FAILURE = 2;
+
+    private static final byte NULL = 0;
+    private static final byte INT = 1;
+    private static final byte STRING = 2;
+    private static final byte DATE = 3;
+    private static final byte EVENT = 4;
+    private static final byte STATUS = 5;
+    private static final byte SET = 6;
+    private static final byte MAP = 7;
+
+    private static final Event[] EVENTS = Event.values();
+    private static final Status[] STATUSES = Status.values();
+
+    private ShardProtocol() {
+    }
+
+    static void writeRequest(DataOutputStream out, String method, Object[] args) throws IOException {
+        out.writeUTF(method);
+        out.writeByte(args.length);
+        for (Object arg : args) writeValue(out, arg);
+        out.flush();
+    }
+
+    static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            out.writeUTF((String) value);
+        } else if (value instanceof Date) {
+            out.writeByte(DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof Event) {
+            out.writeByte(EVENT);
+            out.writeByte(((Event) value).ordinal());
+        } else if (value instanceof Status) {
+            out.writeByte(STATUS);
+            out.writeByte(((Status) value).ordinal());
+        } else if (value instanceof Set) {
+            out.writeByte(SET);
+            Set<?> set = (Set<?>) value;
+            out.writeInt(set.size());
+            for (Object element : set) writeValue(out, element);
+        } else if (value instanceof Map) {
+            out.writeByte(MAP);
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                out.writeInt((Integer) entry.getKey());
+                out.writeInt((Integer) entry.getValue());
+            }
+        } else {
+            throw new IllegalArgumentException("cannot send " + value.getClass().getName());
+        }
+    }
+
+    static Object readValue(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case INT:
+                return in.readInt();
+            case STRING:
+                return in.readUTF();
+            case DATE:
+                return new Date(in.readLong());
+            case EVENT:
+                return EVENTS[ordinal(in, EVENTS.length)];
+            case STATUS:
+                return STATUSES[ordinal(in, STATUSES.length)];
+            case SET: {
+                int size = in.readInt();
+                Set<Object> set = new HashSet<Object>();
+                for (int i = 0; i < size; i++) set.add(readValue(in));
+                return set;
+            }
+            case MAP: {
+                int size = in.readInt();
+                Map<Integer, Integer> map = new HashMap<Integer, Integer>();
+                for (int i = 0; i < size; i++) map.put(in.readInt(), in.readInt());
+                return map;
+            }
+            default:
+                throw new IOException("unknown value tag " + tag);
+        }
+    }
+
+    private static int ordinal(DataInputStream in, int count) throws IOException {
+        int ordinal = in.readUnsignedByte();
+        if (ordinal >= count) throw new IOException("unknown ordinal " + ordinal);
+        return ordinal;
+    }
+}
@@ -0,0 +1,58 @@
+package shard;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * Outcome of one scatter-gather call: how many shards were asked, which of them did not answer and
+ * why, and how long the call took. A partial result merged only the shards that answered in time.
+ */
+public class ShardReport implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String method;
+    private final int shards;
+    private final Map<String, String> failures;
+    private final long nanos;
+
+    ShardReport(String method, int shards, Map<String, String> failures, long nanos) {
+        this.method = method;
+        this.shards = shards;
+        this.failures = Map.copyOf(failures);
+        this.nanos = nanos;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    public int getAnswered() {
+        return shards - failures.size();
+    }
+
+    /**
+     * Reason per shard address, for the shards that failed or timed out.
+     */
+    public Map<String, String> getFailures() {
+        return failures;
+    }
+
+    public boolean isPartial() {
+        return !failures.isEmpty();
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d of %d shards in %.1f ms%s", method, getAnswered(), shards, nanos / 1e6,
+                failures.isEmpty() ? "" : ", missing " + failures);
+    }
+}
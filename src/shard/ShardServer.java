@@ -0,0 +1,159 @@
+package shard;
+
+import query.LogQuery;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serves one shard's {@link LogQuery} to {@link ShardedLogQuery} coordinators over TCP, one thread
+ * per connection. Only the {@link LogQuery} methods can be called. There is no authentication, so the
+ * server listens on the loopback interface unless given another address to bind to.
+ */
+public class ShardServer implements Closeable {
+
+    private static final Map<String, Method> METHODS = methods();
+
+    private final LogQuery delegate;
+    private final ServerSocket server;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private Thread acceptor;
+    private volatile boolean running;
+
+    /**
+     * Binds to {@code port} on the loopback interface; 0 picks a free port, see {@link #getPort()}.
+     */
+    public ShardServer(LogQuery delegate, int port) throws IOException {
+        this(delegate, InetAddress.getLoopbackAddress(), port);
+    }
+
+    /**
+     * Binds to {@code port} on {@code bindAddress}; the wildcard address listens on all interfaces.
+     */
+    public ShardServer(LogQuery delegate, InetAddress bindAddress, int port) throws IOException {
+        this.delegate = delegate;
+        this.server = new ServerSocket(port, 0, bindAddress);
+    }
+
+    private static Map<String, Method> methods() {
+        Map<String, Method> methods = new HashMap<String, Method>();
+        for (Method method : LogQuery.class.getMethods()) {
+            // overloads differ in their number of arguments, and arguments may be null
+            methods.put(method.getName() + "/" + method.getParameterCount(), method);
+        }
+        return methods;
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        acceptor = new Thread(this::accept, "shard-server " + getPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void accept() {
+        while (running) {
+            try {
+                Socket connection = server.accept();
+                connection.setTcpNoDelay(true);
+                connections.add(connection);
+                Thread thread = new Thread(() -> serve(connection), "shard-connection " + connection.getRemoteSocketAddress());
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (running) e.printStackTrace();
+            }
+        }
+    }
+
+    private void serve(Socket connection) {
+        try (connection;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()))) {
+            while (running) handle(in, out);
+        } catch (EOFException | SocketException e) {
+            // the coordinator hung up or the server is closing
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            connections.remove(connection);
+        }
+    }
+
+    private void handle(DataInputStream in, DataOutputStream out) throws IOException {
+        String method = in.readUTF();
+        Object[] args = new Object[in.readUnsignedByte()];
+        for (int i = 0; i < args.length; i++) args[i] = ShardProtocol.readValue(in);
+        Object result;
+        try {
+            result = invoke(method, args);
+        } catch (IllegalArgumentException e) {
+            reply(out, ShardProtocol.QUERY_ERROR, e.getMessage());
+            return;
+        } catch (RuntimeException e) {
+            reply(out, ShardProtocol.FAILURE, String.valueOf(e));
+            return;
+        }
+        out.writeByte(ShardProtocol.OK);
+        ShardProtocol.writeValue(out, result);
+        out.flush();
+    }
+
+    private static void reply(DataOutputStream out, byte status, String message) throws IOException {
+        out.writeByte(status);
+        out.writeUTF(String.valueOf(message));
+        out.flush();
+    }
+
+    private Object invoke(String name, Object[] args) {
+        Method method = METHODS.get(name + "/" + args.length);
+        if (method == null) throw new IllegalArgumentException("unknown method " + name + " with " + args.length + " arguments");
+        try {
+            return method.invoke(delegate, args);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        Thread stopping;
+        synchronized (this) {
+            running = false;
+            stopping = acceptor;
+            acceptor = null;
+        }
+        server.close();
+        for (Socket connection : connections) connection.close();
+        if (stopping != null) {
+            try {
+                stopping.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
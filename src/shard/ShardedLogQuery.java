@@ -0,0 +1,418 @@
+package shard;
+
+import query.LogQuery;
+import status.Event;
+import status.Status;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@link LogQuery} over several {@link ShardServer}s, each owning a subset of the log files. Every call
+ * is sent to all shards at once and their answers are merged: sets are united, task counts summed and
+ * first dates reduced to the earliest. With several shards, distinct counts are taken from the united
+ * sets, so a value seen by several shards is counted once; a single shard is asked for the count.
+ * <p>
+ * A shard that fails or does not answer within {@code timeoutMillis} is left out and the rest are
+ * merged; {@link #getLastReport()} tells which shards a result is missing. Only when no shard answers
+ * does a call throw {@link ShardException}. A query that a shard rejects as invalid is rethrown as
+ * an {@link IllegalArgumentException}.
+ */
+public class ShardedLogQuery implements LogQuery, Closeable {
+
+    private final List<Shard> shards = new ArrayList<Shard>();
+    private final long timeoutMillis;
+    private final ExecutorService pool;
+    private final ThreadLocal<ShardReport> lastReport = new ThreadLocal<ShardReport>();
+
+    public ShardedLogQuery(List<InetSocketAddress> addresses, long timeoutMillis) {
+        if (addresses.isEmpty()) throw new IllegalArgumentException("no shards");
+        if (timeoutMillis < 1) throw new IllegalArgumentException("timeoutMillis must be positive: " + timeoutMillis);
+        for (InetSocketAddress address : addresses) shards.add(new Shard(address));
+        this.timeoutMillis = timeoutMillis;
+        this.pool = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "shard-call");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Report of the last call made on the current thread, or null before the first one.
+     */
+    public ShardReport getLastReport() {
+        return lastReport.get();
+    }
+
+    private List<Object> gather(String method, Object... args) {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        List<Future<Object>> futures = new ArrayList<Future<Object>>();
+        for (Shard shard : shards) {
+            futures.add(pool.submit(() -> shard.call(method, args, deadline)));
+        }
+        List<Object> results = new ArrayList<Object>();
+        Map<String, String> failures = new LinkedHashMap<String, String>();
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                String shard = shards.get(i).address.toString();
+                try {
+                    results.add(futures.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                } catch (TimeoutException e) {
+                    futures.get(i).cancel(true);
+                    failures.put(shard, "no answer within " + timeoutMillis + " ms");
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IllegalArgumentException) throw (IllegalArgumentException) e.getCause();
+                    failures.put(shard, String.valueOf(e.getCause()));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (Future<Object> future : futures) future.cancel(true);
+            throw new IllegalStateException("interrupted while waiting for shards", e);
+        }
+        ShardReport report = new ShardReport(method, shards.size(), failures, System.nanoTime() - start);
+        lastReport.set(report);
+        if (results.isEmpty()) throw new ShardException(report);
+        return results;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Set<T> union(String method, Object... args) {
+        Set<T> result = new HashSet<T>();
+        for (Object part : gather(method, args)) result.addAll((Set<T>) part);
+        return result;
+    }
+
+    /**
+     * Distinct values counted by {@code countMethod}, or the size of the union of {@code setMethod}
+     * when more than one shard may hold the same value.
+     */
+    private int count(String countMethod, String setMethod, Object... args) {
+        return shards.size() == 1 ? sum(countMethod, args) : union(setMethod, args).size();
+    }
+
+    private int sum(String method, Object... args) {
+        int result = 0;
+        for (Object part : gather(method, args)) result += (Integer) part;
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Integer, Integer> sumByTask(String method, Object... args) {
+        Map<Integer, Integer> result = new HashMap<Integer, Integer>();
+        for (Object part : gather(method, args)) {
+            ((Map<Integer, Integer>) part).forEach((task, count) -> result.merge(task, count, Integer::sum));
+        }
+        return result;
+    }
+
+    private Date first(String method, Object... args) {
+        Date result = null;
+        for (Object part : gather(method, args)) {
+            Date date = (Date) part;
+            if (date != null && (result == null || date.before(result))) result = date;
+        }
+        return result;
+    }
+
+    @Override
+    public int getNumberOfUniqueIPs(Date after, Date before) {
+        return count("getNumberOfUniqueIPs", "getUniqueIPs", after, before);
+    }
+
+    @Override
+    public Set<String> getUniqueIPs(Date after, Date before) {
+        return union("getUniqueIPs", after, before);
+    }
+
+    @Override
+    public Set<String> getIPsForUser(String user, Date after, Date before) {
+        return union("getIPsForUser", user, after, before);
+    }
+
+    @Override
+    public Set<String> getIPsForEvent(Event event, Date after, Date before) {
+        return union("getIPsForEvent", event, after, before);
+    }
+
+    @Override
+    public Set<String> getIPsForStatus(Status status, Date after, Date before) {
+        return union("getIPsForStatus", status, after, before);
+    }
+
+    @Override
+    public Set<String> getAllUsers() {
+        return union("getAllUsers");
+    }
+
+    @Override
+    public int getNumberOfUsers(Date after, Date before) {
+        return count("getNumberOfUsers", "getUsers", after, before);
+    }
+
+    @Override
+    public Set<String> getUsers(Date after, Date before) {
+        return union("getUsers", after, before);
+    }
+
+    @Override
+    public int getNumberOfUserEvents(String user, Date after, Date before) {
+        return count("getNumberOfUserEvents", "getEventsForUser", user, after, before);
+    }
+
+    @Override
+    public Set<String> getUsersForIP(String ip, Date after, Date before) {
+        return union("getUsersForIP", ip, after, before);
+    }
+
+    @Override
+    public Set<String> getLoggedUsers(Date after, Date before) {
+        return union("getLoggedUsers", after, before);
+    }
+
+    @Override
+    public Set<String> getDownloadedPluginUsers(Date after, Date before) {
+        return union("getDownloadedPluginUsers", after, before);
+    }
+
+    @Override
+    public Set<String> getWroteMessageUsers(Date after, Date before) {
+        return union("getWroteMessageUsers", after, before);
+    }
+
+    @Override
+    public Set<String> getSolvedTaskUsers(Date after, Date before) {
+        return union("getSolvedTaskUsers", after, before);
+    }
+
+    @Override
+    public Set<String> getSolvedTaskUsers(Date after, Date before, int task) {
+        return union("getSolvedTaskUsers", after, before, task);
+    }
+
+    @Override
+    public Set<String> getDoneTaskUsers(Date after, Date before) {
+        return union("getDoneTaskUsers", after, before);
+    }
+
+    @Override
+    public Set<String> getDoneTaskUsers(Date after, Date before, int task) {
+        return union("getDoneTaskUsers", after, before, task);
+    }
+
+    @Override
+    public Set<Date> getDatesForUserAndEvent(String user, Event event, Date after, Date before) {
+        return union("getDatesForUserAndEvent", user, event, after, before);
+    }
+
+    @Override
+    public Set<Date> getDatesWhenSomethingFailed(Date after, Date before) {
+        return union("getDatesWhenSomethingFailed", after, before);
+    }
+
+    @Override
+    public Set<Date> getDatesWhenErrorHappened(Date after, Date before) {
+        return union("getDatesWhenErrorHappened", after, before);
+    }
+
+    @Override
+    public Date getDateWhenUserLoggedFirstTime(String user, Date after, Date before) {
+        return first("getDateWhenUserLoggedFirstTime", user, after, before);
+    }
+
+    @Override
+    public Date getDateWhenUserSolvedTask(String user, int task, Date after, Date before) {
+        return first("getDateWhenUserSolvedTask", user, task, after, before);
+    }
+
+    @Override
+    public Date getDateWhenUserDoneTask(String user, int task, Date after, Date before) {
+        return first("getDateWhenUserDoneTask", user, task, after, before);
+    }
+
+    @Override
+    public Set<Date> getDatesWhenUserWroteMessage(String user, Date after, Date before) {
+        return union("getDatesWhenUserWroteMessage", user, after, before);
+    }
+
+    @Override
+    public Set<Date> getDatesWhenUserDownloadedPlugin(String user, Date after, Date before) {
+        return union("getDatesWhenUserDownloadedPlugin", user, after, before);
+    }
+
+    @Override
+    public int getNumberOfAllEvents(Date after, Date before) {
+        return count("getNumberOfAllEvents", "getAllEvents", after, before);
+    }
+
+    @Override
+    public Set<Event> getAllEvents(Date after, Date before) {
+        return union("getAllEvents", after, before);
+    }
+
+    @Override
+    public Set<Event> getEventsForIP(String ip, Date after, Date before) {
+        return union("getEventsForIP", ip, after, before);
+    }
+
+    @Override
+    public Set<Event> getEventsForUser(String user, Date after, Date before) {
+        return union("getEventsForUser", user, after, before);
+    }
+
+    @Override
+    public Set<Event> getFailedEvents(Date after, Date before) {
+        return union("getFailedEvents", after, before);
+    }
+
+    @Override
+    public Set<Event> getErrorEvents(Date after, Date before) {
+        return union("getErrorEvents", after, before);
+    }
+
+    @Override
+    public int getNumberOfAttemptToSolveTask(int task, Date after, Date before) {
+        return sum("getNumberOfAttemptToSolveTask", task, after, before);
+    }
+
+    @Override
+    public int getNumberOfSuccessfulAttemptToSolveTask(int task, Date after, Date before) {
+        return sum("getNumberOfSuccessfulAttemptToSolveTask", task, after, before);
+    }
+
+    @Override
+    public Map<Integer, Integer> getAllSolvedTasksAndTheirNumber(Date after, Date before) {
+        return sumByTask("getAllSolvedTasksAndTheirNumber", after, before);
+    }
+
+    @Override
+    public Map<Integer, Integer> getAllDoneTasksAndTheirNumber(Date after, Date before) {
+        return sumByTask("getAllDoneTasksAndTheirNumber", after, before);
+    }
+
+    @Override
+    public Set<?> execute(String query) {
+        return union("execute", query);
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+        for (Shard shard : shards) shard.close();
+    }
+
+    /**
+     * One shard's address and its idle connections, reused across calls so that a query costs a round
+     * trip rather than a connect.
+     */
+    private static class Shard {
+
+        private final InetSocketAddress address;
+        private final ConcurrentLinkedDeque<Connection> idle = new ConcurrentLinkedDeque<Connection>();
+
+        Shard(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        Object call(String method, Object[] args, long deadline) throws IOException {
+            Connection connection = idle.pollFirst();
+            if (connection != null) {
+                try {
+                    return connection.call(method, args, deadline, idle);
+                } catch (IOException e) {
+                    // the shard may have closed an idle connection; a fresh one tells whether it is down
+                }
+            }
+            return connect(deadline).call(method, args, deadline, idle);
+        }
+
+        private Connection connect(long deadline) throws IOException {
+            Socket socket = new Socket();
+            try {
+                socket.connect(address, remainingMillis(deadline));
+                socket.setTcpNoDelay(true);
+                return new Connection(socket);
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+
+        void close() {
+            for (Connection connection = idle.pollFirst(); connection != null; connection = idle.pollFirst()) {
+                connection.close();
+            }
+        }
+    }
+
+    private static class Connection {
+
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        /**
+         * Sends one request and reads its reply, returning the connection to {@code idle} once the
+         * exchange is complete and closing it otherwise.
+         */
+        Object call(String method, Object[] args, long deadline, ConcurrentLinkedDeque<Connection> idle)
+                throws IOException {
+            boolean complete = false;
+            try {
+                socket.setSoTimeout(remainingMillis(deadline));
+                ShardProtocol.writeRequest(out, method, args);
+                byte status = in.readByte();
+                Object result = status == ShardProtocol.OK ? ShardProtocol.readValue(in) : in.readUTF();
+                complete = true;
+                if (status == ShardProtocol.QUERY_ERROR) throw new IllegalArgumentException((String) result);
+                if (status != ShardProtocol.OK) throw new IOException("shard failed: " + result);
+                return result;
+            } finally {
+                if (complete) idle.addFirst(this);
+                else close();
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static int remainingMillis(long deadline) throws IOException {
+        long millis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (millis < 1) throw new IOException("deadline passed");
+        return (int) Math.min(millis, Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,65 @@
+package store;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.BitSet;
+
+/**
+ * Set of row ids of a sealed store: a {@link BitSet} on the heap, or the same words read as a view
+ * of the buffer they were written to.
+ */
+final class Bitmap {
+
+    private final BitSet bits;
+    private final LongBuffer words;
+
+    Bitmap(BitSet bits) {
+        this.bits = bits;
+        this.words = null;
+    }
+
+    private Bitmap(LongBuffer words) {
+        this.bits = null;
+        this.words = words;
+    }
+
+    /**
+     * Index of the first set bit at or after {@code from}, or -1.
+     */
+    int nextSetBit(int from) {
+        if (bits != null) return bits.nextSetBit(from);
+        int word = from >>> 6;
+        if (word >= words.limit()) return -1;
+        long set = words.get(word) & -1L << from;
+        while (set == 0) {
+            if (++word == words.limit()) return -1;
+            set = words.get(word);
+        }
+        return word * 64 + Long.numberOfTrailingZeros(set);
+    }
+
+    int cardinality() {
+        if (bits != null) return bits.cardinality();
+        int count = 0;
+        for (int i = 0; i < words.limit(); i++) count += Long.bitCount(words.get(i));
+        return count;
+    }
+
+    /**
+     * Bytes held on the heap, 0 for a view.
+     */
+    long memoryBytes() {
+        return bits == null ? 0 : bits.size() / 8;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        long[] words = bits.toLongArray();
+        SegmentFile.writeLongs(out, words, words.length);
+    }
+
+    static Bitmap readFrom(ByteBuffer in, boolean view) {
+        return view ? new Bitmap(SegmentFile.viewLongs(in)) : new Bitmap(BitSet.valueOf(SegmentFile.readLongs(in)));
+    }
+}
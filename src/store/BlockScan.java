@@ -0,0 +1,117 @@
+package store;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Column predicates evaluated 64 rows at a time into selection masks, bit {@code i} standing for row
+ * {@code base + i}. Byte columns are compared eight rows per long read (SIMD within a register), int
+ * columns with a branchless loop, so a scan costs a few instructions per row whatever the selectivity.
+ * Columns of off-heap stores are read the same way from their buffers.
+ */
+final class BlockScan {
+
+    static final int BLOCK = 64;
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle BUFFER_LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long ONES = 0x0101010101010101L;
+    // moves bit 8i of a long to bit 56 + i
+    private static final long GATHER = 0x0102040810204080L;
+
+    private BlockScan() {
+    }
+
+    /**
+     * Rows in {@code [base, base + 64)} whose byte equals {@code code}. The block must lie inside the column.
+     */
+    static long equal(byte[] column, int base, int code) {
+        long pattern = (code & 0xFF) * ONES;
+        long mask = 0;
+        for (int group = 0; group < BLOCK / 8; group++) {
+            mask |= zeroBytes((long) LONGS.get(column, base + group * 8) ^ pattern) << (group * 8);
+        }
+        return mask;
+    }
+
+    /**
+     * Same as {@link #equal(byte[], int, int)} for a column in a direct or mapped buffer.
+     */
+    static long equal(ByteBuffer column, int base, int code) {
+        long pattern = (code & 0xFF) * ONES;
+        long mask = 0;
+        for (int group = 0; group < BLOCK / 8; group++) {
+            mask |= zeroBytes((long) BUFFER_LONGS.get(column, base + group * 8) ^ pattern) << (group * 8);
+        }
+        return mask;
+    }
+
+    /**
+     * Bit {@code i} set for every byte {@code i} of {@code x} that is zero.
+     */
+    private static long zeroBytes(long x) {
+        // high bit of every byte that is zero in x, with no false positives from borrows
+        long zero = ~((x & LOW_BITS) + LOW_BITS | x | LOW_BITS);
+        return (zero >>> 7) * GATHER >>> 56;
+    }
+
+    /**
+     * Rows in {@code [base, base + 64)} whose int equals {@code value}. The block must lie inside the column.
+     */
+    static long equal(int[] column, int base, int value) {
+        long mask = 0;
+        for (int i = 0; i < BLOCK; i++) {
+            int x = column[base + i] ^ value;
+            mask |= (long) (~(x | -x) >>> 31) << i;
+        }
+        return mask;
+    }
+
+    static long equal(IntBuffer column, int base, int value) {
+        long mask = 0;
+        for (int i = 0; i < BLOCK; i++) {
+            int x = column.get(base + i) ^ value;
+            mask |= (long) (~(x | -x) >>> 31) << i;
+        }
+        return mask;
+    }
+
+    /**
+     * Same as {@link #equal(byte[], int, int)} for a block cut short by the end of the range.
+     */
+    static long equal(byte[] column, int base, int end, int code) {
+        long mask = 0;
+        for (int row = base; row < end; row++) {
+            if (column[row] == code) mask |= 1L << (row - base);
+        }
+        return mask;
+    }
+
+    static long equal(int[] column, int base, int end, int value) {
+        long mask = 0;
+        for (int row = base; row < end; row++) {
+            if (column[row] == value) mask |= 1L << (row - base);
+        }
+        return mask;
+    }
+
+    static long equal(ByteBuffer column, int base, int end, int code) {
+        long mask = 0;
+        for (int row = base; row < end; row++) {
+            if (column.get(row) == code) mask |= 1L << (row - base);
+        }
+        return mask;
+    }
+
+    static long equal(IntBuffer column, int base, int end, int value) {
+        long mask = 0;
+        for (int row = base; row < end; row++) {
+            if (column.get(row) == value) mask |= 1L << (row - base);
+        }
+        return mask;
+    }
+}
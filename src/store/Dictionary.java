@@ -0,0 +1,73 @@
+package store;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.stream.IntStream;
+
+/**
+ * Maps each distinct value of a column to a dense int id, starting at 0. Only lookups are part of
+ * this type; dictionaries that can take new values are {@link MutableDictionary MutableDictionaries}.
+ */
+public abstract class Dictionary {
+
+    private volatile int[] sortedIds;
+
+    /**
+     * Id of {@code value}, or -1 if it is not in the dictionary.
+     */
+    public abstract int find(String value);
+
+    public abstract String get(int id);
+
+    public abstract int size();
+
+    /**
+     * 64-bit hash of entry {@code id} that is the same for equal values in every dictionary of this type.
+     */
+    public abstract long hash(int id);
+
+    /**
+     * Rough heap footprint in bytes.
+     */
+    public abstract long memoryBytes();
+
+    abstract void writeTo(DataOutputStream out) throws IOException;
+
+    /**
+     * Subclasses call this whenever an entry is added.
+     */
+    void changed() {
+        sortedIds = null;
+    }
+
+    /**
+     * Ids ordered by their strings. Computed on first use and kept until the next new entry.
+     */
+    int[] sortedIds() {
+        int[] sorted = sortedIds;
+        if (sorted == null) {
+            String[] values = new String[size()];
+            for (int id = 0; id < values.length; id++) values[id] = get(id);
+            sorted = IntStream.range(0, values.length).boxed()
+                    .sorted((a, b) -> values[a].compareTo(values[b]))
+                    .mapToInt(Integer::intValue).toArray();
+            sortedIds = sorted;
+        }
+        return sorted;
+    }
+
+    /**
+     * Position in {@link #sortedIds()} of the first string greater than {@code value}.
+     */
+    int sortedPositionAfter(String value) {
+        int[] sorted = sortedIds();
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (get(sorted[mid]).compareTo(value) <= 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
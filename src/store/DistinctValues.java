@@ -0,0 +1,192 @@
+package store;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Lazy, ascending and duplicate-free iterators over one column of the rows that match a filter across
+ * several sealed segments. Each segment yields its own sorted values and the segments are merged, so
+ * memory does not grow with the number of results.
+ */
+public final class DistinctValues {
+
+    private DistinctValues() {
+    }
+
+    /**
+     * Distinct epoch seconds of the matching rows in {@code [lo, hi]}, ascending.
+     */
+    public static Iterator<Long> times(List<EntryStore> segments, Filter filter, long lo, long hi) {
+        List<Iterator<Long>> sources = new ArrayList<Iterator<Long>>();
+        for (EntryStore segment : segments) sources.add(new SegmentTimes(segment, filter, lo, hi));
+        return merge(sources);
+    }
+
+    /**
+     * Distinct ips of the matching rows in {@code [lo, hi]} greater than {@code after} (null for all), ascending.
+     */
+    public static Iterator<String> ips(List<EntryStore> segments, Filter filter, long lo, long hi, String after) {
+        List<Iterator<String>> sources = new ArrayList<Iterator<String>>();
+        for (EntryStore segment : segments) {
+            sources.add(new SegmentStrings(segment, segment.ips(), true, filter, lo, hi, after));
+        }
+        return merge(sources);
+    }
+
+    /**
+     * Same as {@link #ips} for users.
+     */
+    public static Iterator<String> users(List<EntryStore> segments, Filter filter, long lo, long hi, String after) {
+        List<Iterator<String>> sources = new ArrayList<Iterator<String>>();
+        for (EntryStore segment : segments) {
+            sources.add(new SegmentStrings(segment, segment.users(), false, filter, lo, hi, after));
+        }
+        return merge(sources);
+    }
+
+    private static <T extends Comparable<T>> Iterator<T> merge(List<Iterator<T>> sources) {
+        return sources.size() == 1 ? sources.get(0) : new Merged<T>(sources);
+    }
+
+    private static final class SegmentTimes implements Iterator<Long> {
+        private final EntryStore segment;
+        private final RowIterator rows;
+        private long last = Long.MIN_VALUE;
+        private int row;
+
+        SegmentTimes(EntryStore segment, Filter filter, long lo, long hi) {
+            this.segment = segment;
+            this.rows = segment.rows(filter, lo, hi);
+            this.row = rows.next();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (row >= 0 && segment.time(row) == last && last != Long.MIN_VALUE) row = rows.next();
+            return row >= 0;
+        }
+
+        @Override
+        public Long next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            last = segment.time(row);
+            row = rows.next();
+            return last;
+        }
+    }
+
+    /**
+     * Walks the dictionary in string order and keeps the values that occur in a matching row. When the
+     * filter or the time range leaves fewer candidate rows than there are strings, the matching ids are
+     * collected into a bitmap first; otherwise every string is probed through its posting list, so the
+     * first values come back without scanning the whole range.
+     */
+    private static final class SegmentStrings implements Iterator<String> {
+        private final EntryStore segment;
+        private final Dictionary dictionary;
+        private final boolean ipColumn;
+        private final Filter filter;
+        private final long lo;
+        private final long hi;
+        private final int[] sorted;
+        private final BitSet present;
+        private int position;
+        private String next;
+
+        SegmentStrings(EntryStore segment, Dictionary dictionary, boolean ipColumn, Filter filter,
+                       long lo, long hi, String after) {
+            this.segment = segment;
+            this.dictionary = dictionary;
+            this.ipColumn = ipColumn;
+            this.filter = filter;
+            this.lo = lo;
+            this.hi = hi;
+            this.sorted = dictionary.sortedIds();
+            this.position = after == null ? 0 : dictionary.sortedPositionAfter(after);
+            boolean selective = filter.getIp() != null || filter.getSubnet() != null || filter.getUser() != null
+                    || filter.getTime() != null
+                    || segment.upperRow(hi) - segment.lowerRow(lo) <= sorted.length;
+            this.present = selective ? collect() : null;
+        }
+
+        private BitSet collect() {
+            BitSet ids = new BitSet(sorted.length);
+            RowIterator rows = segment.rows(filter, lo, hi);
+            for (int row = rows.next(); row >= 0; row = rows.next()) {
+                ids.set(ipColumn ? segment.ip(row) : segment.user(row));
+            }
+            return ids;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && position < sorted.length) {
+                int id = sorted[position++];
+                if (present != null ? present.get(id) : probe(dictionary.get(id))) next = dictionary.get(id);
+            }
+            return next != null;
+        }
+
+        private boolean probe(String value) {
+            Filter only = filter.and(ipColumn ? Filter.ip(value) : Filter.user(value));
+            return segment.rows(only, lo, hi).next() >= 0;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            String value = next;
+            next = null;
+            return value;
+        }
+    }
+
+    private static final class Merged<T extends Comparable<T>> implements Iterator<T> {
+        private final PriorityQueue<Head<T>> heads = new PriorityQueue<Head<T>>();
+        private T last;
+
+        Merged(List<Iterator<T>> sources) {
+            for (Iterator<T> source : sources) {
+                if (source.hasNext()) heads.add(new Head<T>(source.next(), source));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!heads.isEmpty() && last != null && heads.peek().value.equals(last)) advance();
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            last = heads.peek().value;
+            advance();
+            return last;
+        }
+
+        private void advance() {
+            Head<T> head = heads.poll();
+            if (head.source.hasNext()) heads.add(new Head<T>(head.source.next(), head.source));
+        }
+    }
+
+    private static final class Head<T extends Comparable<T>> implements Comparable<Head<T>> {
+        final T value;
+        final Iterator<T> source;
+
+        Head(T value, Iterator<T> source) {
+            this.value = value;
+            this.source = source;
+        }
+
+        @Override
+        public int compareTo(Head<T> other) {
+            return value.compareTo(other.value);
+        }
+    }
+}
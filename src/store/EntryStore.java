@@ -0,0 +1,895 @@
+package store;
+
+import status.Event;
+import status.Status;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Parsed log entries kept as primitive columns: epoch seconds, event and status ordinals,
+ * task number, and dictionary ids for ip and user. A sealed store is only read, so it can be shared
+ * between threads as long as nothing appends to it after publication. An off-heap store keeps its
+ * columns, user strings and indexes in a direct or mapped buffer instead, see {@link #offHeap()}.
+ */
+public class EntryStore {
+
+    private static final Event[] EVENTS = Event.values();
+    private static final Status[] STATUSES = Status.values();
+    private static final long DAY = 86400;
+    private static final int SPARSE = 16;
+
+    private final IpDictionary ips;
+    private final Dictionary users;
+    // the same users while rows can be appended, null for an off-heap store
+    private final MutableDictionary mutableUsers;
+    private long[] times = new long[1024];
+    private byte[] events = new byte[1024];
+    private byte[] statuses = new byte[1024];
+    private int[] tasks = new int[1024];
+    private int[] ipIds = new int[1024];
+    private int[] userIds = new int[1024];
+    private int size;
+    private OffHeapColumns offHeap;
+
+    private PostingIndex ipIndex;
+    private PostingIndex userIndex;
+    private PostingIndex taskIndex;
+    private TimelineIndex timelines;
+    private int[] taskValues;
+    private Bitmap[] eventRows;
+    private Bitmap[] statusRows;
+    private int[] eventCounts;
+    private int[] statusCounts;
+    private Rollup[] rollups;
+    private long[] sketchDays;
+    private HyperLogLog[] ipSketches;
+    private HyperLogLog[] userSketches;
+
+    public EntryStore() {
+        this(new IpDictionary(), new StringDictionary());
+    }
+
+    private EntryStore(IpDictionary ips, StringDictionary users) {
+        this.ips = ips;
+        this.users = users;
+        this.mutableUsers = users;
+    }
+
+    private EntryStore(IpDictionary ips, PackedDictionary users) {
+        this.ips = ips;
+        this.users = users;
+        this.mutableUsers = null;
+    }
+
+    public void append(long time, int ip, int user, Event event, int task, Status status) {
+        checkOnHeap();
+        dropIndexes();
+        if (size == times.length) grow(Math.max(16, size * 2));
+        times[size] = time;
+        ipIds[size] = ip;
+        userIds[size] = user;
+        events[size] = (byte) event.ordinal();
+        tasks[size] = task;
+        statuses[size] = (byte) status.ordinal();
+        size++;
+    }
+
+    public void appendAll(EntryStore other) {
+        checkOnHeap();
+        dropIndexes();
+        int[] ipMap = remap(other.ips, ips);
+        int[] userMap = remap(other.users, mutableUsers);
+        if (size + other.size > times.length) grow(Math.max(size + other.size, size * 2));
+        for (int row = 0; row < other.size; row++) {
+            times[size] = other.time(row);
+            ipIds[size] = ipMap[other.ip(row)];
+            userIds[size] = userMap[other.user(row)];
+            events[size] = (byte) other.event(row);
+            tasks[size] = other.task(row);
+            statuses[size] = (byte) other.status(row);
+            size++;
+        }
+    }
+
+    private void checkOnHeap() {
+        if (offHeap != null) throw new IllegalStateException("off-heap stores are read-only");
+    }
+
+    private static int[] remap(Dictionary from, MutableDictionary to) {
+        int[] map = new int[from.size()];
+        for (int id = 0; id < map.length; id++) {
+            map[id] = to.add(from.get(id));
+        }
+        return map;
+    }
+
+    /**
+     * Copy of rows {@code [from, to)} with dictionaries of their own that hold only the values in range.
+     */
+    public EntryStore slice(int from, int to) {
+        EntryStore slice = new EntryStore();
+        int[] ipMap = new int[ips.size()];
+        int[] userMap = new int[users.size()];
+        Arrays.fill(ipMap, -1);
+        Arrays.fill(userMap, -1);
+        slice.grow(Math.max(16, to - from));
+        for (int row = from; row < to; row++) {
+            int ip = ip(row);
+            int user = user(row);
+            if (ipMap[ip] < 0) ipMap[ip] = slice.ips.add(ips.get(ip));
+            if (userMap[user] < 0) userMap[user] = slice.mutableUsers.add(users.get(user));
+            int i = slice.size++;
+            slice.times[i] = time(row);
+            slice.ipIds[i] = ipMap[ip];
+            slice.userIds[i] = userMap[user];
+            slice.events[i] = (byte) event(row);
+            slice.tasks[i] = task(row);
+            slice.statuses[i] = (byte) status(row);
+        }
+        return slice;
+    }
+
+    private void grow(int capacity) {
+        times = Arrays.copyOf(times, capacity);
+        events = Arrays.copyOf(events, capacity);
+        statuses = Arrays.copyOf(statuses, capacity);
+        tasks = Arrays.copyOf(tasks, capacity);
+        ipIds = Arrays.copyOf(ipIds, capacity);
+        userIds = Arrays.copyOf(userIds, capacity);
+    }
+
+    /**
+     * Finishes ingest: sorts the rows by time and builds the inverted indexes used by {@link #rows} and
+     * the per-user timelines used by {@link #firstRow} and {@link #lastRow}.
+     */
+    public void seal() {
+        seal(0);
+    }
+
+    /**
+     * Like {@link #seal()}, and with a {@code sketchPrecision} above 0 also builds per-day HyperLogLog
+     * sketches of the ip and user columns for {@link #addDistinctIps} and {@link #addDistinctUsers}.
+     */
+    public void seal(int sketchPrecision) {
+        checkOnHeap();
+        trim();
+        sortByTime();
+        ipIndex = PostingIndex.build(ipIds, size, ips.size());
+        userIndex = PostingIndex.build(userIds, size, users.size());
+        taskValues = Arrays.stream(tasks, 0, size).distinct().sorted().toArray();
+        int[] taskKeys = new int[size];
+        for (int row = 0; row < size; row++) taskKeys[row] = Arrays.binarySearch(taskValues, tasks[row]);
+        taskIndex = PostingIndex.build(taskKeys, size, taskValues.length);
+        timelines = TimelineIndex.build(userIndex, events, taskKeys, taskValues.length, size);
+        eventRows = bitmaps(events, EVENTS.length);
+        statusRows = bitmaps(statuses, STATUSES.length);
+        rollups = new Rollup[]{Rollup.build(this, 86400), Rollup.build(this, 3600), Rollup.build(this, 60)};
+        if (sketchPrecision > 0) buildSketches(sketchPrecision);
+        countBitmaps();
+    }
+
+    private void buildSketches(int precision) {
+        int days = 0;
+        for (int row = 0; row < size; row++) {
+            if (row == 0 || Math.floorDiv(times[row], DAY) != Math.floorDiv(times[row - 1], DAY)) days++;
+        }
+        sketchDays = new long[days];
+        ipSketches = new HyperLogLog[days];
+        userSketches = new HyperLogLog[days];
+        long[] ipHashes = hashes(ips);
+        long[] userHashes = hashes(users);
+        int day = -1;
+        for (int row = 0; row < size; row++) {
+            if (row == 0 || Math.floorDiv(times[row], DAY) != Math.floorDiv(times[row - 1], DAY)) {
+                day++;
+                sketchDays[day] = Math.floorDiv(times[row], DAY);
+                ipSketches[day] = new HyperLogLog(precision);
+                userSketches[day] = new HyperLogLog(precision);
+            }
+            ipSketches[day].add(ipHashes[ipIds[row]]);
+            userSketches[day].add(userHashes[userIds[row]]);
+        }
+    }
+
+    private static long[] hashes(Dictionary dictionary) {
+        long[] hashes = new long[dictionary.size()];
+        for (int id = 0; id < hashes.length; id++) hashes[id] = dictionary.hash(id);
+        return hashes;
+    }
+
+    private void countBitmaps() {
+        eventCounts = Arrays.stream(eventRows).mapToInt(Bitmap::cardinality).toArray();
+        statusCounts = Arrays.stream(statusRows).mapToInt(Bitmap::cardinality).toArray();
+    }
+
+    private Bitmap[] bitmaps(byte[] column, int codes) {
+        BitSet[] bits = new BitSet[codes];
+        for (int code = 0; code < codes; code++) bits[code] = new BitSet(size);
+        for (int row = 0; row < size; row++) bits[column[row]].set(row);
+        Bitmap[] bitmaps = new Bitmap[codes];
+        for (int code = 0; code < codes; code++) bitmaps[code] = new Bitmap(bits[code]);
+        return bitmaps;
+    }
+
+    private void dropIndexes() {
+        ipIndex = userIndex = taskIndex = null;
+        timelines = null;
+        sketchDays = null;
+        ipSketches = userSketches = null;
+        taskValues = null;
+        eventRows = statusRows = null;
+        eventCounts = statusCounts = null;
+        rollups = null;
+    }
+
+    /**
+     * Writes a sealed store in the layout read back by {@link #readFrom}: row count, the six columns,
+     * both dictionaries, the posting indexes, the user timelines, the event and status bitmaps, the rollups and the day
+     * sketches, if any.
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        if (!isSealed()) throw new IllegalStateException("store is not sealed");
+        if (offHeap != null) {
+            SegmentFile.writeBuffer(out, offHeap.image);
+            return;
+        }
+        out.writeInt(size);
+        SegmentFile.writeLongs(out, times, size);
+        SegmentFile.writeBytes(out, events, size);
+        SegmentFile.writeBytes(out, statuses, size);
+        SegmentFile.writeInts(out, tasks, size);
+        SegmentFile.writeInts(out, ipIds, size);
+        SegmentFile.writeInts(out, userIds, size);
+        ips.writeTo(out);
+        users.writeTo(out);
+        ipIndex.writeTo(out);
+        userIndex.writeTo(out);
+        SegmentFile.writeInts(out, taskValues, taskValues.length);
+        taskIndex.writeTo(out);
+        timelines.writeTo(out);
+        for (Bitmap bitmap : eventRows) bitmap.writeTo(out);
+        for (Bitmap bitmap : statusRows) bitmap.writeTo(out);
+        out.writeInt(rollups.length);
+        for (Rollup rollup : rollups) rollup.writeTo(out);
+        if (sketchDays == null) {
+            out.writeInt(-1);
+            return;
+        }
+        SegmentFile.writeLongs(out, sketchDays, sketchDays.length);
+        for (HyperLogLog sketch : ipSketches) sketch.writeTo(out);
+        for (HyperLogLog sketch : userSketches) sketch.writeTo(out);
+    }
+
+    /**
+     * Copy of this sealed store written to a direct buffer in the layout of {@link #writeTo} and read
+     * back as views, so that its columns, strings, indexes, rollups and sketches are all off the heap.
+     * Only the dictionaries' lookup tables and a few per-code counts stay on it. The copy is read-only.
+     */
+    public EntryStore offHeap() {
+        if (!isSealed()) throw new IllegalStateException("store is not sealed");
+        if (offHeap != null) return this;
+        try {
+            DataOutputStream counter = new DataOutputStream(OutputStream.nullOutputStream());
+            writeTo(counter);
+            if (counter.size() == Integer.MAX_VALUE) throw new IllegalStateException("store too large to move off the heap");
+            ByteBuffer image = ByteBuffer.allocateDirect(counter.size());
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(SegmentFile.outputStream(image), 1 << 16));
+            writeTo(out);
+            out.flush();
+            return readFrom(image.flip(), true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads a store written by {@link #writeTo} from the rest of {@code in}. With {@code offHeap}
+     * everything but the lookup tables stays in {@code in}, which must then be a direct or mapped
+     * buffer that is not changed afterwards.
+     */
+    static EntryStore readFrom(ByteBuffer in, boolean offHeap) {
+        EntryStore store = readColumns(in, offHeap);
+        store.ipIndex = PostingIndex.readFrom(in, offHeap);
+        store.userIndex = PostingIndex.readFrom(in, offHeap);
+        store.taskValues = SegmentFile.readInts(in);
+        store.taskIndex = PostingIndex.readFrom(in, offHeap);
+        store.timelines = TimelineIndex.readFrom(in, offHeap);
+        store.eventRows = new Bitmap[EVENTS.length];
+        for (int i = 0; i < EVENTS.length; i++) store.eventRows[i] = Bitmap.readFrom(in, offHeap);
+        store.statusRows = new Bitmap[STATUSES.length];
+        for (int i = 0; i < STATUSES.length; i++) store.statusRows[i] = Bitmap.readFrom(in, offHeap);
+        store.rollups = new Rollup[in.getInt()];
+        for (int i = 0; i < store.rollups.length; i++) store.rollups[i] = Rollup.readFrom(in, offHeap);
+        if (in.getInt(in.position()) >= 0) {
+            store.sketchDays = SegmentFile.readLongs(in);
+            store.ipSketches = new HyperLogLog[store.sketchDays.length];
+            for (int i = 0; i < store.ipSketches.length; i++) store.ipSketches[i] = HyperLogLog.readFrom(in, offHeap);
+            store.userSketches = new HyperLogLog[store.sketchDays.length];
+            for (int i = 0; i < store.userSketches.length; i++) store.userSketches[i] = HyperLogLog.readFrom(in, offHeap);
+        } else {
+            in.getInt();
+        }
+        store.countBitmaps();
+        return store;
+    }
+
+    private static EntryStore readColumns(ByteBuffer in, boolean offHeap) {
+        int start = in.position();
+        int size = in.getInt();
+        if (offHeap) {
+            LongBuffer times = SegmentFile.viewLongs(in);
+            ByteBuffer events = SegmentFile.viewBytes(in);
+            ByteBuffer statuses = SegmentFile.viewBytes(in);
+            IntBuffer tasks = SegmentFile.viewInts(in);
+            IntBuffer ipIds = SegmentFile.viewInts(in);
+            IntBuffer userIds = SegmentFile.viewInts(in);
+            EntryStore store = new EntryStore(IpDictionary.readFrom(in), PackedDictionary.view(in));
+            store.size = size;
+            store.offHeap = new OffHeapColumns(in.slice(start, in.limit() - start),
+                    times, events, statuses, tasks, ipIds, userIds);
+            store.times = null;
+            store.events = store.statuses = null;
+            store.tasks = store.ipIds = store.userIds = null;
+            return store;
+        }
+        long[] times = SegmentFile.readLongs(in);
+        byte[] events = SegmentFile.readBytes(in);
+        byte[] statuses = SegmentFile.readBytes(in);
+        int[] tasks = SegmentFile.readInts(in);
+        int[] ipIds = SegmentFile.readInts(in);
+        int[] userIds = SegmentFile.readInts(in);
+        EntryStore store = new EntryStore(IpDictionary.readFrom(in), StringDictionary.readFrom(in));
+        store.size = size;
+        store.times = times;
+        store.events = events;
+        store.statuses = statuses;
+        store.tasks = tasks;
+        store.ipIds = ipIds;
+        store.userIds = userIds;
+        return store;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap != null;
+    }
+
+    public boolean isSealed() {
+        return ipIndex != null;
+    }
+
+    /**
+     * Rows matching {@code filter} with a time in {@code [lo, hi]}, in time order. The store must be sealed.
+     */
+    public RowIterator rows(Filter filter, long lo, long hi) {
+        if (!isSealed()) throw new IllegalStateException("store is not sealed");
+        int from = lowerRow(lo);
+        int to = upperRow(hi);
+        if (filter.getTime() != null) {
+            from = Math.max(from, lowerRow(filter.getTime()));
+            to = Math.min(to, upperRow(filter.getTime()));
+        }
+        if (filter.isEmpty() || from >= to) return RowIterator.empty(this);
+        int ip = filter.getIp() == null ? RowIterator.ANY : ips.find(filter.getIp());
+        int user = filter.getUser() == null ? RowIterator.ANY : users.find(filter.getUser());
+        int task = filter.getTask() == null ? RowIterator.ANY : Arrays.binarySearch(taskValues, filter.getTask());
+        int[] subnetIps = filter.getSubnet() == null ? null : ips.idsIn(filter.getSubnet());
+        if (filter.getIp() != null && ip < 0 || filter.getUser() != null && user < 0
+                || filter.getTask() != null && task < 0 || subnetIps != null && subnetIps.length == 0) {
+            return RowIterator.empty(this);
+        }
+        BitSet ipSet = null;
+        if (subnetIps != null && subnetIps.length == 1 && ip == RowIterator.ANY) {
+            ip = subnetIps[0];
+            subnetIps = null;
+        } else if (subnetIps != null) {
+            ipSet = new BitSet(ips.size());
+            for (int id : subnetIps) ipSet.set(id);
+        }
+        int event = filter.getEvent() == null ? RowIterator.ANY : filter.getEvent().ordinal();
+        int status = filter.getStatus() == null ? RowIterator.ANY : filter.getStatus().ordinal();
+        RowIterator iterator = new RowIterator(this, from, to, ip, ipSet, user, event, status,
+                filter.getTask() != null, filter.getTask() == null ? 0 : filter.getTask());
+
+        int ipRows = ip >= 0 ? postings(ipIndex, ip, from, to) : Integer.MAX_VALUE;
+        int userRows = user >= 0 ? postings(userIndex, user, from, to) : Integer.MAX_VALUE;
+        int taskRows = task >= 0 ? postings(taskIndex, task, from, to) : Integer.MAX_VALUE;
+        int subnetRows = Integer.MAX_VALUE;
+        if (subnetIps != null) {
+            long sum = 0;
+            for (int id : subnetIps) sum += postings(ipIndex, id, from, to);
+            subnetRows = (int) Math.min(sum, Integer.MAX_VALUE);
+        }
+        int best = Math.min(Math.min(ipRows, subnetRows), Math.min(userRows, taskRows));
+        if (best < to - from) {
+            if (best == ipRows) iterator.usePostings(ipIndex, ip, from);
+            else if (best == userRows) iterator.usePostings(userIndex, user, from);
+            else if (best == taskRows) iterator.usePostings(taskIndex, task, from);
+            else iterator.useRows(subnetRows(subnetIps, from, to, subnetRows));
+        } else if (event != RowIterator.ANY || status != RowIterator.ANY) {
+            boolean byEvent = status == RowIterator.ANY
+                    || event != RowIterator.ANY && eventCounts[event] <= statusCounts[status];
+            int count = byEvent ? eventCounts[event] : statusCounts[status];
+            // a dense bitmap yields nearly every row anyway, and a block scan checks all columns at once
+            if (count < size / SPARSE) iterator.useBitmap(byEvent ? eventRows[event] : statusRows[status]);
+            else iterator.useScan();
+        } else if (ip >= 0 || ipSet != null || user >= 0 || filter.getTask() != null) {
+            iterator.useScan();
+        }
+        return iterator;
+    }
+
+    /**
+     * Receives the rows found by {@link #scan}, up to 64 at a time.
+     */
+    public interface ScanSink {
+        /**
+         * Rows {@code base + i} for every bit {@code i} set in {@code rows} match filter {@code filter}.
+         */
+        void add(int filter, int base, long rows);
+    }
+
+    /**
+     * Passes the rows matching each of {@code filters} in {@code [lo, hi]} to {@code sink}, in row
+     * order per filter. Filters that an index narrows down are answered from it; all others share one
+     * pass over the rows, in which every block of 64 rows is matched against each of them while it is
+     * in cache. The store must be sealed.
+     */
+    public void scan(List<Filter> filters, long lo, long hi, ScanSink sink) {
+        List<RowIterator> shared = new ArrayList<RowIterator>();
+        List<Integer> sharedFilters = new ArrayList<Integer>();
+        int from = size;
+        int to = 0;
+        for (int i = 0; i < filters.size(); i++) {
+            RowIterator rows = rows(filters.get(i), lo, hi);
+            if (rows.isSequential()) {
+                shared.add(rows);
+                sharedFilters.add(i);
+                from = Math.min(from, rows.from());
+                to = Math.max(to, rows.to());
+                continue;
+            }
+            int base = 0;
+            long mask = 0;
+            for (int row = rows.next(); row >= 0; row = rows.next()) {
+                if (row - base >= BlockScan.BLOCK) {
+                    if (mask != 0) sink.add(i, base, mask);
+                    base = row;
+                    mask = 0;
+                }
+                mask |= 1L << (row - base);
+            }
+            if (mask != 0) sink.add(i, base, mask);
+        }
+        for (int base = from; base < to; base += BlockScan.BLOCK) {
+            for (int j = 0; j < shared.size(); j++) {
+                long mask = shared.get(j).matchBlock(base);
+                if (mask != 0) sink.add(sharedFilters.get(j), base, mask);
+            }
+        }
+    }
+
+    /**
+     * First row of {@code user} with {@code event}, and with {@code task} unless it is null, that has a
+     * time in {@code [lo, hi]}, or -1. The store must be sealed.
+     */
+    public int firstRow(String user, Event event, Integer task, long lo, long hi) {
+        return timelineRow(user, event, task, lo, hi, true);
+    }
+
+    /**
+     * Like {@link #firstRow}, but the last such row.
+     */
+    public int lastRow(String user, Event event, Integer task, long lo, long hi) {
+        return timelineRow(user, event, task, lo, hi, false);
+    }
+
+    private int timelineRow(String user, Event event, Integer task, long lo, long hi, boolean first) {
+        if (!isSealed()) throw new IllegalStateException("store is not sealed");
+        int id = user == null ? -1 : users.find(user);
+        if (id < 0 || event == null) return -1;
+        int taskKey = task == null ? 0 : Arrays.binarySearch(taskValues, task);
+        if (taskKey < 0) return -1;
+        int start = task == null ? timelines.firstGroup(id, event.ordinal()) : timelines.group(id, event.ordinal(), taskKey);
+        if (start < 0) return -1;
+        int end = task == null ? timelines.endGroup(id, event.ordinal()) : start + 1;
+        int from = lowerRow(lo);
+        int to = upperRow(hi);
+        int best = -1;
+        for (int group = start; group < end; group++) {
+            int row = first ? timelines.first(group, from, to) : timelines.last(group, from, to);
+            if (row >= 0 && (best < 0 || (first ? row < best : row > best))) best = row;
+        }
+        return best;
+    }
+
+    /**
+     * Tasks of the rows of {@code user} with {@code event}, at any time, in no particular order.
+     */
+    public int[] userTasks(String user, Event event) {
+        if (!isSealed()) throw new IllegalStateException("store is not sealed");
+        int id = user == null ? -1 : users.find(user);
+        if (id < 0 || event == null) return new int[0];
+        int start = timelines.firstGroup(id, event.ordinal());
+        int[] result = new int[timelines.endGroup(id, event.ordinal()) - start];
+        for (int i = 0; i < result.length; i++) result[i] = taskValues[timelines.task(start + i)];
+        return result;
+    }
+
+    /**
+     * Rows in {@code [from, to)} of all the given ips, merged from their posting lists into row order.
+     */
+    private int[] subnetRows(int[] ids, int from, int to, int count) {
+        int[] rows = new int[count];
+        int n = 0;
+        for (int id : ids) {
+            for (int i = ipIndex.seek(id, from), end = ipIndex.seek(id, to); i < end; i++) rows[n++] = ipIndex.row(i);
+        }
+        Arrays.sort(rows);
+        return rows;
+    }
+
+    /**
+     * Passes the number of rows matching {@code filter} in {@code [lo, hi]} to {@code sink}, per task.
+     * Filters on event, status and task are answered from the day, hour and minute rollups, so only
+     * the rows in the partial minutes at either end of the range are scanned.
+     */
+    public void countByTask(Filter filter, long lo, long hi, Rollup.Sink sink) {
+        if (!isSealed()) throw new IllegalStateException("store is not sealed");
+        if (size == 0 || filter.isEmpty()) return;
+        if (filter.getIp() != null || filter.getSubnet() != null || filter.getUser() != null
+                || filter.getTime() != null) {
+            countRows(filter, lo, hi, sink);
+            return;
+        }
+        long from = Math.max(lo, time(0));
+        long to = Math.min(hi, time(size - 1));
+        if (from <= to) countByTask(0, from, to + 1, filter, sink);
+    }
+
+    private void countByTask(int level, long from, long to, Filter filter, Rollup.Sink sink) {
+        if (from >= to) return;
+        if (level == rollups.length) {
+            countRows(filter, from, to - 1, sink);
+            return;
+        }
+        long bucket = rollups[level].bucketSeconds();
+        long first = -Math.floorDiv(-from, bucket) * bucket;
+        long last = Math.floorDiv(to, bucket) * bucket;
+        if (first >= last) {
+            countByTask(level + 1, from, to, filter, sink);
+            return;
+        }
+        rollups[level].add(first, last,
+                filter.getEvent() == null ? RowIterator.ANY : filter.getEvent().ordinal(),
+                filter.getStatus() == null ? RowIterator.ANY : filter.getStatus().ordinal(),
+                filter.getTask() != null, filter.getTask() == null ? 0 : filter.getTask(), sink);
+        countByTask(level + 1, from, first, filter, sink);
+        countByTask(level + 1, last, to, filter, sink);
+    }
+
+    private void countRows(Filter filter, long lo, long hi, Rollup.Sink sink) {
+        RowIterator rows = rows(filter, lo, hi);
+        for (int row = rows.next(); row >= 0; row = rows.next()) {
+            sink.add(task(row), 1);
+        }
+    }
+
+    /**
+     * Adds the ips of the rows in {@code [lo, hi]} to {@code sketch}. Whole days are merged from the
+     * day sketches and only the rows of partial days at either end are hashed; a store sealed without
+     * sketches, or with sketches of a lower precision than {@code sketch}, hashes every row in range.
+     */
+    public void addDistinctIps(long lo, long hi, HyperLogLog sketch) {
+        addDistinct(this::ip, ips, ipSketches, lo, hi, sketch);
+    }
+
+    /**
+     * Same as {@link #addDistinctIps} for users.
+     */
+    public void addDistinctUsers(long lo, long hi, HyperLogLog sketch) {
+        addDistinct(this::user, users, userSketches, lo, hi, sketch);
+    }
+
+    private void addDistinct(IntUnaryOperator ids, Dictionary dictionary, HyperLogLog[] sketches,
+                             long lo, long hi, HyperLogLog sketch) {
+        if (!isSealed()) throw new IllegalStateException("store is not sealed");
+        if (size == 0) return;
+        long from = Math.max(lo, time(0));
+        long to = Math.min(hi, time(size - 1));
+        if (from > to) return;
+        long firstDay = -Math.floorDiv(-from, DAY);
+        long lastDay = Math.floorDiv(to + 1, DAY) - 1;
+        if (firstDay > lastDay || sketches == null || sketches[0].getPrecision() < sketch.getPrecision()) {
+            hashRows(ids, dictionary, lowerRow(from), upperRow(to), sketch);
+            return;
+        }
+        hashRows(ids, dictionary, lowerRow(from), lowerRow(firstDay * DAY), sketch);
+        int day = Arrays.binarySearch(sketchDays, firstDay);
+        for (day = day < 0 ? -day - 1 : day; day < sketchDays.length && sketchDays[day] <= lastDay; day++) {
+            sketch.merge(sketches[day]);
+        }
+        hashRows(ids, dictionary, lowerRow((lastDay + 1) * DAY), upperRow(to), sketch);
+    }
+
+    private void hashRows(IntUnaryOperator ids, Dictionary dictionary, int from, int to, HyperLogLog sketch) {
+        for (int row = from; row < to; row++) sketch.add(dictionary.hash(ids.applyAsInt(row)));
+    }
+
+    /**
+     * Selection mask of the rows in {@code [base, min(base + 64, end))} that have all the given column
+     * values, bit {@code i} standing for row {@code base + i}. {@link RowIterator#ANY} skips a column,
+     * and a non-null {@code ipSet} further keeps only the rows whose ip id is in it.
+     */
+    long matchBlock(int base, int end, int ip, BitSet ipSet, int user, int event, int status,
+                    boolean checkTask, int task) {
+        if (offHeap != null) return matchOffHeap(base, end, ip, ipSet, user, event, status, checkTask, task);
+        boolean full = base + BlockScan.BLOCK <= end;
+        long mask = full ? -1L : (1L << (end - base)) - 1;
+        if (event != RowIterator.ANY) {
+            mask &= full ? BlockScan.equal(events, base, event) : BlockScan.equal(events, base, end, event);
+        }
+        if (mask != 0 && status != RowIterator.ANY) {
+            mask &= full ? BlockScan.equal(statuses, base, status) : BlockScan.equal(statuses, base, end, status);
+        }
+        if (mask != 0 && checkTask) {
+            mask &= full ? BlockScan.equal(tasks, base, task) : BlockScan.equal(tasks, base, end, task);
+        }
+        if (mask != 0 && ip != RowIterator.ANY) {
+            mask &= full ? BlockScan.equal(ipIds, base, ip) : BlockScan.equal(ipIds, base, end, ip);
+        }
+        if (mask != 0 && user != RowIterator.ANY) {
+            mask &= full ? BlockScan.equal(userIds, base, user) : BlockScan.equal(userIds, base, end, user);
+        }
+        return ipSet == null ? mask : keepIps(mask, base, ipSet);
+    }
+
+    private long matchOffHeap(int base, int end, int ip, BitSet ipSet, int user, int event, int status,
+                              boolean checkTask, int task) {
+        OffHeapColumns columns = offHeap;
+        boolean full = base + BlockScan.BLOCK <= end;
+        long mask = full ? -1L : (1L << (end - base)) - 1;
+        if (event != RowIterator.ANY) {
+            mask &= full ? BlockScan.equal(columns.events, base, event) : BlockScan.equal(columns.events, base, end, event);
+        }
+        if (mask != 0 && status != RowIterator.ANY) {
+            mask &= full ? BlockScan.equal(columns.statuses, base, status)
+                    : BlockScan.equal(columns.statuses, base, end, status);
+        }
+        if (mask != 0 && checkTask) {
+            mask &= full ? BlockScan.equal(columns.tasks, base, task) : BlockScan.equal(columns.tasks, base, end, task);
+        }
+        if (mask != 0 && ip != RowIterator.ANY) {
+            mask &= full ? BlockScan.equal(columns.ipIds, base, ip) : BlockScan.equal(columns.ipIds, base, end, ip);
+        }
+        if (mask != 0 && user != RowIterator.ANY) {
+            mask &= full ? BlockScan.equal(columns.userIds, base, user) : BlockScan.equal(columns.userIds, base, end, user);
+        }
+        return ipSet == null ? mask : keepIps(mask, base, ipSet);
+    }
+
+    private long keepIps(long mask, int base, BitSet ipSet) {
+        for (long rest = mask; rest != 0; rest &= rest - 1) {
+            int bit = Long.numberOfTrailingZeros(rest);
+            if (!ipSet.get(ip(base + bit))) mask &= ~(1L << bit);
+        }
+        return mask;
+    }
+
+    private static int postings(PostingIndex index, int key, int from, int to) {
+        return index.seek(key, to) - index.seek(key, from);
+    }
+
+    /**
+     * Stable sort of all rows by time, so that rows with equal timestamps keep their file and line order.
+     */
+    public void sortByTime() {
+        if (offHeap != null) return;
+        boolean sorted = true;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int row = 0; row < size; row++) {
+            if (row > 0 && times[row] < times[row - 1]) sorted = false;
+            min = Math.min(min, times[row]);
+            max = Math.max(max, times[row]);
+        }
+        if (sorted) return;
+        int[] order = new int[size];
+        if (max - min < 1L << 32) {
+            // (time offset, row) packed into one long sorts by time and keeps equal times in row order
+            long[] keys = new long[size];
+            for (int row = 0; row < size; row++) keys[row] = (times[row] - min) << 31 | row;
+            Arrays.sort(keys);
+            for (int i = 0; i < size; i++) order[i] = (int) (keys[i] & Integer.MAX_VALUE);
+        } else {
+            Integer[] boxed = new Integer[size];
+            for (int row = 0; row < size; row++) boxed[row] = row;
+            Arrays.sort(boxed, (a, b) -> Long.compare(times[a], times[b]));
+            for (int i = 0; i < size; i++) order[i] = boxed[i];
+        }
+        times = permute(times, order);
+        events = permute(events, order);
+        statuses = permute(statuses, order);
+        tasks = permute(tasks, order);
+        ipIds = permute(ipIds, order);
+        userIds = permute(userIds, order);
+    }
+
+    private static long[] permute(long[] column, int[] order) {
+        long[] result = new long[order.length];
+        for (int i = 0; i < order.length; i++) result[i] = column[order[i]];
+        return result;
+    }
+
+    private static int[] permute(int[] column, int[] order) {
+        int[] result = new int[order.length];
+        for (int i = 0; i < order.length; i++) result[i] = column[order[i]];
+        return result;
+    }
+
+    private static byte[] permute(byte[] column, int[] order) {
+        byte[] result = new byte[order.length];
+        for (int i = 0; i < order.length; i++) result[i] = column[order[i]];
+        return result;
+    }
+
+    /**
+     * First row with a time of at least {@code time}. Rows must be sorted by time.
+     */
+    public int lowerRow(long time) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (time(mid) < time) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * First row with a time after {@code time}. Rows must be sorted by time.
+     */
+    public int upperRow(long time) {
+        return time == Long.MAX_VALUE ? size : lowerRow(time + 1);
+    }
+
+    public void trim() {
+        if (offHeap == null && size < times.length) grow(size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Bytes held by the six columns on the heap, including unused capacity.
+     */
+    public long columnBytes() {
+        if (offHeap != null) return 0;
+        return 8L * times.length + events.length + statuses.length
+                + 4L * (tasks.length + ipIds.length + userIds.length);
+    }
+
+    /**
+     * Heap bytes held by the posting lists, timelines, bitmaps, rollups and sketches, or 0 when the store
+     * is not sealed. Those of an off-heap store are counted by {@link #offHeapBytes} instead.
+     */
+    public long indexBytes() {
+        if (!isSealed()) return 0;
+        long bytes = ipIndex.memoryBytes() + userIndex.memoryBytes() + taskIndex.memoryBytes() + 4L * taskValues.length
+                + timelines.memoryBytes();
+        for (Bitmap rows : eventRows) bytes += rows.memoryBytes();
+        for (Bitmap rows : statusRows) bytes += rows.memoryBytes();
+        for (Rollup rollup : rollups) bytes += rollup.memoryBytes();
+        if (sketchDays != null) {
+            bytes += 8L * sketchDays.length;
+            for (HyperLogLog sketch : ipSketches) bytes += sketch.memoryBytes();
+            for (HyperLogLog sketch : userSketches) bytes += sketch.memoryBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Number of rows with event {@code code}. The store must be sealed.
+     */
+    public int eventCount(int code) {
+        return eventCounts[code];
+    }
+
+    /**
+     * Number of rows with status {@code code}. The store must be sealed.
+     */
+    public int statusCount(int code) {
+        return statusCounts[code];
+    }
+
+    public long dictionaryBytes() {
+        return ips.memoryBytes() + users.memoryBytes();
+    }
+
+    /**
+     * Bytes of the direct or mapped buffer holding an off-heap store, 0 for any other.
+     */
+    public long offHeapBytes() {
+        return offHeap == null ? 0 : offHeap.image.capacity();
+    }
+
+    public IpDictionary ips() {
+        return ips;
+    }
+
+    public Dictionary users() {
+        return users;
+    }
+
+    /**
+     * The users, for adding those of new rows. An off-heap store is read-only and has none to add to.
+     */
+    public MutableDictionary mutableUsers() {
+        checkOnHeap();
+        return mutableUsers;
+    }
+
+    public long time(int row) {
+        return offHeap == null ? times[row] : offHeap.times.get(row);
+    }
+
+    public int ip(int row) {
+        return offHeap == null ? ipIds[row] : offHeap.ipIds.get(row);
+    }
+
+    public int user(int row) {
+        return offHeap == null ? userIds[row] : offHeap.userIds.get(row);
+    }
+
+    public int event(int row) {
+        return offHeap == null ? events[row] : offHeap.events.get(row);
+    }
+
+    public int status(int row) {
+        return offHeap == null ? statuses[row] : offHeap.statuses.get(row);
+    }
+
+    public int task(int row) {
+        return offHeap == null ? tasks[row] : offHeap.tasks.get(row);
+    }
+
+    public static Event eventOf(int code) {
+        return EVENTS[code];
+    }
+
+    public static Status statusOf(int code) {
+        return STATUSES[code];
+    }
+
+    public static Date dateOf(long time) {
+        return new Date(time * 1000);
+    }
+
+    /**
+     * First epoch second strictly after {@code after}, or {@code Long.MIN_VALUE} without a bound.
+     */
+    public static long lowerBound(Date after) {
+        return after == null ? Long.MIN_VALUE : Math.floorDiv(after.getTime(), 1000) + 1;
+    }
+
+    /**
+     * Last epoch second strictly before {@code before}, or {@code Long.MAX_VALUE} without a bound.
+     */
+    public static long upperBound(Date before) {
+        return before == null ? Long.MAX_VALUE : -Math.floorDiv(-before.getTime(), 1000) - 1;
+    }
+}
@@ -0,0 +1,166 @@
+package store;
+
+import status.Event;
+import status.Status;
+
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * Conjunction of equality conditions on the entry columns, plus an optional {@link Subnet} the ip must
+ * fall in. Filters do not depend on any particular {@link EntryStore}, so the same filter can be run
+ * against every store.
+ */
+public final class Filter {
+
+    public static final Filter ALL = new Filter(null, null, null, null, null, null, null, false);
+    public static final Filter NONE = new Filter(null, null, null, null, null, null, null, true);
+
+    private final String ip;
+    private final Subnet subnet;
+    private final String user;
+    private final Event event;
+    private final Status status;
+    private final Integer task;
+    private final Long time;
+    private final boolean empty;
+
+    private Filter(String ip, Subnet subnet, String user, Event event, Status status, Integer task, Long time,
+                   boolean empty) {
+        this.ip = ip;
+        this.subnet = subnet;
+        this.user = user;
+        this.event = event;
+        this.status = status;
+        this.task = task;
+        this.time = time;
+        this.empty = empty;
+    }
+
+    public static Filter ip(String ip) {
+        return ip == null ? NONE : new Filter(ip, null, null, null, null, null, null, false);
+    }
+
+    public static Filter user(String user) {
+        return user == null ? NONE : new Filter(null, null, user, null, null, null, null, false);
+    }
+
+    public static Filter event(Event event) {
+        return event == null ? NONE : new Filter(null, null, null, event, null, null, null, false);
+    }
+
+    public static Filter status(Status status) {
+        return status == null ? NONE : new Filter(null, null, null, null, status, null, null, false);
+    }
+
+    public static Filter task(Event event, int task) {
+        return event == null ? NONE : new Filter(null, null, null, event, null, task, null, false);
+    }
+
+    /**
+     * Rows whose ip is an IPv4 address inside {@code subnet}.
+     */
+    public static Filter subnet(Subnet subnet) {
+        return subnet == null ? NONE : new Filter(null, subnet, null, null, null, null, null, false);
+    }
+
+    /**
+     * Rows logged exactly at {@code date}. Dates between whole seconds match nothing.
+     */
+    public static Filter date(Date date) {
+        if (date == null || date.getTime() % 1000 != 0) return NONE;
+        return new Filter(null, null, null, null, null, null, date.getTime() / 1000, false);
+    }
+
+    public Filter and(Filter other) {
+        if (empty || other.empty) return NONE;
+        if (conflicts(ip, other.ip) || conflicts(user, other.user) || conflicts(event, other.event)
+                || conflicts(status, other.status) || conflicts(task, other.task) || conflicts(time, other.time)
+                || subnet != null && other.subnet != null && !subnet.contains(other.subnet)
+                && !other.subnet.contains(subnet)) {
+            return NONE;
+        }
+        String ip = pick(this.ip, other.ip);
+        // CIDR blocks are either nested or disjoint, so the intersection is the smaller one
+        Subnet subnet = this.subnet != null && other.subnet != null && this.subnet.contains(other.subnet)
+                ? other.subnet : pick(this.subnet, other.subnet);
+        if (subnet != null && ip != null) {
+            // an exact ip either lies in the subnet, which then adds nothing, or rules out every row
+            long address = Ipv4.parse(ip);
+            if (address < 0 || !subnet.contains((int) address)) return NONE;
+            subnet = null;
+        }
+        return new Filter(ip, subnet, pick(user, other.user), pick(event, other.event),
+                pick(status, other.status), pick(task, other.task), pick(time, other.time), false);
+    }
+
+    private static boolean conflicts(Object a, Object b) {
+        return a != null && b != null && !a.equals(b);
+    }
+
+    private static <T> T pick(T a, T b) {
+        return a != null ? a : b;
+    }
+
+    public String getIp() {
+        return ip;
+    }
+
+    public Subnet getSubnet() {
+        return subnet;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public Event getEvent() {
+        return event;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Integer getTask() {
+        return task;
+    }
+
+    public Long getTime() {
+        return time;
+    }
+
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Filter)) return false;
+        Filter other = (Filter) o;
+        return empty == other.empty && Objects.equals(ip, other.ip)
+                && Objects.equals(subnet, other.subnet) && Objects.equals(user, other.user)
+                && event == other.event && status == other.status && Objects.equals(task, other.task)
+                && Objects.equals(time, other.time);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(ip, subnet, user, event, status, task, time, empty);
+    }
+
+    @Override
+    public String toString() {
+        if (empty) return "none";
+        StringBuilder sb = new StringBuilder();
+        if (ip != null) sb.append(" ip=").append(ip);
+        if (subnet != null) sb.append(" subnet=").append(subnet);
+        if (user != null) sb.append(" user=").append(user);
+        if (event != null) sb.append(" event=").append(event);
+        if (status != null) sb.append(" status=").append(status);
+        if (task != null) sb.append(" task=").append(task);
+        if (time != null) sb.append(" time=").append(time);
+        return sb.length() == 0 ? "all" : sb.substring(1);
+    }
+}
@@ -0,0 +1,155 @@
+package store;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * HyperLogLog sketch over 64-bit hashes with {@code 2^precision} one-byte registers. The relative
+ * standard error of {@link #estimate()} is about {@code 1.04 / sqrt(2^precision)}. Sketches of
+ * different precisions can be merged; the result has the lower precision. A sketch read as a view
+ * keeps its registers in the buffer it was read from and cannot be added to.
+ */
+public class HyperLogLog {
+
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 18;
+
+    private final int precision;
+    private final byte[] registers;
+    private final ByteBuffer view;
+
+    public HyperLogLog(int precision) {
+        checkPrecision(precision);
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+        this.view = null;
+    }
+
+    private HyperLogLog(int precision, ByteBuffer view) {
+        checkPrecision(precision);
+        this.precision = precision;
+        this.registers = null;
+        this.view = view;
+    }
+
+    private static void checkPrecision(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("precision must be in [" + MIN_PRECISION + ", " + MAX_PRECISION + "]: " + precision);
+        }
+    }
+
+    private int register(int index) {
+        return registers != null ? registers[index] : view.get(index);
+    }
+
+    /**
+     * Smallest precision whose standard error is at most {@code relativeError}, e.g. 12 for 0.02.
+     */
+    public static int precisionFor(double relativeError) {
+        if (!(relativeError > 0 && relativeError < 1)) {
+            throw new IllegalArgumentException("relativeError must be in (0, 1): " + relativeError);
+        }
+        for (int precision = MIN_PRECISION; precision < MAX_PRECISION; precision++) {
+            if (1.04 / Math.sqrt(1 << precision) <= relativeError) return precision;
+        }
+        return MAX_PRECISION;
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    public void add(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        int rank = Math.min(Long.numberOfLeadingZeros(hash << precision), 64 - precision) + 1;
+        if (rank > registers[index]) registers[index] = (byte) rank;
+    }
+
+    /**
+     * Adds everything counted by {@code other}. If {@code other} has a higher precision it is folded
+     * down to this one; merging a sketch of lower precision into this one is not possible.
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision < precision) {
+            throw new IllegalArgumentException("cannot merge precision " + other.precision + " into " + precision);
+        }
+        int shift = other.precision - precision;
+        if (shift == 0) {
+            for (int i = 0; i < registers.length; i++) {
+                int rank = other.register(i);
+                if (rank > registers[i]) registers[i] = (byte) rank;
+            }
+            return;
+        }
+        int lowMask = (1 << shift) - 1;
+        for (int i = 0, count = 1 << other.precision; i < count; i++) {
+            int rank = other.register(i);
+            if (rank == 0) continue;
+            int low = i & lowMask;
+            // the dropped index bits become the leading bits of the remaining hash
+            int folded = low != 0 ? Integer.numberOfLeadingZeros(low) - (32 - shift) + 1 : shift + rank;
+            int index = i >>> shift;
+            if (folded > registers[index]) registers[index] = (byte) folded;
+        }
+    }
+
+    public double estimate() {
+        int m = 1 << precision;
+        double sum = 0;
+        int zeros = 0;
+        for (int i = 0; i < m; i++) {
+            int register = register(i);
+            sum += 1.0 / (1L << register);
+            if (register == 0) zeros++;
+        }
+        double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // linear counting is more accurate while many registers are still empty
+            return m * Math.log((double) m / zeros);
+        }
+        return estimate;
+    }
+
+    /**
+     * 64-bit hash of {@code bytes[from, to)} for {@link #add}: FNV-1a followed by a final avalanche.
+     */
+    public static long hash(byte[] bytes, int from, int to) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = from; i < to; i++) {
+            h ^= bytes[i];
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Bytes held on the heap, 0 for a view.
+     */
+    public long memoryBytes() {
+        return registers == null ? 0 : registers.length;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeByte(precision);
+        out.write(registers);
+    }
+
+    static HyperLogLog readFrom(ByteBuffer in, boolean view) {
+        int precision = in.get();
+        if (view) {
+            HyperLogLog sketch = new HyperLogLog(precision, in.slice(in.position(), 1 << precision));
+            in.position(in.position() + (1 << precision));
+            return sketch;
+        }
+        HyperLogLog sketch = new HyperLogLog(precision);
+        in.get(sketch.registers);
+        return sketch;
+    }
+}
@@ -0,0 +1,76 @@
+package store;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Set of ints in a single open-addressing table with linear probing, so adding a value neither boxes
+ * it nor allocates an entry.
+ */
+public class IntHashSet {
+
+    // 0 marks a free slot, so the value 0 itself is tracked by a flag
+    private int[] table = new int[32];
+    private boolean hasZero;
+    private int size;
+
+    /**
+     * Adds {@code value}; returns false if it was already present.
+     */
+    public boolean add(int value) {
+        if (value == 0) {
+            if (hasZero) return false;
+            hasZero = true;
+            size++;
+            return true;
+        }
+        int mask = table.length - 1;
+        int slot = mix(value) & mask;
+        while (table[slot] != 0) {
+            if (table[slot] == value) return false;
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = value;
+        if (++size * 2 > table.length) rehash();
+        return true;
+    }
+
+    public boolean contains(int value) {
+        if (value == 0) return hasZero;
+        int mask = table.length - 1;
+        for (int slot = mix(value) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            if (table[slot] == value) return true;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Passes every value to {@code action}, in no particular order.
+     */
+    public void forEach(IntConsumer action) {
+        if (hasZero) action.accept(0);
+        for (int value : table) {
+            if (value != 0) action.accept(value);
+        }
+    }
+
+    private void rehash() {
+        int[] old = table;
+        table = new int[old.length * 2];
+        int mask = table.length - 1;
+        for (int value : old) {
+            if (value == 0) continue;
+            int slot = mix(value) & mask;
+            while (table[slot] != 0) slot = (slot + 1) & mask;
+            table[slot] = value;
+        }
+    }
+
+    private static int mix(int value) {
+        int h = value * 0x9E3779B1;
+        return h ^ (h >>> 16);
+    }
+}
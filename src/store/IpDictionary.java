@@ -0,0 +1,215 @@
+package store;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Dictionary for the ip column. Canonical IPv4 addresses are kept as packed ints in an open-addressing
+ * table and only turned back into strings by {@link #get}; anything else, such as IPv6 or malformed
+ * text, goes to a {@link StringDictionary} fallback.
+ */
+public class IpDictionary extends MutableDictionary {
+
+    // per id: the packed address, or for fallback ids the id in others
+    private int[] values = new int[16];
+    private final BitSet fallback = new BitSet();
+    private final MutableDictionary others;
+    private int[] otherIds = new int[16];
+    private int[] table = new int[32];
+    private int size;
+    private volatile int[] byAddress;
+
+    public IpDictionary() {
+        this(new StringDictionary());
+    }
+
+    private IpDictionary(MutableDictionary others) {
+        this.others = others;
+    }
+
+    @Override
+    public int add(String value) {
+        long packed = Ipv4.parse(value);
+        return packed >= 0 ? addPacked((int) packed) : addOther(others.add(value));
+    }
+
+    @Override
+    public int add(byte[] buf, int from, int to) {
+        long packed = Ipv4.parse(buf, from, to);
+        return packed >= 0 ? addPacked((int) packed) : addOther(others.add(buf, from, to));
+    }
+
+    private int addPacked(int packed) {
+        int mask = table.length - 1;
+        int slot = mix(packed) & mask;
+        while (table[slot] != 0) {
+            int id = table[slot] - 1;
+            if (values[id] == packed && !fallback.get(id)) return id;
+            slot = (slot + 1) & mask;
+        }
+        int id = newId(packed);
+        table[slot] = id + 1;
+        if (size * 2 > table.length) rehash();
+        return id;
+    }
+
+    private int addOther(int other) {
+        if (other < otherIds.length && otherIds[other] != 0) return otherIds[other] - 1;
+        int id = newId(other);
+        fallback.set(id);
+        if (other >= otherIds.length) otherIds = Arrays.copyOf(otherIds, Math.max(16, other * 2));
+        otherIds[other] = id + 1;
+        return id;
+    }
+
+    private int newId(int value) {
+        if (size == values.length) values = Arrays.copyOf(values, size * 2);
+        int id = size++;
+        values[id] = value;
+        byAddress = null;
+        changed();
+        return id;
+    }
+
+    @Override
+    public int find(String value) {
+        long packed = Ipv4.parse(value);
+        if (packed < 0) {
+            int other = others.find(value);
+            return other < 0 ? -1 : otherIds[other] - 1;
+        }
+        int mask = table.length - 1;
+        for (int slot = mix((int) packed) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int id = table[slot] - 1;
+            if (values[id] == (int) packed && !fallback.get(id)) return id;
+        }
+        return -1;
+    }
+
+    @Override
+    public String get(int id) {
+        return fallback.get(id) ? others.get(values[id]) : Ipv4.format(values[id]);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public boolean isIpv4(int id) {
+        return !fallback.get(id);
+    }
+
+    /**
+     * Packed address of an IPv4 entry; meaningless for other entries.
+     */
+    public int address(int id) {
+        return values[id];
+    }
+
+    /**
+     * Hash of the packed address, or of the UTF-8 bytes for other entries.
+     */
+    @Override
+    public long hash(int id) {
+        if (fallback.get(id)) return others.hash(values[id]);
+        long h = (values[id] & 0xFFFFFFFFL) * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        h *= 0xff51afd7ed558ccdL;
+        return h ^ h >>> 29;
+    }
+
+    /**
+     * Ids of the IPv4 entries inside {@code subnet}, found by binary search over the entries sorted by
+     * address.
+     */
+    public int[] idsIn(Subnet subnet) {
+        int[] sorted = byAddress();
+        int from = firstAtLeast(sorted, subnet.low());
+        int to = subnet.high() == 0xFFFFFFFFL ? sorted.length : firstAtLeast(sorted, subnet.high() + 1);
+        return Arrays.copyOfRange(sorted, from, to);
+    }
+
+    private int firstAtLeast(int[] sorted, long address) {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if ((values[sorted[mid]] & 0xFFFFFFFFL) < address) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private int[] byAddress() {
+        int[] sorted = byAddress;
+        if (sorted == null) {
+            long[] keys = new long[size - fallback.cardinality()];
+            int count = 0;
+            for (int id = 0; id < size; id++) {
+                if (!fallback.get(id)) keys[count++] = (values[id] & 0xFFFFFFFFL) << 31 | id;
+            }
+            Arrays.sort(keys);
+            sorted = new int[count];
+            for (int i = 0; i < count; i++) sorted[i] = (int) (keys[i] & Integer.MAX_VALUE);
+            byAddress = sorted;
+        }
+        return sorted;
+    }
+
+    /**
+     * The arrays and table, plus the fallback dictionary.
+     */
+    @Override
+    public long memoryBytes() {
+        return 4L * values.length + 4L * otherIds.length + 4L * table.length + fallback.size() / 8
+                + others.memoryBytes();
+    }
+
+    @Override
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        for (int id = 0; id < size; id++) out.writeInt(values[id]);
+        long[] words = fallback.toLongArray();
+        SegmentFile.writeLongs(out, words, words.length);
+        others.writeTo(out);
+    }
+
+    /**
+     * Reads a dictionary written by {@link #writeTo}. The fallback strings are read onto the heap even
+     * for an off-heap store, like the addresses; they are the few ips that are not IPv4.
+     */
+    static IpDictionary readFrom(ByteBuffer in) {
+        int count = in.getInt();
+        int[] values = new int[count];
+        for (int id = 0; id < count; id++) values[id] = in.getInt();
+        BitSet fallback = BitSet.valueOf(SegmentFile.readLongs(in));
+        IpDictionary dictionary = new IpDictionary(StringDictionary.readFrom(in));
+        // fallback ids were handed out in the same order as the ids of the strings they stand for
+        for (int id = 0; id < count; id++) {
+            if (fallback.get(id)) dictionary.addOther(values[id]);
+            else dictionary.addPacked(values[id]);
+        }
+        return dictionary;
+    }
+
+    private void rehash() {
+        int[] newTable = new int[table.length * 2];
+        int mask = newTable.length - 1;
+        for (int id = 0; id < size; id++) {
+            if (fallback.get(id)) continue;
+            int slot = mix(values[id]) & mask;
+            while (newTable[slot] != 0) slot = (slot + 1) & mask;
+            newTable[slot] = id + 1;
+        }
+        table = newTable;
+    }
+
+    private static int mix(int packed) {
+        int h = packed * 0x9E3779B1;
+        return h ^ (h >>> 16);
+    }
+}
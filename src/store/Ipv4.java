@@ -0,0 +1,50 @@
+package store;
+
+/**
+ * Canonical dotted-quad IPv4 addresses packed into an int, most significant octet first. Only
+ * text that {@link #format} gives back unchanged is accepted, so packing never alters a value:
+ * no leading zeros, spaces or signs.
+ */
+public final class Ipv4 {
+
+    private Ipv4() {
+    }
+
+    /**
+     * The packed address, or -1 if {@code buf[from, to)} is not a canonical IPv4 address.
+     */
+    public static long parse(byte[] buf, int from, int to) {
+        int packed = 0;
+        int octets = 0;
+        int i = from;
+        while (i < to) {
+            int start = i;
+            int value = 0;
+            while (i < to && buf[i] >= '0' && buf[i] <= '9' && i - start < 3) value = value * 10 + buf[i++] - '0';
+            int digits = i - start;
+            if (digits == 0 || value > 255 || digits > 1 && buf[start] == '0') return -1;
+            packed = packed << 8 | value;
+            octets++;
+            if (i == to) break;
+            if (buf[i] != '.' || octets == 4) return -1;
+            i++;
+            if (i == to) return -1;
+        }
+        return octets == 4 ? packed & 0xFFFFFFFFL : -1;
+    }
+
+    public static long parse(String value) {
+        if (value == null || value.length() > 15) return -1;
+        byte[] bytes = new byte[value.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            char c = value.charAt(i);
+            if (c > 127) return -1;
+            bytes[i] = (byte) c;
+        }
+        return parse(bytes, 0, bytes.length);
+    }
+
+    public static String format(int packed) {
+        return (packed >>> 24) + "." + (packed >>> 16 & 0xFF) + "." + (packed >>> 8 & 0xFF) + "." + (packed & 0xFF);
+    }
+}
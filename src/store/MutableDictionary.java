@@ -0,0 +1,14 @@
+package store;
+
+/**
+ * A {@link Dictionary} that new values can be added to, handing out the next id to each new one.
+ */
+public abstract class MutableDictionary extends Dictionary {
+
+    public abstract int add(String value);
+
+    /**
+     * Same as {@link #add(String)} for the UTF-8 bytes {@code buf[from, to)}.
+     */
+    public abstract int add(byte[] buf, int from, int to);
+}
@@ -0,0 +1,32 @@
+package store;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * The six columns of an off-heap {@link EntryStore}, as views into the direct or mapped buffer that
+ * holds the whole store in the layout of {@code EntryStore#writeTo}.
+ */
+final class OffHeapColumns {
+
+    // the whole store body, as written
+    final ByteBuffer image;
+    final LongBuffer times;
+    final ByteBuffer events;
+    final ByteBuffer statuses;
+    final IntBuffer tasks;
+    final IntBuffer ipIds;
+    final IntBuffer userIds;
+
+    OffHeapColumns(ByteBuffer image, LongBuffer times, ByteBuffer events, ByteBuffer statuses,
+                   IntBuffer tasks, IntBuffer ipIds, IntBuffer userIds) {
+        this.image = image;
+        this.times = times;
+        this.events = events;
+        this.statuses = statuses;
+        this.tasks = tasks;
+        this.ipIds = ipIds;
+        this.userIds = userIds;
+    }
+}
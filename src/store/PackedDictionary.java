@@ -0,0 +1,125 @@
+package store;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read-only dictionary over the UTF-8 entries of a {@link StringDictionary} as laid out by its
+ * {@code writeTo}, left in place in a direct or mapped buffer. The heap only holds the entry offsets
+ * and the hash table; strings are decoded on every {@link #get}, so no per-entry objects are kept.
+ */
+public class PackedDictionary extends Dictionary {
+
+    private final ByteBuffer bytes;
+    private final int[] offsets;
+    private final int[] table;
+
+    private PackedDictionary(ByteBuffer bytes, int[] offsets) {
+        this.bytes = bytes;
+        this.offsets = offsets;
+        int size = offsets.length - 1;
+        this.table = new int[Integer.highestOneBit(Math.max(16, size * 2)) * 2];
+        int mask = table.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = slot(id) & mask;
+            while (table[slot] != 0) slot = (slot + 1) & mask;
+            table[slot] = id + 1;
+        }
+    }
+
+    /**
+     * Wraps the dictionary at the position of {@code in} and moves past it.
+     */
+    static PackedDictionary view(ByteBuffer in) {
+        int start = in.position();
+        int count = in.getInt();
+        int[] offsets = new int[count + 1];
+        int position = 4;
+        for (int id = 0; id < count; id++) {
+            // every entry is its length followed by the bytes, so the offsets skip the length
+            int length = in.getInt(start + position);
+            offsets[id] = position + 4;
+            position += 4 + length;
+        }
+        offsets[count] = position + 4;
+        ByteBuffer bytes = in.slice(start, position);
+        in.position(start + position);
+        return new PackedDictionary(bytes, offsets);
+    }
+
+    @Override
+    public int find(String value) {
+        if (value == null) return -1;
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        int h = 1;
+        for (byte b : encoded) h = 31 * h + b;
+        h ^= h >>> 16;
+        int mask = table.length - 1;
+        for (int slot = h & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int id = table[slot] - 1;
+            if (equals(id, encoded)) return id;
+        }
+        return -1;
+    }
+
+    private boolean equals(int id, byte[] encoded) {
+        int from = offsets[id];
+        if (length(id) != encoded.length) return false;
+        for (int i = 0; i < encoded.length; i++) {
+            if (bytes.get(from + i) != encoded[i]) return false;
+        }
+        return true;
+    }
+
+    private int length(int id) {
+        return offsets[id + 1] - 4 - offsets[id];
+    }
+
+    private byte[] bytes(int id) {
+        byte[] value = new byte[length(id)];
+        bytes.get(offsets[id], value);
+        return value;
+    }
+
+    @Override
+    public String get(int id) {
+        return new String(bytes(id), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    @Override
+    public long hash(int id) {
+        byte[] value = bytes(id);
+        return HyperLogLog.hash(value, 0, value.length);
+    }
+
+    /**
+     * Same table hash as {@link StringDictionary} uses, over the bytes in the buffer.
+     */
+    private int slot(int id) {
+        int h = 1;
+        for (int i = offsets[id], end = i + length(id); i < end; i++) h = 31 * h + bytes.get(i);
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * The offsets and the hash table; the entries themselves are off the heap.
+     */
+    @Override
+    public long memoryBytes() {
+        return 4L * offsets.length + 4L * table.length;
+    }
+
+    @Override
+    void writeTo(DataOutputStream out) throws IOException {
+        byte[] copy = new byte[bytes.capacity()];
+        bytes.get(0, copy);
+        out.write(copy);
+    }
+}
@@ -0,0 +1,124 @@
+package store;
+
+import status.Event;
+import status.Status;
+
+import java.nio.file.Path;
+
+/**
+ * A sealed {@link EntryStore} for one stretch of time, with the statistics that let a query decide
+ * whether it can match without loading it: first and last timestamp, row count, and the number of
+ * rows per event and per status. The store itself may be evicted by its {@link PartitionCache} and
+ * is loaded again from its segment file on the next {@link #store()}.
+ */
+public class Partition {
+
+    private final PartitionCache cache;
+    private final long minTime;
+    private final long maxTime;
+    private final int rows;
+    private final int[] eventCounts;
+    private final int[] statusCounts;
+    private final long bytes;
+    private Path file;
+    private boolean spilled;
+    private volatile boolean removed;
+    private volatile EntryStore store;
+    private volatile long lastUsed;
+
+    Partition(PartitionCache cache, EntryStore store, Path file) {
+        if (!store.isSealed() || store.size() == 0) throw new IllegalArgumentException("store must be sealed and not empty");
+        this.cache = cache;
+        this.store = store;
+        this.file = file;
+        this.minTime = store.time(0);
+        this.maxTime = store.time(store.size() - 1);
+        this.rows = store.size();
+        this.eventCounts = new int[Event.values().length];
+        this.statusCounts = new int[Status.values().length];
+        for (int code = 0; code < eventCounts.length; code++) eventCounts[code] = store.eventCount(code);
+        for (int code = 0; code < statusCounts.length; code++) statusCounts[code] = store.statusCount(code);
+        this.bytes = store.columnBytes() + store.indexBytes() + store.dictionaryBytes() + store.offHeapBytes();
+    }
+
+    /**
+     * False if no row in {@code [lo, hi]} can match {@code filter}, judged from the statistics alone.
+     */
+    public boolean mayMatch(Filter filter, long lo, long hi) {
+        if (filter.isEmpty() || maxTime < lo || minTime > hi) return false;
+        Long time = filter.getTime();
+        if (time != null && (time < minTime || time > maxTime)) return false;
+        if (filter.getEvent() != null && eventCounts[filter.getEvent().ordinal()] == 0) return false;
+        return filter.getStatus() == null || statusCounts[filter.getStatus().ordinal()] != 0;
+    }
+
+    /**
+     * The entries, loaded from the segment file first if they were evicted.
+     */
+    public EntryStore store() {
+        EntryStore current = store;
+        if (current == null) current = cache.load(this);
+        lastUsed = cache.tick();
+        return current;
+    }
+
+    public boolean isResident() {
+        return store != null;
+    }
+
+    public long getMinTime() {
+        return minTime;
+    }
+
+    public long getMaxTime() {
+        return maxTime;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Memory held by the store while it is resident, on the heap and in its off-heap buffer.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    long lastUsed() {
+        return lastUsed;
+    }
+
+    EntryStore resident() {
+        return store;
+    }
+
+    void setStore(EntryStore store) {
+        this.store = store;
+    }
+
+    Path file() {
+        return file;
+    }
+
+    void spilledTo(Path file) {
+        this.file = file;
+        this.spilled = true;
+    }
+
+    /**
+     * Whether the segment file was written by the cache to evict this partition, rather than being
+     * the stored segment of a log file.
+     */
+    boolean isSpilled() {
+        return spilled;
+    }
+
+    void markRemoved() {
+        removed = true;
+    }
+
+    boolean isRemoved() {
+        return removed;
+    }
+}
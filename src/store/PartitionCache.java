@@ -0,0 +1,226 @@
+package store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the resident {@link Partition}s under a memory budget. When a new or reloaded partition
+ * pushes the total over the budget, the least recently used ones are evicted: a partition backed by
+ * a stored segment simply drops its store, any other is first spilled to a segment file in the spill
+ * directory. Queries that still hold an evicted store keep using it; it is only reclaimed once they
+ * are done. A budget of 0 never evicts. Spill files are deleted once no one can read them any more,
+ * and all of them on {@link #close()}.
+ */
+public class PartitionCache implements Closeable {
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final long budget;
+    private final boolean offHeap;
+    private Path spillDir;
+    private final AtomicLong clock = new AtomicLong();
+    private final Set<Partition> resident = new LinkedHashSet<Partition>();
+    private long residentBytes;
+    private long spills;
+    private long loads;
+    private boolean spillDirReady;
+    private boolean tempSpillDir;
+    private final Set<Path> spillFiles = new HashSet<Path>();
+
+    /**
+     * @param spillDir where partitions without a stored segment are written before they are evicted;
+     *                 null for a fresh temporary directory, created on first use and removed on close
+     */
+    public PartitionCache(long budget, Path spillDir) {
+        this(budget, spillDir, false);
+    }
+
+    /**
+     * With {@code offHeap}, evicted partitions are mapped back as off-heap stores rather than read onto
+     * the heap.
+     */
+    public PartitionCache(long budget, Path spillDir, boolean offHeap) {
+        if (budget < 0) throw new IllegalArgumentException("budget must not be negative: " + budget);
+        this.budget = budget;
+        this.offHeap = offHeap;
+        this.spillDir = spillDir;
+    }
+
+    /**
+     * Wraps a sealed store that exists only in memory.
+     */
+    public Partition add(EntryStore store) {
+        return add(store, null);
+    }
+
+    /**
+     * Wraps a sealed store that was also written to {@code segment}, so that it can be evicted without
+     * spilling.
+     */
+    public synchronized Partition add(EntryStore store, Path segment) {
+        Partition partition = new Partition(this, store, segment);
+        resident.add(partition);
+        residentBytes += partition.getBytes();
+        evict(partition);
+        return partition;
+    }
+
+    /**
+     * Forgets a partition that new queries no longer see. Queries that started earlier may still load
+     * it, without it counting against the budget, so its spill file is only deleted once the partition
+     * is garbage.
+     */
+    public synchronized void remove(Partition partition) {
+        if (resident.remove(partition)) residentBytes -= partition.getBytes();
+        partition.markRemoved();
+        if (partition.isSpilled()) {
+            Path file = partition.file();
+            CLEANER.register(partition, () -> deleteSpill(file));
+        }
+    }
+
+    /**
+     * Deletes every spill file and a temporary spill directory. Evicted partitions cannot be loaded
+     * from them afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        for (Path file : List.copyOf(spillFiles)) deleteSpill(file);
+        if (tempSpillDir) {
+            try {
+                Files.deleteIfExists(spillDir);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private synchronized void deleteSpill(Path file) {
+        if (!spillFiles.remove(file)) return;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stores of the resident partitions.
+     */
+    public synchronized List<EntryStore> residentStores() {
+        List<EntryStore> stores = new ArrayList<EntryStore>();
+        for (Partition partition : resident) stores.add(partition.resident());
+        return stores;
+    }
+
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    public synchronized long getSpills() {
+        return spills;
+    }
+
+    /**
+     * Number of times an evicted partition was read back from disk.
+     */
+    public synchronized long getLoads() {
+        return loads;
+    }
+
+    long tick() {
+        return clock.incrementAndGet();
+    }
+
+    /**
+     * Reads an evicted partition back. Loads of the same partition wait for each other, but the file
+     * is read without holding the cache, so loads of different partitions run in parallel.
+     */
+    EntryStore load(Partition partition) {
+        synchronized (partition) {
+            EntryStore store = partition.resident();
+            if (store != null) return store;
+            Path file;
+            synchronized (this) {
+                file = partition.file();
+            }
+            try {
+                store = offHeap ? SegmentFile.map(file) : SegmentFile.read(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (store == null) throw new IllegalStateException("cannot reload partition from " + file);
+            synchronized (this) {
+                loads++;
+                // only queries that started before the partition was removed get here; they hold on to the store
+                if (partition.isRemoved()) return store;
+                partition.setStore(store);
+                resident.add(partition);
+                residentBytes += partition.getBytes();
+                evict(partition);
+            }
+            return store;
+        }
+    }
+
+    /**
+     * Evicts least recently used partitions other than {@code keep} until the budget is met.
+     */
+    private void evict(Partition keep) {
+        if (budget == 0) return;
+        while (residentBytes > budget) {
+            Partition victim = null;
+            for (Partition partition : resident) {
+                if (partition != keep && (victim == null || partition.lastUsed() < victim.lastUsed())) {
+                    victim = partition;
+                }
+            }
+            if (victim == null || victim.file() == null && !spill(victim)) return;
+            victim.setStore(null);
+            resident.remove(victim);
+            residentBytes -= victim.getBytes();
+        }
+    }
+
+    private boolean spill(Partition partition) {
+        try {
+            Path dir = spillDir();
+            Path file = dir.resolve("partition-" + tick() + ".seg");
+            SegmentFile.write(file, "partition", partition.getRows(), 0, partition.resident());
+            spillFiles.add(file);
+            partition.spilledTo(file);
+            spills++;
+            return true;
+        } catch (IOException | UncheckedIOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private Path spillDir() throws IOException {
+        if (!spillDirReady) {
+            if (spillDir == null) {
+                spillDir = Files.createTempDirectory("logs-partitions");
+                tempSpillDir = true;
+            } else {
+                Files.createDirectories(spillDir);
+            }
+            spillDirReady = true;
+        }
+        return spillDir;
+    }
+}
@@ -0,0 +1,112 @@
+package store;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Inverted index from a dense int key to the ascending row ids holding that key,
+ * laid out as one array of rows plus per-key offsets. An index read as a view keeps both in the
+ * buffer it was read from.
+ */
+public class PostingIndex {
+
+    private final int[] offsets;
+    private final int[] rows;
+    private final IntBuffer offsetView;
+    private final IntBuffer rowView;
+
+    private PostingIndex(int[] offsets, int[] rows) {
+        this.offsets = offsets;
+        this.rows = rows;
+        this.offsetView = null;
+        this.rowView = null;
+    }
+
+    private PostingIndex(IntBuffer offsetView, IntBuffer rowView) {
+        this.offsets = null;
+        this.rows = null;
+        this.offsetView = offsetView;
+        this.rowView = rowView;
+    }
+
+    /**
+     * Counting sort of the row ids by {@code keys[row]}, each key in {@code [0, keyCount)}.
+     */
+    public static PostingIndex build(int[] keys, int size, int keyCount) {
+        int[] offsets = new int[keyCount + 1];
+        for (int row = 0; row < size; row++) offsets[keys[row] + 1]++;
+        for (int key = 0; key < keyCount; key++) offsets[key + 1] += offsets[key];
+        int[] next = Arrays.copyOf(offsets, keyCount);
+        int[] rows = new int[size];
+        for (int row = 0; row < size; row++) rows[next[keys[row]]++] = row;
+        return new PostingIndex(offsets, rows);
+    }
+
+    public int keyCount() {
+        return (offsets != null ? offsets.length : offsetView.limit()) - 1;
+    }
+
+    public int start(int key) {
+        return offsets != null ? offsets[key] : offsetView.get(key);
+    }
+
+    public int end(int key) {
+        return offsets != null ? offsets[key + 1] : offsetView.get(key + 1);
+    }
+
+    public int row(int i) {
+        return rows != null ? rows[i] : rowView.get(i);
+    }
+
+    /**
+     * First position in the postings of {@code key} whose row is at least {@code row}.
+     */
+    public int seek(int key, int row) {
+        int lo = start(key);
+        int hi = end(key);
+        if (rows == null) {
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (rowView.get(mid) < row) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (rows[mid] < row) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Writes an index built on the heap; a view is written along with the rest of its buffer.
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        SegmentFile.writeInts(out, offsets, offsets.length);
+        SegmentFile.writeInts(out, rows, rows.length);
+    }
+
+    /**
+     * Reads an index written by {@link #writeTo}, as a view into {@code in} if {@code view}.
+     */
+    static PostingIndex readFrom(ByteBuffer in, boolean view) {
+        if (view) {
+            IntBuffer offsets = SegmentFile.viewInts(in);
+            return new PostingIndex(offsets, SegmentFile.viewInts(in));
+        }
+        int[] offsets = SegmentFile.readInts(in);
+        return new PostingIndex(offsets, SegmentFile.readInts(in));
+    }
+
+    /**
+     * Bytes held on the heap, 0 for a view.
+     */
+    public long memoryBytes() {
+        return offsets == null ? 0 : 4L * (offsets.length + rows.length);
+    }
+}
@@ -0,0 +1,161 @@
+package store;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * Row counts per (time bucket, event, status, task) for one bucket size. Buckets are aligned
+ * to epoch seconds, so every bucket of a coarser rollup is an exact union of finer ones. A rollup
+ * read as a view keeps its arrays in the buffer it was read from.
+ */
+public class Rollup {
+
+    public interface Sink {
+        void add(int task, int count);
+    }
+
+    private final long bucketSeconds;
+    private final long[] bucketStarts;
+    private final int[] offsets;
+    private final long[] keys;
+    private final int[] counts;
+    private final LongBuffer bucketStartView;
+    private final IntBuffer offsetView;
+    private final LongBuffer keyView;
+    private final IntBuffer countView;
+
+    private Rollup(long bucketSeconds, long[] bucketStarts, int[] offsets, long[] keys, int[] counts) {
+        this.bucketSeconds = bucketSeconds;
+        this.bucketStarts = bucketStarts;
+        this.offsets = offsets;
+        this.keys = keys;
+        this.counts = counts;
+        this.bucketStartView = null;
+        this.offsetView = null;
+        this.keyView = null;
+        this.countView = null;
+    }
+
+    private Rollup(long bucketSeconds, LongBuffer bucketStarts, IntBuffer offsets, LongBuffer keys, IntBuffer counts) {
+        this.bucketSeconds = bucketSeconds;
+        this.bucketStarts = null;
+        this.offsets = null;
+        this.keys = null;
+        this.counts = null;
+        this.bucketStartView = bucketStarts;
+        this.offsetView = offsets;
+        this.keyView = keys;
+        this.countView = counts;
+    }
+
+    /**
+     * Builds the rollup from a store whose rows are sorted by time.
+     */
+    static Rollup build(EntryStore store, long bucketSeconds) {
+        long[] bucketStarts = new long[16];
+        int[] offsets = new int[17];
+        long[] keys = new long[16];
+        int[] counts = new int[16];
+        int buckets = 0;
+        int entries = 0;
+        long[] scratch = new long[64];
+        int row = 0;
+        while (row < store.size()) {
+            long start = Math.floorDiv(store.time(row), bucketSeconds) * bucketSeconds;
+            int n = 0;
+            for (; row < store.size() && store.time(row) < start + bucketSeconds; row++) {
+                if (n == scratch.length) scratch = Arrays.copyOf(scratch, n * 2);
+                scratch[n++] = key(store.event(row), store.status(row), store.task(row));
+            }
+            Arrays.sort(scratch, 0, n);
+            if (buckets + 1 == bucketStarts.length) {
+                bucketStarts = Arrays.copyOf(bucketStarts, bucketStarts.length * 2);
+                offsets = Arrays.copyOf(offsets, bucketStarts.length + 1);
+            }
+            if (entries + n > keys.length) {
+                keys = Arrays.copyOf(keys, Math.max(keys.length * 2, entries + n));
+                counts = Arrays.copyOf(counts, keys.length);
+            }
+            for (int i = 0; i < n; i++) {
+                if (i > 0 && scratch[i] == scratch[i - 1]) {
+                    counts[entries - 1]++;
+                } else {
+                    keys[entries] = scratch[i];
+                    counts[entries++] = 1;
+                }
+            }
+            bucketStarts[buckets++] = start;
+            offsets[buckets] = entries;
+        }
+        return new Rollup(bucketSeconds, Arrays.copyOf(bucketStarts, buckets), Arrays.copyOf(offsets, buckets + 1),
+                Arrays.copyOf(keys, entries), Arrays.copyOf(counts, entries));
+    }
+
+    private static long key(int event, int status, int task) {
+        return (long) event << 40 | (long) status << 32 | task & 0xFFFFFFFFL;
+    }
+
+    public long bucketSeconds() {
+        return bucketSeconds;
+    }
+
+    /**
+     * Adds the counts of all buckets starting in {@code [from, to)} that match the given codes
+     * ({@link RowIterator#ANY} matches every value; {@code task} is ignored unless {@code checkTask}).
+     */
+    void add(long from, long to, int event, int status, boolean checkTask, int task, Sink sink) {
+        int first = lowerBucket(from);
+        int last = lowerBucket(to);
+        boolean view = keys == null;
+        for (int i = offset(first), end = offset(last); i < end; i++) {
+            long key = view ? keyView.get(i) : keys[i];
+            if (event != RowIterator.ANY && (int) (key >>> 40) != event) continue;
+            if (status != RowIterator.ANY && (int) (key >>> 32 & 0xFF) != status) continue;
+            if (checkTask && (int) key != task) continue;
+            sink.add((int) key, view ? countView.get(i) : counts[i]);
+        }
+    }
+
+    private int offset(int bucket) {
+        return offsets != null ? offsets[bucket] : offsetView.get(bucket);
+    }
+
+    private int lowerBucket(long time) {
+        int index = bucketStarts != null ? Arrays.binarySearch(bucketStarts, time)
+                : SegmentFile.binarySearch(bucketStartView, time);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(bucketSeconds);
+        SegmentFile.writeLongs(out, bucketStarts, bucketStarts.length);
+        SegmentFile.writeInts(out, offsets, offsets.length);
+        SegmentFile.writeLongs(out, keys, keys.length);
+        SegmentFile.writeInts(out, counts, counts.length);
+    }
+
+    static Rollup readFrom(ByteBuffer in, boolean view) {
+        long bucketSeconds = in.getLong();
+        if (view) {
+            LongBuffer bucketStarts = SegmentFile.viewLongs(in);
+            IntBuffer offsets = SegmentFile.viewInts(in);
+            LongBuffer keys = SegmentFile.viewLongs(in);
+            return new Rollup(bucketSeconds, bucketStarts, offsets, keys, SegmentFile.viewInts(in));
+        }
+        long[] bucketStarts = SegmentFile.readLongs(in);
+        int[] offsets = SegmentFile.readInts(in);
+        long[] keys = SegmentFile.readLongs(in);
+        return new Rollup(bucketSeconds, bucketStarts, offsets, keys, SegmentFile.readInts(in));
+    }
+
+    /**
+     * Bytes held on the heap, 0 for a view.
+     */
+    public long memoryBytes() {
+        return keys == null ? 0 : 8L * bucketStarts.length + 4L * offsets.length + 12L * keys.length;
+    }
+}
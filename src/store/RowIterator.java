@@ -0,0 +1,153 @@
+package store;
+
+import java.util.BitSet;
+
+/**
+ * Walks the rows of one {@link EntryStore} that match a {@link Filter} inside a time range, in
+ * ascending row (and so time) order. The rows come from the smallest posting list, the merged posting
+ * lists of the ips in a subnet, or a sparse bitmap that covers the filter, with every candidate checked against the columns, or from a block scan of
+ * the row range that evaluates all column predicates 64 rows at a time.
+ */
+public class RowIterator {
+
+    static final int ANY = -1;
+
+    private final EntryStore store;
+    private final int from;
+    private final int to;
+    private final int ip;
+    private final BitSet ipSet;
+    private final int user;
+    private final int event;
+    private final int status;
+    private final boolean checkTask;
+    private final int task;
+
+    private PostingIndex postings;
+    private int postingEnd;
+    private int[] rows;
+    private Bitmap bitmap;
+    private int position;
+    private boolean done;
+    private boolean scan;
+    private long block;
+    private int blockBase;
+
+    RowIterator(EntryStore store, int from, int to, int ip, BitSet ipSet, int user, int event, int status,
+                boolean checkTask, int task) {
+        this.store = store;
+        this.from = from;
+        this.to = to;
+        this.ip = ip;
+        this.ipSet = ipSet;
+        this.user = user;
+        this.event = event;
+        this.status = status;
+        this.checkTask = checkTask;
+        this.task = task;
+        this.position = from;
+    }
+
+    static RowIterator empty(EntryStore store) {
+        return new RowIterator(store, 0, 0, ANY, null, ANY, ANY, ANY, false, 0);
+    }
+
+    void usePostings(PostingIndex postings, int key, int from) {
+        this.postings = postings;
+        this.position = postings.seek(key, from);
+        this.postingEnd = postings.end(key);
+    }
+
+    /**
+     * Candidates from {@code rows}, which must be ascending and inside the range.
+     */
+    void useRows(int[] rows) {
+        this.rows = rows;
+        this.position = 0;
+    }
+
+    void useBitmap(Bitmap bitmap) {
+        this.bitmap = bitmap;
+    }
+
+    void useScan() {
+        this.scan = true;
+    }
+
+    /**
+     * Whether this iterator walks its whole row range rather than a posting list, row list or bitmap,
+     * so that a shared scan can take its place.
+     */
+    boolean isSequential() {
+        return postings == null && rows == null && bitmap == null && from < to;
+    }
+
+    int from() {
+        return from;
+    }
+
+    int to() {
+        return to;
+    }
+
+    /**
+     * Rows of the block starting at {@code base} that this iterator would return, for a shared scan
+     * that walks the blocks itself; {@code base} need not be aligned with the range.
+     */
+    long matchBlock(int base) {
+        if (base >= to || base + BlockScan.BLOCK <= from) return 0;
+        long mask = store.matchBlock(base, to, ip, ipSet, user, event, status, checkTask, task);
+        return from > base ? mask & -1L << (from - base) : mask;
+    }
+
+    /**
+     * Next matching row, or -1 once the range is exhausted.
+     */
+    public int next() {
+        if (scan) return nextScanned();
+        while (!done) {
+            int row = advance();
+            if (row < 0 || row >= to) {
+                done = true;
+                return -1;
+            }
+            if (matches(row)) return row;
+        }
+        return -1;
+    }
+
+    private int nextScanned() {
+        while (block == 0) {
+            if (done || position >= to) {
+                done = true;
+                return -1;
+            }
+            block = store.matchBlock(position, to, ip, ipSet, user, event, status, checkTask, task);
+            blockBase = position;
+            position += BlockScan.BLOCK;
+        }
+        int row = blockBase + Long.numberOfTrailingZeros(block);
+        block &= block - 1;
+        return row;
+    }
+
+    private int advance() {
+        if (postings != null) return position < postingEnd ? postings.row(position++) : -1;
+        if (rows != null) return position < rows.length ? rows[position++] : -1;
+        if (bitmap != null) {
+            int row = position < to ? bitmap.nextSetBit(position) : -1;
+            position = row + 1;
+            return row;
+        }
+        return position++;
+    }
+
+    private boolean matches(int row) {
+        return (ip == ANY || store.ip(row) == ip)
+                && (ipSet == null || ipSet.get(store.ip(row)))
+                && (user == ANY || store.user(row) == user)
+                && (event == ANY || store.event(row) == event)
+                && (status == ANY || store.status(row) == status)
+                && (!checkTask || store.task(row) == task);
+    }
+}
@@ -0,0 +1,278 @@
+package store;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary image of one sealed {@link EntryStore} parsed from one log file: its columns, dictionaries,
+ * indexes and rollups, stamped with the source file's name, size and modification time and closed
+ * by a CRC32 of everything before it. A segment is only used while the source is unchanged. A source
+ * too large for one mappable segment is stored as several parts, each saying which part of how many
+ * it is.
+ * <pre>
+ * magic "LOGSEG" u16 format, source name, source size, source mtime, part, parts,
+ * store body (see EntryStore#writeTo), CRC32 as u64
+ * </pre>
+ */
+public class SegmentFile {
+
+    /**
+     * Largest segment that can be mapped as one buffer.
+     */
+    public static final long MAX_LENGTH = Integer.MAX_VALUE;
+
+    private static final byte[] MAGIC = "LOGSEG".getBytes(StandardCharsets.US_ASCII);
+    private static final short FORMAT = 5;
+
+    /**
+     * Writes part {@code part} of {@code parts} next to its final name and moves it into place, so
+     * readers never see half a file. A segment over {@link #MAX_LENGTH} bytes is not kept: it fails
+     * with an IOException.
+     */
+    public static void write(Path segment, File source, long sourceSize, long sourceModified, int part, int parts,
+                             EntryStore store) throws IOException {
+        write(segment, source.getName(), sourceSize, sourceModified, part, parts, store);
+    }
+
+    /**
+     * Writes a single part segment with the source stamp given directly, for segments that do not
+     * stand for one log file.
+     */
+    public static void write(Path segment, String sourceName, long sourceSize, long sourceModified, EntryStore store)
+            throws IOException {
+        write(segment, sourceName, sourceSize, sourceModified, 0, 1, store);
+    }
+
+    private static void write(Path segment, String sourceName, long sourceSize, long sourceModified, int part,
+                              int parts, EntryStore store) throws IOException {
+        Path temp = segment.resolveSibling(segment.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (OutputStream file = Files.newOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), crc))) {
+            out.write(MAGIC);
+            out.writeShort(FORMAT);
+            out.writeUTF(sourceName);
+            out.writeLong(sourceSize);
+            out.writeLong(sourceModified);
+            out.writeInt(part);
+            out.writeInt(parts);
+            store.writeTo(out);
+            out.flush();
+            DataOutputStream trailer = new DataOutputStream(file);
+            trailer.writeLong(crc.getValue());
+            trailer.flush();
+        }
+        long length = Files.size(temp);
+        if (length > MAX_LENGTH) {
+            Files.delete(temp);
+            throw new IOException(segment + ": " + length + " bytes is too large to map");
+        }
+        Files.move(temp, segment, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps part {@code part} of {@code parts} and loads it, or returns null if it is missing, corrupt,
+     * from another format version, or was written for a different version of {@code source} or as
+     * another part. Failing to read a segment is not taken as any of these and is thrown.
+     */
+    public static EntryStore read(Path segment, File source, int part, int parts) throws IOException {
+        return read(segment, source.getName(), source.length(), source.lastModified(), part, parts, false);
+    }
+
+    /**
+     * Same as {@link #read(Path, File, int, int)} without checking the source stamp, for segments whose
+     * source is known to be the one they were written from.
+     */
+    public static EntryStore read(Path segment) throws IOException {
+        return read(segment, null, 0, 0, 0, 0, false);
+    }
+
+    /**
+     * Same as {@link #read(Path, File, int, int)}, but leaves the columns and the user strings in the
+     * mapped file and returns an off-heap store, see {@link EntryStore#offHeap()}.
+     */
+    public static EntryStore map(Path segment, File source, int part, int parts) throws IOException {
+        return read(segment, source.getName(), source.length(), source.lastModified(), part, parts, true);
+    }
+
+    /**
+     * Same as {@link #map(Path, File, int, int)} without checking the source stamp.
+     */
+    public static EntryStore map(Path segment) throws IOException {
+        return read(segment, null, 0, 0, 0, 0, true);
+    }
+
+    private static EntryStore read(Path segment, String sourceName, long sourceSize, long sourceModified,
+                                   int part, int parts, boolean map) throws IOException {
+        if (!Files.isRegularFile(segment)) return null;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < MAGIC.length + 8) return null;
+            if (length > MAX_LENGTH) {
+                System.err.println(segment + ": ignored, " + length + " bytes is too large to map");
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            ByteBuffer body = buffer.duplicate().limit((int) length - 8);
+            CRC32 crc = new CRC32();
+            crc.update(body.duplicate());
+            if (crc.getValue() != buffer.getLong((int) length - 8)) return null;
+            byte[] magic = new byte[MAGIC.length];
+            body.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || body.getShort() != FORMAT) return null;
+            String name = readUTF(body);
+            long size = body.getLong();
+            long modified = body.getLong();
+            int storedPart = body.getInt();
+            int storedParts = body.getInt();
+            if (sourceName != null && (!name.equals(sourceName) || size != sourceSize || modified != sourceModified
+                    || storedPart != part || storedParts != parts)) {
+                return null;
+            }
+            return EntryStore.readFrom(body, map);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static String readUTF(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xFFFF];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeLongs(DataOutputStream out, long[] values, int count) throws IOException {
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) out.writeLong(values[i]);
+    }
+
+    static void writeInts(DataOutputStream out, int[] values, int count) throws IOException {
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) out.writeInt(values[i]);
+    }
+
+    static void writeBytes(DataOutputStream out, byte[] values, int count) throws IOException {
+        out.writeInt(count);
+        out.write(values, 0, count);
+    }
+
+    /**
+     * Copies the remaining bytes of {@code buffer} to {@code out} without moving its position.
+     */
+    static void writeBuffer(DataOutputStream out, ByteBuffer buffer) throws IOException {
+        byte[] chunk = new byte[1 << 16];
+        ByteBuffer source = buffer.duplicate();
+        while (source.hasRemaining()) {
+            int length = Math.min(chunk.length, source.remaining());
+            source.get(chunk, 0, length);
+            out.write(chunk, 0, length);
+        }
+    }
+
+    /**
+     * Stream that fills {@code buffer} from its position, failing once it is full.
+     */
+    static OutputStream outputStream(ByteBuffer buffer) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) {
+                buffer.put((byte) b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                buffer.put(b, off, len);
+            }
+        };
+    }
+
+    static long[] readLongs(ByteBuffer in) {
+        long[] values = new long[in.getInt()];
+        in.asLongBuffer().get(values);
+        in.position(in.position() + 8 * values.length);
+        return values;
+    }
+
+    static int[] readInts(ByteBuffer in) {
+        int[] values = new int[in.getInt()];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + 4 * values.length);
+        return values;
+    }
+
+    static byte[] readBytes(ByteBuffer in) {
+        byte[] values = new byte[in.getInt()];
+        in.get(values);
+        return values;
+    }
+
+    /**
+     * Same as {@link #readLongs} but returns a view of the values left in {@code in}.
+     */
+    static LongBuffer viewLongs(ByteBuffer in) {
+        int count = in.getInt();
+        LongBuffer values = in.slice(in.position(), 8 * count).asLongBuffer();
+        in.position(in.position() + 8 * count);
+        return values;
+    }
+
+    static IntBuffer viewInts(ByteBuffer in) {
+        int count = in.getInt();
+        IntBuffer values = in.slice(in.position(), 4 * count).asIntBuffer();
+        in.position(in.position() + 4 * count);
+        return values;
+    }
+
+    /**
+     * {@link Arrays#binarySearch(int[], int, int, int)} over a view.
+     */
+    static int binarySearch(IntBuffer values, int from, int to, int key) {
+        int lo = from;
+        int hi = to - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int value = values.get(mid);
+            if (value < key) lo = mid + 1;
+            else if (value > key) hi = mid - 1;
+            else return mid;
+        }
+        return -(lo + 1);
+    }
+
+    static int binarySearch(LongBuffer values, long key) {
+        int lo = 0;
+        int hi = values.limit() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long value = values.get(mid);
+            if (value < key) lo = mid + 1;
+            else if (value > key) hi = mid - 1;
+            else return mid;
+        }
+        return -(lo + 1);
+    }
+
+    static ByteBuffer viewBytes(ByteBuffer in) {
+        int count = in.getInt();
+        ByteBuffer values = in.slice(in.position(), count);
+        in.position(in.position() + count);
+        return values;
+    }
+}
@@ -0,0 +1,142 @@
+package store;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Maps each distinct string to a dense int id. Lookups by raw UTF-8 bytes do not allocate
+ * once the value is known.
+ */
+public class StringDictionary extends MutableDictionary {
+
+    private String[] values = new String[16];
+    private byte[][] encoded = new byte[16][];
+    private int[] hashes = new int[16];
+    private int[] table = new int[32];
+    private int size;
+
+    @Override
+    public int add(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return add(bytes, 0, bytes.length, value);
+    }
+
+    @Override
+    public int add(byte[] buf, int from, int to) {
+        for (int i = from; i < to; i++) {
+            // decode non-ASCII input first so malformed bytes end up under the same key as the decoded string
+            if (buf[i] < 0) return add(new String(buf, from, to - from, StandardCharsets.UTF_8));
+        }
+        return add(buf, from, to, null);
+    }
+
+    private int add(byte[] buf, int from, int to, String value) {
+        int hash = hash(buf, from, to);
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != 0) {
+            int id = table[slot] - 1;
+            if (hashes[id] == hash && Arrays.equals(encoded[id], 0, encoded[id].length, buf, from, to)) return id;
+            slot = (slot + 1) & mask;
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+            encoded = Arrays.copyOf(encoded, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        int id = size++;
+        changed();
+        values[id] = value != null ? value : new String(buf, from, to - from, StandardCharsets.UTF_8);
+        encoded[id] = Arrays.copyOfRange(buf, from, to);
+        hashes[id] = hash;
+        table[slot] = id + 1;
+        if (size * 2 > table.length) rehash();
+        return id;
+    }
+
+    @Override
+    public int find(String value) {
+        if (value == null) return -1;
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(bytes, 0, bytes.length);
+        int mask = table.length - 1;
+        for (int slot = hash & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int id = table[slot] - 1;
+            if (hashes[id] == hash && Arrays.equals(encoded[id], bytes)) return id;
+        }
+        return -1;
+    }
+
+    @Override
+    public String get(int id) {
+        return values[id];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 64-bit hash of the UTF-8 bytes of entry {@code id}, the same in every dictionary.
+     */
+    @Override
+    public long hash(int id) {
+        return HyperLogLog.hash(encoded[id], 0, encoded[id].length);
+    }
+
+    /**
+     * Rough heap footprint: the arrays plus an estimate of 48 bytes of object overhead per entry,
+     * on top of the characters and their encoded bytes.
+     */
+    @Override
+    public long memoryBytes() {
+        long bytes = 8L * values.length + 8L * encoded.length + 4L * hashes.length + 4L * table.length;
+        for (int id = 0; id < size; id++) {
+            bytes += 48 + 2L * values[id].length() + encoded[id].length;
+        }
+        return bytes;
+    }
+
+    @Override
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        for (int id = 0; id < size; id++) {
+            out.writeInt(encoded[id].length);
+            out.write(encoded[id]);
+        }
+    }
+
+    static StringDictionary readFrom(ByteBuffer in) {
+        StringDictionary dictionary = new StringDictionary();
+        int count = in.getInt();
+        byte[] bytes = new byte[64];
+        for (int id = 0; id < count; id++) {
+            int length = in.getInt();
+            if (length > bytes.length) bytes = new byte[Math.max(length, bytes.length * 2)];
+            in.get(bytes, 0, length);
+            dictionary.add(bytes, 0, length, null);
+        }
+        return dictionary;
+    }
+
+    private void rehash() {
+        int[] newTable = new int[table.length * 2];
+        int mask = newTable.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (newTable[slot] != 0) slot = (slot + 1) & mask;
+            newTable[slot] = id + 1;
+        }
+        table = newTable;
+    }
+
+    private static int hash(byte[] buf, int from, int to) {
+        int h = 1;
+        for (int i = from; i < to; i++) h = 31 * h + buf[i];
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,78 @@
+package store;
+
+/**
+ * IPv4 address block in CIDR notation, such as {@code 10.2.0.0/16}. Only canonical IPv4 addresses
+ * can fall inside a subnet.
+ */
+public final class Subnet {
+
+    private final int network;
+    private final int prefix;
+
+    private Subnet(int network, int prefix) {
+        this.network = network;
+        this.prefix = prefix;
+    }
+
+    /**
+     * Parses {@code address/prefix}. Host bits set in the address are cleared, so {@code 10.2.3.4/16}
+     * is {@code 10.2.0.0/16}.
+     */
+    public static Subnet parse(String cidr) {
+        int slash = cidr == null ? -1 : cidr.indexOf('/');
+        if (slash < 0) throw new IllegalArgumentException("expected address/prefix: " + cidr);
+        long address = Ipv4.parse(cidr.substring(0, slash));
+        int prefix;
+        try {
+            prefix = Integer.parseInt(cidr.substring(slash + 1));
+        } catch (NumberFormatException e) {
+            prefix = -1;
+        }
+        if (address < 0 || prefix < 0 || prefix > 32) throw new IllegalArgumentException("invalid subnet: " + cidr);
+        return new Subnet((int) address & mask(prefix), prefix);
+    }
+
+    private static int mask(int prefix) {
+        return prefix == 0 ? 0 : -1 << (32 - prefix);
+    }
+
+    /**
+     * Lowest address in the block, as an unsigned packed value.
+     */
+    public long low() {
+        return network & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Highest address in the block, as an unsigned packed value.
+     */
+    public long high() {
+        return (network | ~mask(prefix)) & 0xFFFFFFFFL;
+    }
+
+    public boolean contains(int address) {
+        return (address & mask(prefix)) == network;
+    }
+
+    public boolean contains(Subnet other) {
+        return other.prefix >= prefix && contains(other.network);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Subnet)) return false;
+        Subnet other = (Subnet) o;
+        return network == other.network && prefix == other.prefix;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * network + prefix;
+    }
+
+    @Override
+    public String toString() {
+        return Ipv4.format(network) + "/" + prefix;
+    }
+}
@@ -0,0 +1,146 @@
+package store;
+
+import status.Event;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Per-user timelines: the rows of each user grouped by event and task, each group in row (and so time)
+ * order, so that the first or last time a user did something in a range is found with two binary
+ * searches. The groups of a user are numbered consecutively, sorted by event and then task. Tasks are
+ * given as their index among the store's distinct task values. An index read as a view keeps its
+ * arrays in the buffer it was read from.
+ */
+public class TimelineIndex {
+
+    private final int taskCount;
+    private final int[] userGroups;
+    private final int[] groupKeys;
+    private final IntBuffer userGroupView;
+    private final IntBuffer groupKeyView;
+    private final PostingIndex rows;
+
+    private TimelineIndex(int taskCount, int[] userGroups, int[] groupKeys, PostingIndex rows) {
+        this.taskCount = taskCount;
+        this.userGroups = userGroups;
+        this.groupKeys = groupKeys;
+        this.userGroupView = null;
+        this.groupKeyView = null;
+        this.rows = rows;
+    }
+
+    private TimelineIndex(int taskCount, IntBuffer userGroups, IntBuffer groupKeys, PostingIndex rows) {
+        this.taskCount = taskCount;
+        this.userGroups = null;
+        this.groupKeys = null;
+        this.userGroupView = userGroups;
+        this.groupKeyView = groupKeys;
+        this.rows = rows;
+    }
+
+    /**
+     * Groups the postings of every user in {@code byUser} by the event and task of their rows.
+     */
+    static TimelineIndex build(PostingIndex byUser, byte[] events, int[] taskKeys, int taskCount, int size) {
+        if ((long) Event.values().length * taskCount > Integer.MAX_VALUE) throw new IllegalArgumentException("too many tasks");
+        int[] userGroups = new int[byUser.keyCount() + 1];
+        int[] groupKeys = new int[Math.min(size, 1024)];
+        int[] groups = new int[size];
+        int count = 0;
+        for (int user = 0; user < byUser.keyCount(); user++) {
+            int start = byUser.start(user);
+            int end = byUser.end(user);
+            int[] keys = new int[end - start];
+            for (int i = start; i < end; i++) keys[i - start] = events[byUser.row(i)] * taskCount + taskKeys[byUser.row(i)];
+            int[] distinct = Arrays.stream(keys).sorted().distinct().toArray();
+            for (int i = start; i < end; i++) groups[byUser.row(i)] = count + Arrays.binarySearch(distinct, keys[i - start]);
+            if (count + distinct.length > groupKeys.length) {
+                groupKeys = Arrays.copyOf(groupKeys, Math.max(2 * groupKeys.length, count + distinct.length));
+            }
+            System.arraycopy(distinct, 0, groupKeys, count, distinct.length);
+            count += distinct.length;
+            userGroups[user + 1] = count;
+        }
+        return new TimelineIndex(taskCount, userGroups, Arrays.copyOf(groupKeys, count), PostingIndex.build(groups, size, count));
+    }
+
+    /**
+     * The group of {@code user}'s rows with {@code event} and {@code task}, or -1 if there are none.
+     */
+    public int group(int user, int event, int task) {
+        int i = search(user, event * taskCount + task);
+        return i < 0 ? -1 : i;
+    }
+
+    /**
+     * First group of {@code user}'s rows with {@code event}; the groups up to {@link #endGroup} hold
+     * one task each.
+     */
+    public int firstGroup(int user, int event) {
+        int i = search(user, event * taskCount);
+        return i < 0 ? -i - 1 : i;
+    }
+
+    public int endGroup(int user, int event) {
+        int i = search(user, (event + 1) * taskCount);
+        return i < 0 ? -i - 1 : i;
+    }
+
+    /**
+     * {@link Arrays#binarySearch} for {@code key} among the group keys of {@code user}.
+     */
+    private int search(int user, int key) {
+        if (groupKeys != null) return Arrays.binarySearch(groupKeys, userGroups[user], userGroups[user + 1], key);
+        return SegmentFile.binarySearch(groupKeyView, userGroupView.get(user), userGroupView.get(user + 1), key);
+    }
+
+    public int task(int group) {
+        return (groupKeys != null ? groupKeys[group] : groupKeyView.get(group)) % taskCount;
+    }
+
+    /**
+     * First row of {@code group} in {@code [from, to)}, or -1.
+     */
+    public int first(int group, int from, int to) {
+        int i = rows.seek(group, from);
+        return i < rows.end(group) && rows.row(i) < to ? rows.row(i) : -1;
+    }
+
+    /**
+     * Last row of {@code group} in {@code [from, to)}, or -1.
+     */
+    public int last(int group, int from, int to) {
+        int i = rows.seek(group, to) - 1;
+        return i >= rows.start(group) && rows.row(i) >= from ? rows.row(i) : -1;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(taskCount);
+        SegmentFile.writeInts(out, userGroups, userGroups.length);
+        SegmentFile.writeInts(out, groupKeys, groupKeys.length);
+        rows.writeTo(out);
+    }
+
+    static TimelineIndex readFrom(ByteBuffer in, boolean view) {
+        int taskCount = in.getInt();
+        if (view) {
+            IntBuffer userGroups = SegmentFile.viewInts(in);
+            IntBuffer groupKeys = SegmentFile.viewInts(in);
+            return new TimelineIndex(taskCount, userGroups, groupKeys, PostingIndex.readFrom(in, true));
+        }
+        int[] userGroups = SegmentFile.readInts(in);
+        int[] groupKeys = SegmentFile.readInts(in);
+        return new TimelineIndex(taskCount, userGroups, groupKeys, PostingIndex.readFrom(in, false));
+    }
+
+    /**
+     * Bytes held on the heap, 0 for a view.
+     */
+    public long memoryBytes() {
+        return groupKeys == null ? 0 : 4L * (userGroups.length + groupKeys.length) + rows.memoryBytes();
+    }
+}
@@ -0,0 +1,39 @@
+import cache.CachingLogQuery;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import status.Event;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CachingLogQueryTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void callersCannotChangeCachedDates() throws IOException {
+        Files.write(dir.resolve("a.log"), LogParserTest.LOG.getBytes(StandardCharsets.UTF_8));
+        LogParser parser = new LogParser(dir);
+        CachingLogQuery query = new CachingLogQuery(parser, parser::getVersion, 1000);
+
+        Set<Date> expected = parser.getDatesForUserAndEvent("Amigo", Event.LOGIN, null, null);
+        for (Date date : query.getDatesForUserAndEvent("Amigo", Event.LOGIN, null, null)) date.setTime(0);
+        assertEquals(expected, query.getDatesForUserAndEvent("Amigo", Event.LOGIN, null, null));
+
+        Set<?> dates = parser.execute("get date for user = \"Amigo\"");
+        for (Object date : query.execute("get date for user = \"Amigo\"")) ((Date) date).setTime(0);
+        assertEquals(dates, query.execute("get  date for user = \"Amigo\""));
+        assertEquals(2, query.getStats().getHits());
+
+        assertThrows(UnsupportedOperationException.class,
+                () -> query.getDatesWhenErrorHappened(null, null).add(new Date()));
+    }
+}
@@ -0,0 +1,315 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import query.QueryCall;
+import status.Event;
+import status.Status;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LogParserTest {
+
+    static final String LOG = String.join("\n",
+            "127.0.0.1\tAmigo\t30.08.2012 16:08:13\tLOGIN\tOK",
+            "127.0.0.1\tAmigo\t30.08.2012 16:08:40\tDONE_TASK 15\tOK",
+            "146.34.15.5\tEduard Petrovich Morozko\t05.01.2021 20:22:55\tDONE_TASK 48\tFAILED",
+            "12.12.12.12\tAmigo\t21.10.2021 19:45:25\tSOLVE_TASK 18\tOK",
+            "120.120.120.122\tVasya Pupkin\t14.11.2015 07:08:01\tWRITE_MESSAGE\tOK",
+            "192.168.100.2\tVasya Pupkin\t19.03.2016 00:00:00\tSOLVE_TASK 1\tERROR",
+            "");
+
+    @TempDir
+    Path dir;
+
+    /**
+     * {@code count} entries 37 minutes apart from 01.03.2021 on, so about a week of days, cycling through
+     * eleven users, 35 ips, every event with tasks 0 to 3, and every status.
+     */
+    static String generatedLog(int count) {
+        SimpleDateFormat format = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss");
+        long start;
+        try {
+            start = format.parse("01.03.2021 00:00:00").getTime();
+        } catch (ParseException e) {
+            throw new IllegalStateException(e);
+        }
+        StringBuilder log = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            Event event = Event.values()[i * 13 % Event.values().length];
+            String task = event == Event.SOLVE_TASK || event == Event.DONE_TASK ? " " + i % 4 : "";
+            log.append("10.0.").append(i % 5).append('.').append(i * 3 % 7).append('\t')
+                    .append("user").append(i * 7 % 11).append('\t')
+                    .append(format.format(new Date(start + i * 37L * 60 * 1000))).append('\t')
+                    .append(event).append(task).append('\t')
+                    .append(Status.values()[i % 7 % Status.values().length]).append('\n');
+        }
+        return log.toString();
+    }
+
+    @Test
+    void answersQueriesOverAllFiles() throws IOException {
+        Files.write(dir.resolve("a.log"), LOG.getBytes(StandardCharsets.UTF_8));
+        LogParser parser = new LogParser(dir);
+
+        assertEquals(5, parser.getNumberOfUniqueIPs(null, null));
+        assertEquals(new HashSet<String>(Arrays.asList("Amigo", "Eduard Petrovich Morozko", "Vasya Pupkin")),
+                parser.getAllUsers());
+        assertEquals(new HashSet<String>(Arrays.asList("Amigo", "Vasya Pupkin")), parser.getSolvedTaskUsers(null, null));
+        assertEquals(new HashSet<Event>(Arrays.asList(Event.LOGIN, Event.DONE_TASK, Event.SOLVE_TASK)),
+                parser.getEventsForUser("Amigo", null, null));
+        assertEquals(1, parser.getNumberOfAttemptToSolveTask(18, null, null));
+    }
+
+    /**
+     * Bounds on either side of every entry around both daylight saving changes, including the hour that
+     * occurs twice, must include exactly the entries strictly between them, across partition boundaries.
+     */
+    @Test
+    void dateBoundsAreExclusiveAroundDaylightSavingChanges() throws IOException, ParseException {
+        TimeZone zone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("Europe/Berlin"));
+        try {
+            String[] times = {"28.03.2020 23:59:59", "29.03.2020 00:00:00", "29.03.2020 01:59:59",
+                    "29.03.2020 03:00:00", "29.03.2020 23:59:59", "25.10.2020 01:59:59", "25.10.2020 02:00:00",
+                    "25.10.2020 02:30:00", "25.10.2020 02:59:59", "25.10.2020 03:00:00", "26.10.2020 00:00:00"};
+            SimpleDateFormat format = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss");
+            StringBuilder log = new StringBuilder();
+            List<Date> dates = new ArrayList<Date>();
+            for (String time : times) {
+                log.append("127.0.0.1\tAmigo\t").append(time).append("\tLOGIN\tFAILED\n");
+                dates.add(format.parse(time));
+            }
+            Files.write(dir.resolve("dst.log"), log.toString().getBytes(StandardCharsets.UTF_8));
+            LogParser parser = new LogParser(dir);
+
+            List<Date> bounds = new ArrayList<Date>();
+            for (Date date : dates) {
+                for (long delta : new long[]{-1000, -1, 0, 1, 999}) bounds.add(new Date(date.getTime() + delta));
+            }
+            bounds.add(null);
+            for (Date after : bounds) {
+                for (Date before : bounds) {
+                    Set<Date> expected = new HashSet<Date>();
+                    for (Date date : dates) {
+                        if ((after == null || date.after(after)) && (before == null || date.before(before))) {
+                            expected.add(date);
+                        }
+                    }
+                    assertEquals(expected, parser.getDatesWhenSomethingFailed(after, before), after + " - " + before);
+                }
+            }
+        } finally {
+            TimeZone.setDefault(zone);
+        }
+    }
+
+    @Test
+    void leavesAnUnfinishedLastLineToTheTailer() throws IOException, InterruptedException {
+        Path log = dir.resolve("a.log");
+        String line = LOG.substring(0, LOG.indexOf('\n') + 1);
+        Files.write(log, (line + line.substring(0, 20)).getBytes(StandardCharsets.UTF_8));
+        LogParser parser = new LogParser(dir);
+        assertEquals(1, parser.getNumberOfAllEvents(null, null));
+        assertEquals(0, parser.getIngestReport().getTotalRejected());
+
+        parser.startTailing(10);
+        try {
+            Files.write(log, line.substring(20).replace("LOGIN", "WRITE_MESSAGE").getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.APPEND);
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (parser.getNumberOfAllEvents(null, null) < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(2, parser.getNumberOfAllEvents(null, null));
+        } finally {
+            parser.stopTailing();
+        }
+    }
+
+    @Test
+    void loadsSegmentsOfUnchangedFilesOnly(@TempDir Path segments) throws IOException {
+        Files.write(dir.resolve("a.log"), LOG.getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("b.log"), LOG.getBytes(StandardCharsets.UTF_8));
+        LogParser first = new LogParser(dir, 1, segments);
+        assertEquals(false, first.getIngestReport().getFiles().get(0).isLoaded());
+        // one segment per day of the file
+        assertEquals(true, Files.exists(segments.resolve("a.log.4.seg")));
+        assertEquals(false, Files.exists(segments.resolve("a.log.5.seg")));
+
+        Files.write(dir.resolve("b.log"), LOG.replace("Amigo", "Diego Maradona").getBytes(StandardCharsets.UTF_8));
+        Files.write(segments.resolve("gone.log.0.seg"), new byte[10]);
+        LogParser second = new LogParser(dir, 1, segments);
+        assertEquals(true, second.getIngestReport().getFiles().get(0).isLoaded());
+        assertEquals(false, second.getIngestReport().getFiles().get(1).isLoaded());
+        assertEquals(first.getNumberOfAllEvents(null, null), second.getNumberOfAllEvents(null, null));
+        assertEquals(true, second.getAllUsers().contains("Diego Maradona"));
+        assertEquals(false, Files.exists(segments.resolve("gone.log.0.seg")));
+    }
+
+    @Test
+    void batchesAnswerLikeSeparateCalls() throws IOException, ParseException {
+        Files.write(dir.resolve("a.log"), generatedLog(300).getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("b.log"), LOG.getBytes(StandardCharsets.UTF_8));
+        LogParser parser = new LogParser(dir, 2);
+        SimpleDateFormat format = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss");
+        // the second bound falls exactly on an entry, which the range excludes
+        Date[][] ranges = {{null, null}, {format.parse("02.03.2021 10:00:00"), format.parse("05.03.2021 08:50:00")},
+                {format.parse("03.03.2021 00:00:00"), null}, {null, format.parse("02.03.2021 12:00:00")}};
+
+        List<Object> queries = new ArrayList<Object>();
+        for (Date[] range : ranges) {
+            Date after = range[0];
+            Date before = range[1];
+            queries.add(new QueryCall("getNumberOfUniqueIPs", after, before));
+            queries.add(new QueryCall("getUniqueIPs", after, before));
+            queries.add(new QueryCall("getIPsForUser", "user3", after, before));
+            queries.add(new QueryCall("getIPsForEvent", Event.LOGIN, after, before));
+            queries.add(new QueryCall("getIPsForStatus", Status.FAILED, after, before));
+            queries.add(new QueryCall("getNumberOfUsers", after, before));
+            queries.add(new QueryCall("getUsers", after, before));
+            queries.add(new QueryCall("getNumberOfUserEvents", "user5", after, before));
+            queries.add(new QueryCall("getUsersForIP", "10.0.1.3", after, before));
+            queries.add(new QueryCall("getLoggedUsers", after, before));
+            queries.add(new QueryCall("getDownloadedPluginUsers", after, before));
+            queries.add(new QueryCall("getWroteMessageUsers", after, before));
+            queries.add(new QueryCall("getSolvedTaskUsers", after, before));
+            queries.add(new QueryCall("getSolvedTaskUsers", after, before, 2));
+            queries.add(new QueryCall("getDoneTaskUsers", after, before));
+            queries.add(new QueryCall("getDoneTaskUsers", after, before, 1));
+            queries.add(new QueryCall("getDatesForUserAndEvent", "user1", Event.SOLVE_TASK, after, before));
+            queries.add(new QueryCall("getDatesWhenSomethingFailed", after, before));
+            queries.add(new QueryCall("getDatesWhenErrorHappened", after, before));
+            queries.add(new QueryCall("getDatesWhenUserWroteMessage", "user4", after, before));
+            queries.add(new QueryCall("getDatesWhenUserDownloadedPlugin", "user4", after, before));
+            queries.add(new QueryCall("getNumberOfAllEvents", after, before));
+            queries.add(new QueryCall("getAllEvents", after, before));
+            queries.add(new QueryCall("getEventsForIP", "10.0.2.6", after, before));
+            queries.add(new QueryCall("getEventsForUser", "Amigo", after, before));
+            queries.add(new QueryCall("getFailedEvents", after, before));
+            queries.add(new QueryCall("getErrorEvents", after, before));
+            queries.add(new QueryCall("getNumberOfAttemptToSolveTask", 3, after, before));
+            queries.add(new QueryCall("getAllSolvedTasksAndTheirNumber", after, before));
+            queries.add(new QueryCall("getDateWhenUserSolvedTask", "user2", 0, after, before));
+            // the same call twice, and a count sharing the scan of a set
+            queries.add(new QueryCall("getUniqueIPs", after, before));
+        }
+        queries.add(new QueryCall("getAllUsers"));
+        queries.add("get ip");
+        queries.add("get user for event = \"LOGIN\"");
+        queries.add("get date for status = \"FAILED\" and date between \"02.03.2021 00:00:00\" and \"04.03.2021 00:00:00\"");
+        queries.add("get event for user = \"user3\"");
+        queries.add("get  ip");
+
+        List<Object> results = parser.executeAll(queries);
+        assertEquals(queries.size(), results.size());
+        for (int i = 0; i < queries.size(); i++) {
+            Object query = queries.get(i);
+            Object expected = query instanceof String ? parser.execute((String) query) : ((QueryCall) query).invoke(parser);
+            assertEquals(expected, results.get(i), query.toString());
+        }
+    }
+
+    /**
+     * The first-date lookups go through per-user timelines grouped by event and task; they must agree
+     * with a scan of the entries for bounds on, just before and just after entries in other partitions.
+     */
+    @Test
+    void firstDatesMatchAScanOfTheEntries(@TempDir Path segments) throws IOException, ParseException {
+        String log = generatedLog(300);
+        Files.write(dir.resolve("a.log"), log.getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("b.log"), log.replace("user3", "Amigo").getBytes(StandardCharsets.UTF_8));
+        SimpleDateFormat format = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss");
+        List<String[]> entries = new ArrayList<String[]>();
+        List<Date> dates = new ArrayList<Date>();
+        for (String line : log.split("\n")) {
+            entries.add(line.split("\t"));
+            dates.add(format.parse(line.split("\t")[2]));
+        }
+
+        for (LogParser parser : new LogParser[]{new LogParser(dir, 2), new LogParser(dir, 2, segments, 0, 0, true)}) {
+            for (String user : new String[]{"user8", "Amigo", "nobody"}) {
+                List<Date> bounds = new ArrayList<Date>();
+                bounds.add(null);
+                for (int i = 0; i < entries.size(); i++) {
+                    if (!entries.get(i)[1].equals("user8")) continue;
+                    for (long delta : new long[]{-1, 0, 1}) bounds.add(new Date(dates.get(i).getTime() + delta));
+                }
+                for (Date after : bounds) {
+                    for (Date before : bounds) {
+                        assertEquals(first(entries, dates, user, "LOGIN", after, before),
+                                parser.getDateWhenUserLoggedFirstTime(user, after, before));
+                        for (int task = 0; task < 5; task++) {
+                            assertEquals(first(entries, dates, user, "SOLVE_TASK " + task, after, before),
+                                    parser.getDateWhenUserSolvedTask(user, task, after, before));
+                            assertEquals(first(entries, dates, user, "DONE_TASK " + task, after, before),
+                                    parser.getDateWhenUserDoneTask(user, task, after, before));
+                        }
+                    }
+                }
+            }
+            parser.close();
+        }
+    }
+
+    /**
+     * Earliest date strictly between the bounds of the entries of {@code user} with {@code event}, where
+     * Amigo stands for user3 as in the second file.
+     */
+    private static Date first(List<String[]> entries, List<Date> dates, String user, String event,
+                              Date after, Date before) {
+        Date first = null;
+        for (int i = 0; i < entries.size(); i++) {
+            String[] entry = entries.get(i);
+            if (!entry[1].equals(user.equals("Amigo") ? "user3" : user) || !entry[3].equals(event)) continue;
+            Date date = dates.get(i);
+            if ((after == null || date.after(after)) && (before == null || date.before(before))
+                    && (first == null || date.before(first))) {
+                first = date;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Parts of a write that failed halfway may belong to another version of the file, so none of them
+     * are kept and evicted partitions are spilled instead.
+     */
+    @Test
+    void dropsSegmentsOfAFailedWrite(@TempDir Path segments) throws IOException {
+        Path log = dir.resolve("a.log");
+        Files.write(log, LOG.getBytes(StandardCharsets.UTF_8));
+        new LogParser(dir, 1, segments);
+        Files.write(log, LOG.replace("Amigo", "Diego Maradona").getBytes(StandardCharsets.UTF_8));
+        LogParser expected = new LogParser(dir);
+        // a non-empty directory in place of the third part makes its write fail
+        Path blocked = segments.resolve("a.log.2.seg");
+        Files.delete(blocked);
+        Files.createDirectories(blocked.resolve("blocked"));
+
+        for (boolean offHeap : new boolean[]{false, true}) {
+            LogParser parser = new LogParser(dir, 1, segments, 0, 1, offHeap);
+            for (int part : new int[]{0, 1, 3, 4}) {
+                assertEquals(false, Files.exists(segments.resolve("a.log." + part + ".seg")));
+            }
+            assertEquals(expected.getAllUsers(), parser.getAllUsers());
+            assertEquals(expected.getIPsForUser("Diego Maradona", null, null), parser.getIPsForUser("Diego Maradona", null, null));
+            assertEquals(expected.getDatesWhenErrorHappened(null, null), parser.getDatesWhenErrorHappened(null, null));
+            assertEquals(expected.getAllSolvedTasksAndTheirNumber(null, null), parser.getAllSolvedTasksAndTheirNumber(null, null));
+            parser.close();
+        }
+    }
+}
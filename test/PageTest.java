@@ -0,0 +1,93 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import query.Page;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Following the next tokens of {@link LogParser#page} must visit the same results as the stream of
+ * the query, whatever the page size.
+ */
+class PageTest {
+
+    private static final String[] QUERIES = {
+            "get ip", "get user", "get date", "get event", "get status",
+            "get user for event = \"DONE_TASK\"",
+            "get date for user = \"user3\"",
+            "get ip for status = \"FAILED\" and date between \"03.01.2021 00:00:00\" and \"09.01.2021 00:00:00\"",
+    };
+
+    @TempDir
+    Path dir;
+
+    private LogParser parser;
+
+    @BeforeEach
+    void writeLogs() throws IOException {
+        String[] events = {"LOGIN", "DOWNLOAD_PLUGIN", "WRITE_MESSAGE", "SOLVE_TASK 3", "DONE_TASK 7"};
+        String[] statuses = {"OK", "FAILED", "ERROR"};
+        Random random = new Random(7);
+        for (int file = 0; file < 3; file++) {
+            StringBuilder log = new StringBuilder();
+            for (int line = 0; line < 400; line++) {
+                log.append("10.0.").append(random.nextInt(4)).append('.').append(random.nextInt(50))
+                        .append("\tuser").append(random.nextInt(40))
+                        .append(String.format("\t%02d.01.2021 %02d:%02d:%02d\t", 1 + random.nextInt(12),
+                                random.nextInt(24), random.nextInt(60), random.nextInt(60)))
+                        .append(events[random.nextInt(events.length)]).append('\t')
+                        .append(statuses[random.nextInt(statuses.length)]).append('\n');
+            }
+            Files.write(dir.resolve(file + ".log"), log.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        parser = new LogParser(dir, 2);
+    }
+
+    @Test
+    void pagesCoverTheStream() {
+        for (String query : QUERIES) {
+            List<Object> expected = parser.stream(query).collect(Collectors.toList());
+            for (int limit : new int[]{1, 2, 7, 100, 10_000}) {
+                List<Object> paged = new ArrayList<Object>();
+                String token = null;
+                int pages = 0;
+                do {
+                    Page<?> page = parser.page(query, token, limit);
+                    paged.addAll(page.getItems());
+                    token = page.getNextToken();
+                    pages++;
+                } while (token != null);
+                assertEquals(expected, paged, query + " by " + limit);
+                assertEquals(Math.max(1, (expected.size() + limit - 1) / limit), pages, query + " by " + limit);
+            }
+        }
+    }
+
+    @Test
+    void lastPageHasNoToken() {
+        Page<?> page = parser.page("get status", null, 3);
+        assertEquals(3, page.getItems().size());
+        assertNull(page.getNextToken());
+        Page<?> empty = parser.page("get user for user = \"nobody\"", null, 3);
+        assertEquals(0, empty.getItems().size());
+        assertNull(empty.getNextToken());
+    }
+
+    @Test
+    void rejectsBadTokensAndLimits() {
+        assertThrows(IllegalArgumentException.class, () -> parser.page("get date", "yesterday", 10));
+        assertThrows(IllegalArgumentException.class, () -> parser.page("get event", "LOGON", 10));
+        assertThrows(IllegalArgumentException.class, () -> parser.page("get ip", null, 0));
+    }
+}
@@ -0,0 +1,105 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import shard.ShardException;
+import shard.ShardReport;
+import shard.ShardServer;
+import shard.ShardedLogQuery;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedLogQueryTest {
+
+    @TempDir
+    Path dir;
+
+    private final List<ShardServer> servers = new ArrayList<ShardServer>();
+    private final List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+
+    @BeforeEach
+    void startShards() throws IOException {
+        String[] logs = {
+                "127.0.0.1\tAmigo\t30.08.2012 16:08:13\tLOGIN\tOK\n"
+                        + "146.34.15.5\tEduard Petrovich Morozko\t05.01.2021 20:22:55\tDONE_TASK 48\tFAILED\n",
+                "127.0.0.1\tAmigo\t21.10.2021 19:45:25\tSOLVE_TASK 18\tOK\n"
+                        + "120.120.120.122\tVasya Pupkin\t14.11.2015 07:08:01\tWRITE_MESSAGE\tOK\n"};
+        for (int i = 0; i < logs.length; i++) {
+            Path shard = Files.createDirectory(dir.resolve("shard" + i));
+            Files.write(shard.resolve("a.log"), logs[i].getBytes(StandardCharsets.UTF_8));
+            ShardServer server = new ShardServer(new LogParser(shard), 0);
+            server.start();
+            servers.add(server);
+            addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()));
+        }
+    }
+
+    @AfterEach
+    void stopShards() throws IOException {
+        for (ShardServer server : servers) server.close();
+    }
+
+    @Test
+    void countsValuesSeenBySeveralShardsOnce() {
+        try (ShardedLogQuery query = new ShardedLogQuery(addresses, 5000)) {
+            assertEquals(3, query.getNumberOfUsers(null, null));
+            assertEquals(new HashSet<String>(Arrays.asList("Amigo", "Eduard Petrovich Morozko", "Vasya Pupkin")),
+                    query.getUsers(null, null));
+            assertEquals(3, query.getNumberOfUniqueIPs(null, null));
+            assertEquals(2, query.getNumberOfUserEvents("Amigo", null, null));
+            assertFalse(query.getLastReport().isPartial());
+        }
+        try (ShardedLogQuery query = new ShardedLogQuery(addresses.subList(0, 1), 5000)) {
+            assertEquals(2, query.getNumberOfUsers(null, null));
+            assertEquals(2, query.getNumberOfAllEvents(null, null));
+        }
+    }
+
+    @Test
+    void reportsShardsThatDidNotAnswer() throws IOException {
+        InetSocketAddress down = unusedAddress();
+        List<InetSocketAddress> partial = new ArrayList<InetSocketAddress>(addresses.subList(0, 1));
+        partial.add(down);
+        try (ShardedLogQuery query = new ShardedLogQuery(partial, 5000)) {
+            assertEquals(2, query.getNumberOfUsers(null, null));
+            ShardReport report = query.getLastReport();
+            assertTrue(report.isPartial());
+            assertEquals(2, report.getShards());
+            assertEquals(1, report.getAnswered());
+            assertEquals(List.of(down.toString()), new ArrayList<String>(report.getFailures().keySet()));
+        }
+        try (ShardedLogQuery query = new ShardedLogQuery(List.of(down), 5000)) {
+            ShardException e = assertThrows(ShardException.class, () -> query.getUsers(null, null));
+            assertEquals(0, e.getReport().getAnswered());
+            assertEquals(e.getReport(), query.getLastReport());
+        }
+    }
+
+    @Test
+    void rethrowsQueriesTheShardsReject() {
+        try (ShardedLogQuery query = new ShardedLogQuery(addresses, 5000)) {
+            assertThrows(IllegalArgumentException.class, () -> query.execute("get nothing"));
+        }
+    }
+
+    private static InetSocketAddress unusedAddress() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 0, InetAddress.getLoopbackAddress())) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), socket.getLocalPort());
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package ingest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import status.Event;
+import status.Status;
+
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that the tokenizer accepts and rejects the same lines as the split/SimpleDateFormat parser it
+ * replaced, and yields the same fields for the ones it accepts.
+ */
+class LineTokenizerTest {
+
+    private static final String[] LINES = {
+            "127.0.0.1\tAmigo\t30.08.2012 16:08:13\tLOGIN\tOK",
+            " 127.0.0.1 \t Amigo \t30.08.2012 16:08:13\tDONE_TASK 15\tFAILED",
+            "127.0.0.1\tЕвгений Жук\t30.08.2012 16:08:13\tSOLVE_TASK 18\tERROR",
+            "127.0.0.1\tAmigo\t30.08.2012 16:08:13\tDONE_TASK 15 \tOK",
+            "127.0.0.1\tAmigo\t30.08.2012 16:08:13\tDONE_TASK  15\tOK",
+            "127.0.0.1\tAmigo\t30.08.2012 16:08:13\tDONE_TASK 15 16\tOK",
+            "127.0.0.1\tAmigo\t30.08.2012 16:08:13\tDONE_TASK x\tOK",
+            "127.0.0.1\tAmigo\t30.08.2012 16:08:13\tDONE_TASK 99999999999\tOK",
+            "127.0.0.1\tAmigo\t30.08.2012 16:08:13\tDONE_TASK -3\tOK",
+            "127.0.0.1\tAmigo\t30.08.2012 16:08:13\tLOGIN \tOK",
+            "127.0.0.1\tAmigo\t30.08.2012 16:08:13\tLOGON\tOK",
+            "127.0.0.1\tAmigo\t30.08.2012 16:08:13\tLOGIN\tok",
+            "127.0.0.1\tAmigo\t30.08.2012 16:08:13\tLOGIN\tOK\textra",
+            "127.0.0.1\tAmigo\t30.08.2012 16:08:13\tLOGIN\tOK\t",
+            "127.0.0.1\tAmigo\t30.08.2012 16:08:13\tLOGIN\t",
+            "127.0.0.1\tAmigo\t30.08.2012 16:08:13\tLOGIN",
+            "127.0.0.1\tAmigo\t31.02.2021 10:00:00\tLOGIN\tOK",
+            "127.0.0.1\tAmigo\t1.1.2021 1:2:3\tLOGIN\tOK",
+            "127.0.0.1\tAmigo\t30.08.2012 24:00:00\tLOGIN\tOK",
+            "127.0.0.1\tAmigo\t30.08.2012 16:61:00\tLOGIN\tOK",
+            "127.0.0.1\tAmigo\t00.00.2012 16:08:13\tLOGIN\tOK",
+            "127.0.0.1\tAmigo\t29.03.2020 02:30:00\tLOGIN\tOK",
+            "127.0.0.1\tAmigo\t25.10.2020 02:30:00\tLOGIN\tOK",
+            "127.0.0.1\tAmigo\t30.08.2012\tLOGIN\tOK",
+            "127.0.0.1\tAmigo\tyesterday\tLOGIN\tOK",
+            "\t\t30.08.2012 16:08:13\tLOGIN\tOK",
+            "",
+            "garbage",
+    };
+
+    private TimeZone defaultZone;
+
+    @BeforeEach
+    void useZoneWithDaylightSaving() {
+        defaultZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("Europe/Berlin"));
+    }
+
+    @AfterEach
+    void restoreZone() {
+        TimeZone.setDefault(defaultZone);
+    }
+
+    @Test
+    void matchesBaselineOnEdgeCases() {
+        LineTokenizer tokenizer = new LineTokenizer();
+        Baseline baseline = new Baseline();
+        for (String line : LINES) assertSameParse(line, tokenizer, baseline);
+    }
+
+    @Test
+    void matchesBaselineOnMutatedLines() {
+        LineTokenizer tokenizer = new LineTokenizer();
+        Baseline baseline = new Baseline();
+        Random random = new Random(42);
+        String alphabet = "0123456789 .:\t-xOKLGIN_";
+        for (int n = 0; n < 20000; n++) {
+            StringBuilder line = new StringBuilder(LINES[random.nextInt(3)]);
+            int date = line.indexOf("30.08.2012");
+            line.replace(date, date + 19, String.format("%02d.%02d.%04d %02d:%02d:%02d", random.nextInt(33), random.nextInt(14),
+                    1990 + random.nextInt(40), random.nextInt(26), random.nextInt(62), random.nextInt(62)));
+            for (int edits = random.nextInt(3); edits > 0; edits--) {
+                int at = random.nextInt(line.length());
+                if (random.nextBoolean()) line.deleteCharAt(at);
+                else line.insert(at, alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            assertSameParse(line.toString(), tokenizer, baseline);
+        }
+    }
+
+    private static void assertSameParse(String line, LineTokenizer tokenizer, Baseline baseline) {
+        byte[] bytes = ("x" + line + "\n").getBytes(StandardCharsets.UTF_8);
+        boolean parsed = tokenizer.parse(bytes, 1, bytes.length - 1);
+        Object[] expected = baseline.parse(line);
+        if (expected == null) {
+            assertEquals(false, parsed, line);
+            return;
+        }
+        assertEquals(true, parsed, line);
+        Object[] actual = {tokenizer.ip(), tokenizer.user(), tokenizer.time(), tokenizer.event(),
+                tokenizer.task(), tokenizer.status()};
+        assertEquals(Arrays.asList(expected), Arrays.asList(actual), line);
+    }
+
+    /**
+     * The parser from before the tokenizer, returning ip, user, epoch seconds, event, task and status.
+     */
+    private static class Baseline {
+
+        private final SimpleDateFormat format = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss");
+
+        Object[] parse(String log) {
+            List<String> list = Arrays.asList(log.split("\t"));
+            try {
+                String ip = list.get(0).trim();
+                String user = list.get(1).trim();
+                long time = format.parse(list.get(2)).getTime() / 1000;
+                String[] eventStr = list.get(3).split(" ");
+                Event event = Event.valueOf(eventStr[0]);
+                int action = eventStr.length == 2 ? Integer.parseInt(eventStr[1]) : 0;
+                Status status = Status.valueOf(list.get(4));
+                return new Object[]{ip, user, time, event, action, status};
+            } catch (Exception e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package ingest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LogTailerTest {
+
+    private static final String LINE = "127.0.0.1\tAmigo\t30.08.2012 16:08:13\tLOGIN\tOK\n";
+
+    @TempDir
+    Path dir;
+
+    private final List<ParsedFile> ingested = new ArrayList<ParsedFile>();
+
+    private LogTailer tailer() {
+        return new LogTailer(dir, new HashMap<Object, Long>(), 1000, (files, start) -> ingested.addAll(files));
+    }
+
+    private long lines() {
+        long lines = 0;
+        for (ParsedFile file : ingested) lines += file.getEntries().size();
+        return lines;
+    }
+
+    private void append(Path file, String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Test
+    void leavesAnUnfinishedLineForTheNextPoll() throws IOException {
+        Path log = dir.resolve("a.log");
+        append(log, LINE + LINE.substring(0, 20));
+        LogTailer tailer = tailer();
+        tailer.poll();
+        assertEquals(1, lines());
+        append(log, LINE.substring(20));
+        tailer.poll();
+        assertEquals(2, lines());
+        assertEquals(0, ingested.get(1).getStats().getRejected());
+    }
+
+    @Test
+    void doesNotReadARenamedFileAgain() throws IOException {
+        Path log = dir.resolve("a.log");
+        append(log, LINE + LINE);
+        LogTailer tailer = tailer();
+        tailer.poll();
+        Files.move(log, dir.resolve("a-1.log"));
+        append(log, LINE);
+        tailer.poll();
+        assertEquals(3, lines());
+        append(dir.resolve("a-1.log"), LINE);
+        tailer.poll();
+        assertEquals(4, lines());
+    }
+
+    @Test
+    void readsATruncatedFileFromTheStart() throws IOException {
+        Path log = dir.resolve("a.log");
+        append(log, LINE + LINE);
+        LogTailer tailer = tailer();
+        tailer.poll();
+        Files.write(log, LINE.getBytes(StandardCharsets.UTF_8), StandardOpenOption.TRUNCATE_EXISTING);
+        tailer.poll();
+        assertEquals(3, lines());
+    }
+}
@@ -0,0 +1,34 @@
+package ingest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ParsedFileTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void countsRejectedLinesByReason() throws IOException {
+        String log = "127.0.0.1\tAmigo\t30.08.2012 16:08:13\tLOGIN\tOK\n"
+                + "garbage\n"
+                + "127.0.0.1\tAmigo\tyesterday\tLOGIN\tOK\n"
+                + "127.0.0.1\tAmigo\t30.08.2012 16:08:13\tLOGON\tOK\n"
+                + "127.0.0.1\tAmigo\t30.08.2012 16:08:13\tLOGIN\tOK\n";
+        Path file = dir.resolve("a.log");
+        Files.write(file, log.getBytes(StandardCharsets.UTF_8));
+        IngestReport.FileStats stats = ParsedFile.parse(file.toFile(), 0, true).getStats();
+        assertEquals(5, stats.getLines());
+        assertEquals(3, stats.getRejected());
+        assertEquals(1, stats.getRejected(LineTokenizer.Reject.FIELDS));
+        assertEquals(1, stats.getRejected(LineTokenizer.Reject.DATE));
+        assertEquals(1, stats.getRejected(LineTokenizer.Reject.EVENT));
+    }
+}
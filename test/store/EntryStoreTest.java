@@ -0,0 +1,49 @@
+package store;
+
+import org.junit.jupiter.api.Test;
+import status.Event;
+import status.Status;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class EntryStoreTest {
+
+    @Test
+    void boundsExcludeTheBoundaryInstant() {
+        assertEquals(11, EntryStore.lowerBound(new Date(10_000)));
+        assertEquals(10, EntryStore.lowerBound(new Date(9_999)));
+        assertEquals(11, EntryStore.lowerBound(new Date(10_001)));
+        assertEquals(9, EntryStore.upperBound(new Date(10_000)));
+        assertEquals(10, EntryStore.upperBound(new Date(10_001)));
+        assertEquals(9, EntryStore.upperBound(new Date(9_999)));
+    }
+
+    @Test
+    void boundsRoundTowardsTheRangeBeforeTheEpoch() {
+        assertEquals(-1, EntryStore.lowerBound(new Date(-1_001)));
+        assertEquals(0, EntryStore.lowerBound(new Date(-1)));
+        assertEquals(-1, EntryStore.upperBound(new Date(-1)));
+        assertEquals(-2, EntryStore.upperBound(new Date(-1_000)));
+    }
+
+    @Test
+    void missingBoundsAreOpen() {
+        assertEquals(Long.MIN_VALUE, EntryStore.lowerBound(null));
+        assertEquals(Long.MAX_VALUE, EntryStore.upperBound(null));
+    }
+
+    @Test
+    void rowSearchesFindTheTimeRange() {
+        EntryStore store = new EntryStore();
+        long[] times = {30, 10, 20, 20, 40};
+        for (long time : times) store.append(time, 0, 0, Event.LOGIN, 0, Status.OK);
+        store.sortByTime();
+        assertEquals(1, store.lowerRow(20));
+        assertEquals(3, store.upperRow(20));
+        assertEquals(0, store.lowerRow(Long.MIN_VALUE));
+        assertEquals(5, store.upperRow(Long.MAX_VALUE));
+        assertEquals(5, store.lowerRow(41));
+    }
+}
@@ -0,0 +1,69 @@
+package store;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HyperLogLogTest {
+
+    private static long hash(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return HyperLogLog.hash(bytes, 0, bytes.length);
+    }
+
+    private static HyperLogLog sketch(int precision, int from, int to) {
+        HyperLogLog sketch = new HyperLogLog(precision);
+        for (int i = from; i < to; i++) sketch.add(hash("user" + i));
+        return sketch;
+    }
+
+    @Test
+    void precisionMeetsTheRequestedError() {
+        assertEquals(12, HyperLogLog.precisionFor(0.02));
+        assertEquals(HyperLogLog.MIN_PRECISION, HyperLogLog.precisionFor(0.5));
+        assertEquals(HyperLogLog.MAX_PRECISION, HyperLogLog.precisionFor(0.0001));
+        for (double error = 0.005; error < 0.3; error *= 1.5) {
+            int precision = HyperLogLog.precisionFor(error);
+            assertTrue(1.04 / Math.sqrt(1 << precision) <= error);
+            assertTrue(1.04 / Math.sqrt(1 << (precision - 1)) > error);
+        }
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.precisionFor(0));
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.precisionFor(1));
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(HyperLogLog.MAX_PRECISION + 1));
+    }
+
+    @Test
+    void estimatesAreWithinFourStandardErrors() {
+        for (int precision : new int[]{10, 12, 14}) {
+            double error = 1.04 / Math.sqrt(1 << precision);
+            for (int count : new int[]{10, 1000, 30_000, 300_000}) {
+                double estimate = sketch(precision, 0, count).estimate();
+                assertEquals(count, estimate, 4 * error * count, "precision " + precision + ", count " + count);
+            }
+        }
+    }
+
+    @Test
+    void foldingToALowerPrecisionMatchesCountingAtIt() {
+        for (int high = 10; high <= 16; high += 3) {
+            for (int low = HyperLogLog.MIN_PRECISION; low <= high; low++) {
+                HyperLogLog folded = new HyperLogLog(low);
+                folded.merge(sketch(high, 0, 50_000));
+                assertEquals(sketch(low, 0, 50_000).estimate(), folded.estimate(), high + " into " + low);
+            }
+        }
+    }
+
+    @Test
+    void mergeCountsTheUnion() {
+        HyperLogLog merged = sketch(12, 0, 60_000);
+        merged.merge(sketch(14, 40_000, 100_000));
+        assertEquals(12, merged.getPrecision());
+        assertEquals(100_000, merged.estimate(), 4 * 1.04 / Math.sqrt(1 << 12) * 100_000);
+        assertThrows(IllegalArgumentException.class, () -> sketch(14, 0, 1).merge(sketch(12, 0, 1)));
+    }
+}
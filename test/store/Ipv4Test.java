@@ -0,0 +1,52 @@
+package store;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class Ipv4Test {
+
+    @Test
+    void packsCanonicalAddresses() {
+        assertEquals(0x7F000001L, Ipv4.parse("127.0.0.1"));
+        assertEquals(0L, Ipv4.parse("0.0.0.0"));
+        assertEquals(0xFFFFFFFFL, Ipv4.parse("255.255.255.255"));
+        assertEquals(0x0A64C801L, Ipv4.parse("10.100.200.1"));
+        byte[] line = "x\t192.168.1.20\ty".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(0xC0A80114L, Ipv4.parse(line, 2, 14));
+    }
+
+    @Test
+    void rejectsEverythingFormatWouldNotGiveBack() {
+        String[] rejected = {"", "1.2.3", "1.2.3.4.5", "01.2.3.4", "1.2.3.00", "256.1.1.1", "1.2.3.1000",
+                " 1.2.3.4", "1.2.3.4 ", "+1.2.3.4", "-1.2.3.4", "1..2.3", "1.2.3.", ".1.2.3", "1.2.3.4a", "::1",
+                "1.2.3.4/8", "١.٢.٣.٤", "0x1.2.3.4", null};
+        for (String value : rejected) assertEquals(-1, Ipv4.parse(value), value);
+    }
+
+    @Test
+    void formatAndParseAreInverse() {
+        Random random = new Random(18);
+        for (int n = 0; n < 100_000; n++) {
+            int packed = random.nextInt();
+            assertEquals(packed & 0xFFFFFFFFL, Ipv4.parse(Ipv4.format(packed)));
+        }
+    }
+
+    @Test
+    void acceptsOnlyTextThatRoundTrips() {
+        Random random = new Random(18);
+        String alphabet = "0123456789. ";
+        for (int n = 0; n < 200_000; n++) {
+            StringBuilder value = new StringBuilder();
+            for (int length = 1 + random.nextInt(16); length > 0; length--) {
+                value.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            long packed = Ipv4.parse(value.toString());
+            if (packed >= 0) assertEquals(value.toString(), Ipv4.format((int) packed));
+        }
+    }
+}
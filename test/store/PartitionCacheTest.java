@@ -0,0 +1,89 @@
+package store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import status.Event;
+import status.Status;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PartitionCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private static EntryStore store(long start, int rows) {
+        EntryStore store = new EntryStore();
+        for (int row = 0; row < rows; row++) {
+            store.append(start + row, store.ips().add("10.0.0." + row % 50), store.mutableUsers().add("user" + row % 20),
+                    Event.LOGIN, 0, Status.OK);
+        }
+        store.seal();
+        return store;
+    }
+
+    private long spillFiles() throws IOException {
+        if (!Files.isDirectory(dir.resolve("spill"))) return 0;
+        try (Stream<Path> files = Files.list(dir.resolve("spill"))) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void evictsBySpillingAndLoadsBack() throws IOException {
+        EntryStore first = store(0, 1000);
+        PartitionCache cache = new PartitionCache(1, dir.resolve("spill"));
+        Partition a = cache.add(first);
+        Partition b = cache.add(store(10_000, 1000));
+        assertFalse(a.isResident());
+        assertEquals(1, cache.getSpills());
+        assertEquals(first.size(), a.store().size());
+        assertEquals(first.time(999), a.store().time(999));
+        assertFalse(b.isResident());
+        assertEquals(2, spillFiles());
+        cache.close();
+        assertEquals(0, spillFiles());
+    }
+
+    @Test
+    void removedPartitionsStayLoadableUntilUnreachable() throws IOException, InterruptedException {
+        PartitionCache cache = new PartitionCache(1, dir.resolve("spill"));
+        Partition a = cache.add(store(0, 1000));
+        cache.add(store(10_000, 1000));
+        assertEquals(1, spillFiles());
+
+        cache.remove(a);
+        // a query that took its snapshot before the removal
+        assertEquals(1000, a.store().size());
+        assertFalse(a.isResident());
+        assertEquals(1, spillFiles());
+
+        a = null;
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (spillFiles() > 0 && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(0, spillFiles());
+        cache.close();
+    }
+
+    @Test
+    void closeRemovesATemporarySpillDirectory() throws IOException {
+        PartitionCache cache = new PartitionCache(1, null);
+        Partition a = cache.add(store(0, 1000));
+        cache.add(store(10_000, 1000));
+        assertTrue(a.isSpilled());
+        Path spillDir = a.file().getParent();
+        assertTrue(Files.isDirectory(spillDir));
+        cache.close();
+        assertFalse(Files.exists(spillDir));
+    }
+}
@@ -0,0 +1,180 @@
+package store;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import status.Event;
+import status.Status;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentFileTest {
+
+    @TempDir
+    Path dir;
+
+    private File source;
+    private Path segment;
+    private EntryStore store;
+
+    @BeforeEach
+    void writeSegment() throws IOException {
+        source = dir.resolve("a.log").toFile();
+        Files.write(source.toPath(), new byte[100]);
+        segment = dir.resolve("a.log.0.seg");
+        store = new EntryStore();
+        for (int row = 0; row < 1000; row++) {
+            store.append(1_600_000_000L + 37L * row, store.ips().add("10.0.0." + row % 7),
+                    store.mutableUsers().add("user" + row % 13), event(row), row % 5,
+                    Status.values()[row % Status.values().length]);
+        }
+        store.seal();
+        SegmentFile.write(segment, source, source.length(), source.lastModified(), 0, 1, store);
+    }
+
+    @Test
+    void readsBackWhatWasWritten() throws IOException {
+        assertSameRows(store, SegmentFile.read(segment, source, 0, 1));
+        assertSameRows(store, SegmentFile.read(segment));
+        EntryStore mapped = SegmentFile.map(segment, source, 0, 1);
+        assertTrue(mapped.isOffHeap());
+        assertSameRows(store, mapped);
+    }
+
+    @Test
+    void offHeapIndexesAnswerLikeTheHeapOnes() throws IOException {
+        for (EntryStore copy : new EntryStore[]{SegmentFile.map(segment, source, 0, 1), store.offHeap()}) {
+            // only the distinct task values stay on the heap
+            assertEquals(4 * 5, copy.indexBytes());
+            long lo = store.time(100);
+            long hi = store.time(900);
+            for (Filter filter : new Filter[]{Filter.user("user3"), Filter.ip("10.0.0.2"), Filter.event(event(0)),
+                    Filter.status(Status.FAILED), Filter.task(event(1), 4)}) {
+                assertEquals(rows(store.rows(filter, lo, hi)), rows(copy.rows(filter, lo, hi)));
+                assertEquals(countByTask(store, filter, lo, hi), countByTask(copy, filter, lo, hi));
+            }
+            for (int user = 0; user < 13; user++) {
+                for (Event event : Event.values()) {
+                    assertEquals(store.firstRow("user" + user, event, null, lo, hi), copy.firstRow("user" + user, event, null, lo, hi));
+                    assertEquals(store.lastRow("user" + user, event, 2, lo, hi), copy.lastRow("user" + user, event, 2, lo, hi));
+                    int[] tasks = store.userTasks("user" + user, event);
+                    int[] copied = copy.userTasks("user" + user, event);
+                    Arrays.sort(tasks);
+                    Arrays.sort(copied);
+                    assertArrayEquals(tasks, copied);
+                }
+            }
+            HyperLogLog expected = new HyperLogLog(10);
+            HyperLogLog actual = new HyperLogLog(10);
+            store.addDistinctUsers(Long.MIN_VALUE, Long.MAX_VALUE, expected);
+            copy.addDistinctUsers(Long.MIN_VALUE, Long.MAX_VALUE, actual);
+            assertEquals(expected.estimate(), actual.estimate());
+        }
+    }
+
+    @Test
+    void rejectsAChangedSource() throws IOException {
+        Files.write(source.toPath(), new byte[101]);
+        assertNull(SegmentFile.read(segment, source, 0, 1));
+        Files.write(source.toPath(), new byte[100]);
+        assertTrue(source.setLastModified(source.lastModified() - 10_000));
+        assertNull(SegmentFile.read(segment, source, 0, 1));
+    }
+
+    @Test
+    void rejectsAnotherSourceOrPart() throws IOException {
+        File other = dir.resolve("b.log").toFile();
+        Files.copy(source.toPath(), other.toPath());
+        assertTrue(other.setLastModified(source.lastModified()));
+        assertNull(SegmentFile.read(segment, other, 0, 1));
+        assertNull(SegmentFile.read(segment, source, 0, 2));
+        assertNull(SegmentFile.read(segment, source, 1, 1));
+    }
+
+    @Test
+    void rejectsACorruptSegment() throws IOException {
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(segment, bytes);
+        assertNull(SegmentFile.read(segment, source, 0, 1));
+        assertNull(SegmentFile.read(segment));
+    }
+
+    @Test
+    void rejectsATruncatedOrMissingSegment() throws IOException {
+        byte[] bytes = Files.readAllBytes(segment);
+        Files.write(segment, Arrays.copyOf(bytes, bytes.length - 1));
+        assertNull(SegmentFile.read(segment, source, 0, 1));
+        Files.write(segment, new byte[5]);
+        assertNull(SegmentFile.read(segment, source, 0, 1));
+        Files.delete(segment);
+        assertNull(SegmentFile.read(segment, source, 0, 1));
+    }
+
+    @Test
+    void rejectsAnotherFormatVersion() throws IOException {
+        byte[] bytes = Files.readAllBytes(segment);
+        // the format follows the six byte magic; the checksum is fixed up so only the version differs
+        bytes[7]++;
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 8);
+        ByteBuffer.wrap(bytes).putLong(bytes.length - 8, crc.getValue());
+        Files.write(segment, bytes);
+        assertNull(SegmentFile.read(segment, source, 0, 1));
+    }
+
+    @Test
+    void leavesNoTemporaryFile() throws IOException {
+        SegmentFile.write(segment, source, source.length(), source.lastModified(), 0, 1, store);
+        assertFalse(Files.exists(dir.resolve("a.log.0.seg.tmp")));
+        assertNotNull(SegmentFile.read(segment, source, 0, 1));
+    }
+
+    // the first event is rare enough for its rows to be read from the bitmap
+    private static Event event(int row) {
+        int events = Event.values().length;
+        return row % 50 == 0 ? Event.values()[0] : Event.values()[1 + row % (events - 1)];
+    }
+
+    private static List<Integer> rows(RowIterator rows) {
+        List<Integer> result = new ArrayList<Integer>();
+        for (int row = rows.next(); row >= 0; row = rows.next()) result.add(row);
+        return result;
+    }
+
+    private static Map<Integer, Integer> countByTask(EntryStore store, Filter filter, long lo, long hi) {
+        Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
+        store.countByTask(filter, lo, hi, (task, count) -> counts.merge(task, count, Integer::sum));
+        return counts;
+    }
+
+    private static void assertSameRows(EntryStore expected, EntryStore actual) {
+        assertNotNull(actual);
+        assertEquals(expected.size(), actual.size());
+        for (int row = 0; row < expected.size(); row++) {
+            assertEquals(expected.time(row), actual.time(row));
+            assertEquals(expected.ips().get(expected.ip(row)), actual.ips().get(actual.ip(row)));
+            assertEquals(expected.users().get(expected.user(row)), actual.users().get(actual.user(row)));
+            assertEquals(expected.event(row), actual.event(row));
+            assertEquals(expected.task(row), actual.task(row));
+            assertEquals(expected.status(row), actual.status(row));
+        }
+    }
+}